@@ -1,20 +1,14 @@
 #!/bin/bash
 
-run () {
-    max_time=$1
-    command="${2}"
-    level=$3
-    perl -e 'alarm shift @ARGV; exec "@ARGV"' $max_time $command $level;
-}
-
-# Default values
-#first=$1
-#last=$2
+# Solves levels $1 to $2 of the server levels in one JVM with sokoban.BatchRunner,
+# and writes the results to results/<commit>.res.
+#
+# usage: batch_runner.sh first last [solver] [max time] [threads] [level file]
 
 if [ -n "${3}" ]; then
-    COMMAND="${3}"
+    SOLVER="${3}"
 else
-    COMMAND="java -cp . sokoban.Main IDSPusher"
+    SOLVER="IDSPusher"
 fi
 
 if [ -n "$4" ]; then
@@ -23,27 +17,17 @@ else
     MAX_TIME=60
 fi
 
-echo "Running test on levels $1 to $2 with command $COMMAND and max time $MAX_TIME."
-
-
-success=0
-failed=0
-
-for i in `seq $1 $2`; do
-    echo -n "$i: "
-    elapsed=`(time -p run $MAX_TIME "${COMMAND}" $i -q) 2>&1`
-    if [ $? -ne "0" ]; then
-        echo -n "failure"
-        failed=`expr $failed + 1`
-    else
-        echo -n "success"
-        success=`expr $success + 1`
-    fi
-    elapsed=`echo "$elapsed" | grep real | sed 's/.* //g'`
-    echo ", $elapsed s"
-done
-
-echo "Solved: $success"
-echo "Not solved: $failed"
+if [ -n "$5" ]; then
+    THREADS=$5
+else
+    THREADS=`getconf _NPROCESSORS_ONLN`
+fi
 
+if [ -n "$6" ]; then
+    LEVELS="$6"
+else
+    LEVELS="server_levels.slc"
+fi
 
+javac -sourcepath . sokoban/BatchRunner.java sokoban/solvers/*.java || exit 1
+java -cp . -Xms2G -Xmx3G sokoban.BatchRunner $SOLVER $LEVELS $1 $2 $MAX_TIME $THREADS
@@ -0,0 +1,89 @@
+package sokoban;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sokoban.Board.Direction;
+
+/**
+ * Microbenchmarks of the Board operations that the solvers do for every
+ * node.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BoardBenchmark
+{
+    @Param( { Fixtures.SMALL, Fixtures.MEDIUM, Fixtures.LARGE })
+    public String level;
+
+    private Board board;
+    private Fixtures.Push push;
+    private Position playerStart;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        board = Fixtures.load(level);
+        push = Fixtures.firstPush(board);
+        playerStart = board.positions[board.getPlayerRow()][board
+                .getPlayerCol()];
+    }
+
+    @Benchmark
+    public int updateReachability()
+    {
+        board.forceReachabilityUpdate();
+        return board.getTopLeftReachable();
+    }
+
+    @Benchmark
+    public Collection<Position> findReachableBoxSquares()
+    {
+        // A push makes the reachable boxes stale, as in the search
+        board.moveBox(push.box, push.to);
+        final Collection<Position> boxes = board.findReachableBoxSquares();
+        board.moveBox(push.to, push.box);
+        return boxes;
+    }
+
+    @Benchmark
+    public Deque<Direction> findPath()
+    {
+        return board.findPath(push.player);
+    }
+
+    @Benchmark
+    public long moveBoxAndZobrist()
+    {
+        board.moveBox(push.box, push.to);
+        board.movePlayer(push.box);
+        final long key = board.getZobristKey();
+        board.moveBox(push.to, push.box);
+        board.movePlayer(playerStart);
+        return key;
+    }
+
+    @Benchmark
+    public Object cloneBoard()
+    {
+        return board.clone();
+    }
+}
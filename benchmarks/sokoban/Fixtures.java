@@ -0,0 +1,111 @@
+package sokoban;
+
+import java.io.File;
+import java.util.List;
+
+import sokoban.Board.Direction;
+
+/**
+ * Boards for the benchmarks. A level is given as "file:number", where the
+ * file is a level file in the working directory and the number is the level
+ * number as given to RunOffline.
+ */
+public final class Fixtures
+{
+    /**
+     * The levels that the benchmarks run on by default: a small, a medium and
+     * a large level.
+     */
+    public static final String SMALL = "server_levels.slc:3";
+    public static final String MEDIUM = "custom.slc:4";
+    public static final String LARGE = "server_levels.slc:9";
+
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Loads a level.
+     *
+     * @param level The level, as "file:number".
+     * @return The start board of the level.
+     */
+    public static Board load(final String level)
+    {
+        final int colon = level.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected file:number, got "
+                    + level);
+        }
+
+        final File file = new File(level.substring(0, colon));
+        final int number = Integer.parseInt(level.substring(colon + 1));
+        final List<String> boards = BoardParser.getBoardStrings(file);
+        if (number < 1 || number > boards.size()) {
+            throw new IllegalArgumentException("No level " + number + " in "
+                    + file);
+        }
+        return new Board(boards.get(number - 1).getBytes());
+    }
+
+    /**
+     * A push that can be made from the start of a board.
+     */
+    public static final class Push
+    {
+        /**
+         * The square the player walks to, next to the box
+         */
+        public final Position player;
+
+        /**
+         * The box
+         */
+        public final Position box;
+
+        /**
+         * The square the box is pushed to
+         */
+        public final Position to;
+
+        /**
+         * The direction of the push
+         */
+        public final Direction dir;
+
+        Push(final Position player, final Position box, final Position to,
+                final Direction dir)
+        {
+            this.player = player;
+            this.box = box;
+            this.to = to;
+            this.dir = dir;
+        }
+    }
+
+    /**
+     * Finds the first push that the player can make on the board, that
+     * doesn't move the box to a dead square.
+     *
+     * @param board The board.
+     * @return The push.
+     * @throws IllegalArgumentException If there is no such push.
+     */
+    public static Push firstPush(final Board board)
+    {
+        for (final Position player : board.findReachableBoxSquares()) {
+            for (final Direction dir : Direction.values()) {
+                final Position box = board.getPosition(player,
+                        Board.moves[dir.ordinal()]);
+                final Position to = board.getPosition(box,
+                        Board.moves[dir.ordinal()]);
+                if (Board.is(board.cells[box.row][box.column], Board.BOX)
+                        && !Board.is(board.cells[to.row][to.column],
+                                Board.REJECT_BOX)) {
+                    return new Push(player, box, to, dir);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No push on the board:\n" + board);
+    }
+}
@@ -0,0 +1,72 @@
+package sokoban.solvers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sokoban.Board;
+import sokoban.Fixtures;
+import sokoban.SearchInfo;
+
+/**
+ * Benchmarks one iteration of the IDS pusher at a fixed depth above the
+ * lower bound of the level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class DfsBenchmark
+{
+    @Param( { Fixtures.SMALL, Fixtures.MEDIUM, Fixtures.LARGE })
+    public String level;
+
+    /**
+     * The depth of the iteration, above the lower bound
+     */
+    @Param( { "0", "2" })
+    public int extraDepth;
+
+    private Board startBoard;
+    private int maxDepth;
+    private IDSPusher pusher;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        startBoard = Fixtures.load(level);
+        maxDepth = IDSCommon.lowerBound(startBoard) + extraDepth;
+    }
+
+    /**
+     * Creates a new pusher for each iteration, so that the failed boards of
+     * one call aren't used by the next.
+     */
+    @Setup(Level.Invocation)
+    public void newPusher()
+    {
+        pusher = new IDSPusher(startBoard, new HashSet<Long>(),
+                new HashMap<Long, BoxPosDir>(), new HashMap<Long, BoxPosDir>());
+    }
+
+    @Benchmark
+    public SearchInfo dfs()
+    {
+        return pusher.dfs(maxDepth);
+    }
+}
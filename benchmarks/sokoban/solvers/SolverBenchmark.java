@@ -0,0 +1,69 @@
+package sokoban.solvers;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sokoban.Board;
+import sokoban.Fixtures;
+import sokoban.Position;
+
+/**
+ * Microbenchmarks of the deadlock test and the lower bound of the IDS
+ * solvers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SolverBenchmark
+{
+    @Param( { Fixtures.SMALL, Fixtures.MEDIUM, Fixtures.LARGE })
+    public String level;
+
+    private Board startBoard;
+    private IDSPusher deadlockPusher;
+    private Position pushedBox;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        startBoard = Fixtures.load(level);
+
+        // A board right after a push, as freezeDeadlock() is called
+        final Fixtures.Push push = Fixtures.firstPush(startBoard);
+        final Board pushed = (Board) startBoard.clone();
+        pushed.moveBox(push.box, push.to);
+        pushed.movePlayer(push.box);
+        deadlockPusher = new IDSPusher();
+        deadlockPusher.board = pushed;
+        pushedBox = push.to;
+    }
+
+    @Benchmark
+    public boolean freezeDeadlock()
+    {
+        return deadlockPusher.freezeDeadlock(pushedBox,
+                IDSPusher.DEADLOCK_BOTH, new HashSet<Position>());
+    }
+
+    @Benchmark
+    public int lowerBound()
+    {
+        return IDSCommon.lowerBound(startBoard);
+    }
+}
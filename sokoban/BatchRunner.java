@@ -0,0 +1,547 @@
+package sokoban;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import sokoban.solvers.AllocationGroup;
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.SearchListener;
+import sokoban.solvers.SolveResult;
+import sokoban.solvers.Solver;
+import sokoban.solvers.SolverFactory;
+
+/**
+ * Solves a range of levels from a level file in one JVM, with several levels
+ * at a time. This replaces running RunOffline once per level, which pays for
+ * the JVM startup and the JIT warmup on every level.
+ *
+ * The results are printed in the format of batch_runner.sh, with the number
+ * of nodes and the allocated memory added to each line, and are also written
+ * to results/&lt;git commit&gt;.res. Each solution is checked with
+ * SolutionVerifier, and a wrong solution counts as a failure. The correct
+ * solutions are written to results/&lt;git commit&gt;.sol, which
+ * SolutionVerifier can check again later.
+ *
+ * The allocated memory of a level is the total that its solver and the
+ * threads it creates have allocated, which includes the garbage.
+ *
+ * The JVM can't limit the heap of each thread, so the heap is shared by the
+ * workers and kept in check by a monitor: when the old generation is still
+ * nearly full after a garbage collection, the level whose solver has the
+ * most entries in its tables is cancelled and counted as a failure. The
+ * solvers report their table sizes to a SearchListener, and a level that
+ * hasn't reported any is ranked by its allocated memory.
+ */
+public class BatchRunner
+{
+    /**
+     * The stack size of the worker threads, since the IDS solvers recurse
+     * deeply.
+     */
+    private static final long STACK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The fraction of the maximum heap at which the monitor starts to cancel
+     * levels.
+     */
+    private static final double HEAP_LIMIT = 0.9;
+
+    /**
+     * The time between two checks of the heap, in milliseconds.
+     */
+    private static final long MONITOR_INTERVAL = 100;
+
+    private final String solverName;
+    private final Levels levels;
+    private final long timeLimitMillis;
+    private final int threads;
+    private final SolutionCache cache;
+
+    /**
+     * The levels that are being solved, for the heap monitor.
+     */
+    private final Set<Level> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a batch runner.
+     *
+     * @param solverName The class name of the solver.
+     * @param levels The levels.
+     * @param timeLimitMillis The time limit of each level.
+     * @param threads The number of levels to solve at a time.
+     */
+    public BatchRunner(final String solverName, final Levels levels,
+            final long timeLimitMillis, final int threads)
+    {
+        this(solverName, levels, timeLimitMillis, threads, null);
+    }
+
+    /**
+     * Creates a batch runner that looks up the levels in a solution cache
+     * before solving them.
+     *
+     * @param solverName The class name of the solver.
+     * @param levels The levels.
+     * @param timeLimitMillis The time limit of each level.
+     * @param threads The number of levels to solve at a time.
+     * @param cache The solution cache, or null.
+     */
+    public BatchRunner(final String solverName, final Levels levels,
+            final long timeLimitMillis, final int threads,
+            final SolutionCache cache)
+    {
+        if (SolverFactory.loadSolver(solverName) == null) {
+            throw new IllegalArgumentException("Unknown solver: "
+                    + solverName);
+        }
+        this.solverName = solverName;
+        this.levels = levels;
+        this.timeLimitMillis = timeLimitMillis;
+        this.threads = threads;
+        this.cache = cache;
+    }
+
+    /**
+     * One level being solved.
+     */
+    private class Level implements Callable<String>
+    {
+        final int number;
+        volatile CancellationToken token;
+        volatile AllocationGroup group;
+        volatile long startAllocated;
+        volatile boolean outOfMemory;
+        volatile String solution;
+        final TableSizes tables = new TableSizes();
+
+        Level(final int number)
+        {
+            this.number = number;
+        }
+
+        @Override
+        public String call()
+        {
+            // The time limit starts when the level is started
+            token = CancellationToken.withTimeout(timeLimitMillis);
+            group = (AllocationGroup) Thread.currentThread().getThreadGroup();
+            startAllocated = group.allocatedBytes();
+            running.add(this);
+
+            final Solver solver = SolverFactory.loadSolver(solverName);
+            solver.setSearchListener(tables);
+            final Board board = levels.getBoard(number);
+            final long start = System.nanoTime();
+            SolveResult result = null;
+            try {
+                result = cache != null ? cache.solve(solver, board, token)
+                        : SolveResult.solve(solver, board, token);
+            }
+            catch (final OutOfMemoryError e) {
+                outOfMemory = true;
+            }
+            finally {
+                running.remove(this);
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            final long allocated = allocated();
+
+            String note = outOfMemory ? " (out of memory)" : "";
+            if (result != null && result.timedOut) {
+                note = " (timed out)";
+            }
+            boolean success = result != null && result.solution != null;
+            if (success) {
+                final SolutionVerifier verifier = new SolutionVerifier(levels
+                        .getBoard(number));
+                if (verifier.verify(result.solution)) {
+                    solution = result.solution.trim();
+                }
+                else {
+                    success = false;
+                    note = " (bad solution: " + verifier.getReason() + ")";
+                }
+            }
+            return String.format(Locale.ROOT,
+                    "%d: %s, %.2f s, %d nodes, %d MB allocated%s", number,
+                    success ? "success" : "failure", seconds,
+                    result == null ? solver.getIterationsCount()
+                            : result.nodes, allocated / (1024 * 1024), note);
+        }
+
+        /**
+         * Returns the number of bytes allocated by the worker and the
+         * threads of its solver since the level was started.
+         */
+        long allocated()
+        {
+            return Math.max(0, group.allocatedBytes() - startAllocated);
+        }
+    }
+
+    /**
+     * Keeps the latest table size that each solver or search side has
+     * reported.
+     */
+    private static class TableSizes implements SearchListener
+    {
+        private final Map<String, Long> entries = new ConcurrentHashMap<String, Long>();
+
+        /**
+         * Returns the number of entries in the tables of all the sides.
+         */
+        long total()
+        {
+            long total = 0;
+            for (final long size : entries.values()) {
+                total += size;
+            }
+            return total;
+        }
+
+        @Override
+        public void iterationStarted(final String solver, final int depth,
+                final long nodes)
+        {
+        }
+
+        @Override
+        public void iterationFinished(final String solver, final int depth,
+                final long nodes, final long leafNodes,
+                final long failedStates, final long elapsedNanos)
+        {
+            entries.put(solver, failedStates);
+        }
+
+        @Override
+        public void heartbeat(final String solver, final long nodes,
+                final double nodesPerSecond, final long tableEntries)
+        {
+            entries.put(solver, tableEntries);
+        }
+    }
+
+    /**
+     * Solves the levels and prints one line per level, in order.
+     *
+     * @param first The first level, starting at 1.
+     * @param last The last level.
+     * @param out The stream to print the results to.
+     * @return The number of solved levels.
+     * @throws InterruptedException If the thread is interrupted while
+     *             waiting for the results.
+     */
+    public int run(final int first, final int last, final PrintStream out)
+            throws InterruptedException
+    {
+        return run(first, last, out, null);
+    }
+
+    /**
+     * Solves the levels and prints one line per level, in order, and writes
+     * the correct solutions as "level: moves" lines.
+     *
+     * @param first The first level, starting at 1.
+     * @param last The last level.
+     * @param out The stream to print the results to.
+     * @param solutions The stream to write the solutions to, or null.
+     * @return The number of solved levels.
+     * @throws InterruptedException If the thread is interrupted while
+     *             waiting for the results.
+     */
+    public int run(final int first, final int last, final PrintStream out,
+            final PrintStream solutions) throws InterruptedException
+    {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r)
+                    {
+                        // Each worker has its own group, which also holds
+                        // the threads of its solvers
+                        final Thread thread = new Thread(new AllocationGroup(
+                                "level"), r, "level", STACK_SIZE);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        final Thread monitor = startMonitor();
+
+        final List<Level> started = new ArrayList<Level>();
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = first; i <= last; i++) {
+            final Level level = new Level(i);
+            started.add(level);
+            results.add(pool.submit(level));
+        }
+
+        int solved = 0;
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                String line;
+                try {
+                    line = results.get(i).get();
+                }
+                catch (final ExecutionException e) {
+                    line = (first + i) + ": failure, 0.00 s ("
+                            + e.getCause() + ")";
+                }
+                if (line.contains(": success")) {
+                    solved++;
+                }
+                out.println(line);
+                out.flush();
+                if (solutions != null && started.get(i).solution != null) {
+                    solutions.println((first + i) + ": "
+                            + started.get(i).solution);
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+            monitor.interrupt();
+        }
+
+        out.println("Solved: " + solved);
+        out.println("Not solved: " + (last - first + 1 - solved));
+        return solved;
+    }
+
+    /**
+     * Starts the thread that cancels a level when the heap is nearly full
+     * after a garbage collection.
+     */
+    private Thread startMonitor()
+    {
+        MemoryPoolMXBean oldGen = null;
+        for (final MemoryPoolMXBean pool : ManagementFactory
+                .getMemoryPoolMXBeans()) {
+            // The old generation is the heap pool with a usage threshold
+            if (pool.getType() == MemoryType.HEAP
+                    && pool.isUsageThresholdSupported()
+                    && pool.isCollectionUsageThresholdSupported()) {
+                oldGen = pool;
+            }
+        }
+        final MemoryPoolMXBean tenured = oldGen;
+        final long max = tenured == null || tenured.getUsage().getMax() < 0 ? Runtime
+                .getRuntime().maxMemory()
+                : tenured.getUsage().getMax();
+        final long limit = (long) (HEAP_LIMIT * max);
+
+        final Thread monitor = new Thread("heap monitor") {
+            @Override
+            public void run()
+            {
+                long cancelledAt = -1;
+                try {
+                    while (tenured != null) {
+                        Thread.sleep(MONITOR_INTERVAL);
+                        // Wait for a collection after the last cancel, since
+                        // the usage is measured after the collections
+                        final long collections = collectionCount();
+                        if (collections > cancelledAt
+                                && tenured.getCollectionUsage().getUsed() > limit
+                                && cancelLargest()) {
+                            cancelledAt = collections;
+                        }
+                    }
+                }
+                catch (final InterruptedException e) {
+                    // Done
+                }
+            }
+        };
+        monitor.setDaemon(true);
+        monitor.start();
+        return monitor;
+    }
+
+    /**
+     * Cancels the running level whose tables are the largest, or that has
+     * allocated the most memory if the tables are the same size.
+     *
+     * @return True if a level was cancelled.
+     */
+    private boolean cancelLargest()
+    {
+        Level largest = null;
+        long largestTables = 0;
+        for (final Level level : running) {
+            final long tables = level.tables.total();
+            if (largest == null
+                    || tables > largestTables
+                    || (tables == largestTables && level.allocated() > largest
+                            .allocated())) {
+                largest = level;
+                largestTables = tables;
+            }
+        }
+        if (largest == null) {
+            return false;
+        }
+        largest.outOfMemory = true;
+        largest.token.cancel();
+        return true;
+    }
+
+    /**
+     * Returns the number of garbage collections so far.
+     */
+    private static long collectionCount()
+    {
+        long count = 0;
+        for (final GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Returns the commit of the working directory, or null.
+     */
+    private static String gitCommit()
+    {
+        try {
+            final Process git = new ProcessBuilder("git", "rev-parse", "HEAD")
+                    .start();
+            final BufferedReader in = new BufferedReader(
+                    new InputStreamReader(git.getInputStream()));
+            final String sha = in.readLine();
+            in.close();
+            return git.waitFor() == 0 ? sha : null;
+        }
+        catch (final IOException e) {
+            return null;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Writes to two streams.
+     */
+    private static class TeeStream extends OutputStream
+    {
+        private final OutputStream a;
+        private final OutputStream b;
+
+        TeeStream(final OutputStream a, final OutputStream b)
+        {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public void write(final int c) throws IOException
+        {
+            a.write(c);
+            b.write(c);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int off, final int len)
+                throws IOException
+        {
+            a.write(bytes, off, len);
+            b.write(bytes, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            a.flush();
+            b.flush();
+        }
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args The solver, the level file, the first and last level, and
+     *            optionally the time limit in seconds (default 60) and the
+     *            number of threads (default the number of processors).
+     */
+    public static void main(final String[] args) throws IOException,
+            InterruptedException
+    {
+        if (args.length < 4) {
+            System.err
+                    .println("Usage: java sokoban.BatchRunner  solver  level_file|level_pack  first  last  [time_limit_s]  [threads]\n");
+            System.exit(2);
+        }
+
+        final String solverName = args[0];
+        final Levels levels = LevelPack.open(new File(args[1]));
+        final int first = Integer.parseInt(args[2]);
+        final int last = Math.min(Integer.parseInt(args[3]), levels.size());
+        final long timeLimit = args.length > 4 ? Long.parseLong(args[4]) : 60;
+        final int threads = args.length > 5 ? Integer.parseInt(args[5])
+                : Runtime.getRuntime().availableProcessors();
+
+        // The solvers print their progress, which would be mixed up
+        final PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b)
+            {
+                // Discard
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len)
+            {
+                // Discard
+            }
+        }));
+
+        PrintStream out = console;
+        PrintStream file = null;
+        PrintStream solutions = null;
+        final String sha = gitCommit();
+        if (sha != null) {
+            new File("results").mkdirs();
+            file = new PrintStream(new File("results", sha + ".res"));
+            out = new PrintStream(new TeeStream(console, file), true);
+            solutions = new PrintStream(new File("results", sha + ".sol"));
+        }
+
+        out.println("Running test on levels " + first + " to " + last
+                + " with solver " + solverName + " on " + threads
+                + " threads and max time " + timeLimit + ".");
+
+        final BatchRunner runner = new BatchRunner(solverName, levels,
+                timeLimit * 1000, threads, SolutionCache.fromProperties());
+        final int solved = runner.run(first, last, out, solutions);
+
+        out.flush();
+        if (file != null) {
+            file.close();
+            solutions.close();
+        }
+        System.exit(solved == last - first + 1 ? 0 : 1);
+    }
+}
@@ -256,6 +256,51 @@ public class Board implements Cloneable
         updateReachability(true);
     }
 
+    /**
+     * Constructs a board from its squares, as stored in a level pack. The box
+     * traps are given in the squares instead of being computed.
+     *
+     * @param width The width of the board.
+     * @param height The height of the board.
+     * @param squares The WALL, GOAL, BOX and BOX_TRAP flags of each square,
+     *            row by row.
+     * @param playerRow The row of the player.
+     * @param playerCol The column of the player.
+     * @param zobristKey The Zobrist key of the boxes, as calculated when the
+     *            pack was written.
+     */
+    public Board(final int width, final int height, final byte[] squares,
+            final int playerRow, final int playerCol, final long zobristKey)
+    {
+        this.width = width;
+        this.height = height;
+        this.playerRow = playerRow;
+        this.playerCol = playerCol;
+
+        cells = new byte[height][width];
+        positions = new Position[height][width];
+        for (int row = 0; row < height; ++row) {
+            for (int col = 0; col < width; ++col) {
+                positions[row][col] = new Position(row, col);
+                cells[row][col] = (byte) (squares[row * width + col] & INPUT_CELL_MASK);
+            }
+        }
+
+        Zobrist.ensureSize(height, width);
+        this.zobristKey = zobristKey;
+        for (int row = 0; row < height; ++row) {
+            for (int col = 0; col < width; ++col) {
+                cells[row][col] |= squares[row * width + col] & BOX_TRAP;
+            }
+        }
+
+        boxesNeedsUpdate = true;
+        topLeftNeedsUpdate = true;
+
+        countBoxes();
+        updateReachability(true);
+    }
+
     /**
      * Constructs the position that is placed one step in the given direction
      * (move) from the given position.
@@ -0,0 +1,200 @@
+package sokoban;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A connection to the level server.
+ *
+ * The client sends a level number on a line, and the server answers with the
+ * board, ended by an empty line. The client then sends the solution on a
+ * line, and the server answers with one line, which contains
+ * "Good solution" if the solution is correct. If the server can't send the
+ * board, it answers with one line that starts with ERROR_PREFIX instead.
+ *
+ * Several level numbers may be sent before the boards are read, if the
+ * server supports it. LevelServer does, but the course server may not, so
+ * Main only does it when it is turned on. The server answers each line in
+ * order, so the boards of all the requests sent must be read before the
+ * results of the solutions.
+ */
+public class LevelClient implements Closeable
+{
+    /**
+     * The course server
+     */
+    public static final String DEFAULT_HOST = "cvap103.nada.kth.se";
+    public static final int DEFAULT_PORT = 5555;
+
+    /**
+     * The start of a line that is sent instead of a board. A board line
+     * never starts with a letter.
+     */
+    public static final String ERROR_PREFIX = "Error: ";
+
+    /**
+     * The time to wait for the connection, in milliseconds
+     */
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Connects to a level server.
+     *
+     * @param host The host name.
+     * @param port The port.
+     * @throws IOException If the connection fails.
+     */
+    public LevelClient(final String host, final int port) throws IOException
+    {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream());
+        out = socket.getOutputStream();
+    }
+
+    /**
+     * Connects to the server given by the sokoban.host and sokoban.port
+     * system properties, or the course server by default.
+     *
+     * @return The client.
+     * @throws IOException If the connection fails.
+     */
+    public static LevelClient connect() throws IOException
+    {
+        return new LevelClient(System.getProperty("sokoban.host",
+                DEFAULT_HOST), Integer.getInteger("sokoban.port",
+                DEFAULT_PORT));
+    }
+
+    /**
+     * Asks for a level. The board is read with readBoard().
+     *
+     * @param number The number of the level.
+     * @throws IOException If the request can't be sent.
+     */
+    public void requestLevel(final int number) throws IOException
+    {
+        writeLine(Integer.toString(number));
+    }
+
+    /**
+     * Reads the next board from the server. Empty lines before the board are
+     * skipped, and the board ends at the first empty line after it, or when
+     * the server closes the connection.
+     *
+     * @return The board, with each line ended by '\n'.
+     * @throws IOException If the connection fails, is closed before the
+     *             board, or the server sends an error instead of the board.
+     */
+    public byte[] readBoard() throws IOException
+    {
+        final ByteArrayOutputStream board = new ByteArrayOutputStream();
+        while (true) {
+            final byte[] line = readLine();
+            if (line == null) {
+                if (board.size() == 0) {
+                    throw new EOFException("No board from the server");
+                }
+                break;
+            }
+            if (line.length == 0) {
+                if (board.size() > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (board.size() == 0 && isError(line)) {
+                throw new IOException("No board from the server: "
+                        + new String(line, StandardCharsets.ISO_8859_1));
+            }
+            board.write(line);
+            board.write('\n');
+        }
+        return board.toByteArray();
+    }
+
+    /**
+     * Sends a solution to the server. The result is read with readResult().
+     *
+     * @param solution The solution, or null to send an empty solution.
+     * @throws IOException If the solution can't be sent.
+     */
+    public void sendSolution(final String solution) throws IOException
+    {
+        writeLine(solution == null ? "" : solution.trim());
+    }
+
+    /**
+     * Reads the answer of the server to a solution.
+     *
+     * @return The answer, or null if the server closed the connection.
+     * @throws IOException If the connection fails.
+     */
+    public String readResult() throws IOException
+    {
+        byte[] line;
+        do {
+            line = readLine();
+        }
+        while (line != null && line.length == 0);
+        return line == null ? null : new String(line,
+                StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isError(final byte[] line)
+    {
+        final byte[] prefix = ERROR_PREFIX
+                .getBytes(StandardCharsets.ISO_8859_1);
+        return line.length >= prefix.length
+                && Arrays.equals(Arrays.copyOf(line, prefix.length), prefix);
+    }
+
+    /**
+     * Reads a line, without the line terminator.
+     *
+     * @return The line, or null at the end of the stream.
+     */
+    private byte[] readLine() throws IOException
+    {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            line.write(c);
+        }
+        if (c == -1 && line.size() == 0) {
+            return null;
+        }
+
+        final byte[] bytes = line.toByteArray();
+        if (bytes.length > 0 && bytes[bytes.length - 1] == '\r') {
+            return Arrays.copyOf(bytes, bytes.length - 1);
+        }
+        return bytes;
+    }
+
+    private void writeLine(final String line) throws IOException
+    {
+        out.write((line + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        socket.close();
+    }
+}
@@ -0,0 +1,268 @@
+package sokoban;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A level file (.slc) that is memory mapped instead of read into memory.
+ * When the file is opened, the offsets of the levels are found in one pass
+ * over the bytes, and then any level can be read without reading the others.
+ *
+ * The levels are numbered from 1 in the order they appear in the file, as in
+ * RunOffline, and each level is returned in the same form as
+ * BoardParser.getBoardStrings() gives it.
+ */
+public class LevelFile implements Levels, Iterable<String>
+{
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The offsets of the first and the end of the lines of each level, and of
+     * the header before it (or -1).
+     */
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] headers = new int[64];
+    private int count;
+
+    /**
+     * Opens and indexes a level file.
+     *
+     * @param file The level file.
+     * @throws IOException If the file can't be read, or is larger than 2 GB.
+     */
+    public LevelFile(final File file) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Level file too large: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+                    .size());
+        }
+        finally {
+            // The mapping stays valid after the file is closed
+            raf.close();
+        }
+        index();
+    }
+
+    /**
+     * Finds the levels. A line that starts with ';' ends the level before
+     * it, and levels without any non-blank lines are skipped.
+     */
+    private void index()
+    {
+        final int length = buffer.limit();
+        int start = 0;
+        int header = -1;
+        boolean content = false;
+
+        int pos = 0;
+        while (pos < length) {
+            final int end = lineEnd(pos);
+            if (buffer.get(pos) == ';') {
+                if (content) {
+                    add(start, pos, header);
+                }
+                header = pos;
+                start = end + 1;
+                content = false;
+            }
+            else if (!isBlank(pos, end)) {
+                content = true;
+            }
+            pos = end + 1;
+        }
+
+        if (content) {
+            add(start, length, header);
+        }
+    }
+
+    private void add(final int start, final int end, final int header)
+    {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * count);
+            ends = Arrays.copyOf(ends, 2 * count);
+            headers = Arrays.copyOf(headers, 2 * count);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        headers[count] = header;
+        count++;
+    }
+
+    /**
+     * Returns the offset of the '\n' at the end of the line, or the end of
+     * the file.
+     */
+    private int lineEnd(int pos)
+    {
+        final int length = buffer.limit();
+        while (pos < length && buffer.get(pos) != '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns whether the line has nothing but white space, as
+     * String.trim().isEmpty().
+     */
+    private boolean isBlank(final int start, final int end)
+    {
+        for (int i = start; i < end; i++) {
+            if ((buffer.get(i) & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of levels in the file.
+     *
+     * @return The number of levels.
+     */
+    @Override
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Returns a level as bytes, for the Board(byte[]) constructor.
+     *
+     * @param number The number of the level, starting at 1.
+     * @return The lines of the level, each ending with '\n', without blank
+     *         lines.
+     * @throws IndexOutOfBoundsException If there is no such level.
+     */
+    public byte[] getBytes(final int number)
+    {
+        checkNumber(number);
+        final int start = starts[number - 1];
+        final int end = ends[number - 1];
+
+        final byte[] level = new byte[end - start + 1];
+        int length = 0;
+        int pos = start;
+        while (pos < end) {
+            final int lineEnd = Math.min(lineEnd(pos), end);
+            if (!isBlank(pos, lineEnd)) {
+                int last = lineEnd;
+                if (buffer.get(last - 1) == '\r') {
+                    last--;
+                }
+                for (int i = pos; i < last; i++) {
+                    level[length++] = buffer.get(i);
+                }
+                level[length++] = '\n';
+            }
+            pos = lineEnd + 1;
+        }
+        return Arrays.copyOf(level, length);
+    }
+
+    /**
+     * Returns a level as a string.
+     *
+     * @param number The number of the level, starting at 1.
+     * @return The level, as BoardParser.getBoardStrings() gives it.
+     * @throws IndexOutOfBoundsException If there is no such level.
+     */
+    public String get(final int number)
+    {
+        return new String(getBytes(number), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the board of a level.
+     *
+     * @param number The number of the level, starting at 1.
+     * @return A new board.
+     * @throws IndexOutOfBoundsException If there is no such level.
+     */
+    @Override
+    public Board getBoard(final int number)
+    {
+        return new Board(getBytes(number));
+    }
+
+    /**
+     * Returns the header line before a level, such as ";LEVEL 13".
+     *
+     * @param number The number of the level, starting at 1.
+     * @return The header, or null if the level has no header.
+     * @throws IndexOutOfBoundsException If there is no such level.
+     */
+    public String getHeader(final int number)
+    {
+        checkNumber(number);
+        final int header = headers[number - 1];
+        if (header < 0) {
+            return null;
+        }
+
+        int end = lineEnd(header);
+        if (end > header && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        final byte[] bytes = new byte[end - header];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(header + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private void checkNumber(final int number)
+    {
+        if (number < 1 || number > count) {
+            throw new IndexOutOfBoundsException("Level " + number + " of "
+                    + count);
+        }
+    }
+
+    /**
+     * Returns an iterator over the levels, which reads each level when it is
+     * returned.
+     */
+    @Override
+    public Iterator<String> iterator()
+    {
+        return new Iterator<String>() {
+            private int next = 1;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next <= count;
+            }
+
+            @Override
+            public String next()
+            {
+                if (next > count) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
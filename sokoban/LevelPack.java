@@ -0,0 +1,233 @@
+package sokoban;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A binary file of levels that have already been parsed and analysed, so
+ * that a board can be created without parsing the text or finding the box
+ * traps again. The file is memory mapped, and any level can be read without
+ * reading the others.
+ *
+ * The file starts with the magic number, the format version, the Zobrist
+ * seed and the number of levels, followed by the offset of each level. Each
+ * level has its width and height (shorts), the square of the player (row *
+ * width + col), the Zobrist key of the boxes at the start, and four bitsets of
+ * the squares as longs: walls, goals, boxes and box traps. Everything is
+ * big-endian. A new version is needed when more analysis is stored.
+ *
+ * The Zobrist keys only depend on the seed and the square, not on the size
+ * of the key table, so a pack can only be read with the same seed.
+ */
+public class LevelPack implements Levels
+{
+    /**
+     * "SKPK"
+     */
+    public static final int MAGIC = 0x534b504b;
+
+    /**
+     * The version of the format written by this class
+     */
+    public static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 20;
+
+    /**
+     * The square flags stored as bitsets, in order
+     */
+    private static final byte[] BITSETS = { Board.WALL, Board.GOAL,
+            Board.BOX, Board.BOX_TRAP };
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    /**
+     * Opens a level pack.
+     *
+     * @param file The level pack.
+     * @throws IOException If the file can't be read, isn't a level pack, or
+     *             has another version or Zobrist seed.
+     */
+    public LevelPack(final File file) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Level pack too large: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+                    .size());
+        }
+        finally {
+            raf.close();
+        }
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a level pack: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Level pack version " + buffer.getInt(4)
+                    + " isn't supported: " + file);
+        }
+        if (buffer.getLong(8) != Zobrist.SEED) {
+            throw new IOException("Level pack has another Zobrist seed: "
+                    + file);
+        }
+        count = buffer.getInt(16);
+    }
+
+    /**
+     * Opens a level pack, or a text level file if the file isn't a level
+     * pack.
+     *
+     * @param file The file.
+     * @return The levels.
+     * @throws IOException If the file can't be read.
+     */
+    public static Levels open(final File file) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        final boolean pack;
+        try {
+            pack = raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC;
+        }
+        finally {
+            raf.close();
+        }
+        return pack ? new LevelPack(file) : new LevelFile(file);
+    }
+
+    @Override
+    public int size()
+    {
+        return count;
+    }
+
+    @Override
+    public Board getBoard(final int number)
+    {
+        if (number < 1 || number > count) {
+            throw new IndexOutOfBoundsException("Level " + number + " of "
+                    + count);
+        }
+
+        int pos = (int) buffer.getLong(HEADER_SIZE + 8 * (number - 1));
+        final int width = buffer.getShort(pos);
+        final int height = buffer.getShort(pos + 2);
+        final int player = buffer.getInt(pos + 4);
+        final long zobristKey = buffer.getLong(pos + 8);
+        pos += 16;
+
+        final int size = width * height;
+        final int words = words(size);
+        final byte[] squares = new byte[size];
+        for (final byte flag : BITSETS) {
+            for (int w = 0; w < words; w++) {
+                long bits = buffer.getLong(pos);
+                pos += 8;
+                while (bits != 0) {
+                    squares[64 * w + Long.numberOfTrailingZeros(bits)] |= flag;
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        return new Board(width, height, squares, player / width, player
+                % width, zobristKey);
+    }
+
+    private static int words(final int squares)
+    {
+        return (squares + 63) / 64;
+    }
+
+    /**
+     * Writes a level pack.
+     *
+     * @param levels The levels.
+     * @param file The file to write.
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(final Levels levels, final File file)
+            throws IOException
+    {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final DataOutputStream recordsOut = new DataOutputStream(records);
+        final long[] offsets = new long[levels.size()];
+        final long start = HEADER_SIZE + 8L * levels.size();
+        for (int i = 0; i < levels.size(); i++) {
+            offsets[i] = start + recordsOut.size();
+            writeBoard(levels.getBoard(i + 1), recordsOut);
+        }
+
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Zobrist.SEED);
+            out.writeInt(levels.size());
+            for (final long offset : offsets) {
+                out.writeLong(offset);
+            }
+            records.writeTo(out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static void writeBoard(final Board board,
+            final DataOutputStream out) throws IOException
+    {
+        out.writeShort(board.width);
+        out.writeShort(board.height);
+        out.writeInt(board.getPlayerRow() * board.width
+                + board.getPlayerCol());
+        out.writeLong(Zobrist.calculateHashTable(board));
+
+        for (final byte flag : BITSETS) {
+            final long[] bits = new long[words(board.width * board.height)];
+            for (int row = 0; row < board.height; row++) {
+                for (int col = 0; col < board.width; col++) {
+                    if (Board.is(board.cells[row][col], flag)) {
+                        final int square = row * board.width + col;
+                        bits[square / 64] |= 1L << square;
+                    }
+                }
+            }
+            for (final long word : bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Converts a level file to a level pack.
+     *
+     * @param args The level file and the level pack to write.
+     * @throws IOException If a file can't be read or written.
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.err
+                    .println("Usage: java sokoban.LevelPack  level_file  level_pack\n");
+            System.exit(2);
+        }
+
+        final LevelFile levels = new LevelFile(new File(args[0]));
+        final File pack = new File(args[1]);
+        write(levels, pack);
+        System.out.println("Wrote " + levels.size() + " levels to " + pack);
+    }
+}
@@ -0,0 +1,153 @@
+package sokoban;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A local stand-in for the level server, which serves the levels of a level
+ * file and checks the solutions, so that the client can be tested offline.
+ *
+ * A line with only a level number asks for that level, and the board is sent
+ * followed by an empty line, or a line starting with LevelClient.ERROR_PREFIX
+ * if there is no such level. Any other line is the solution to the oldest
+ * level that hasn't got a solution yet, and is answered with "Good solution"
+ * or "Bad solution" and the reason. Several levels may be asked for before
+ * the solutions are sent.
+ */
+public class LevelServer
+{
+    private final LevelFile levels;
+
+    /**
+     * Creates a server for the levels of a file.
+     *
+     * @param levels The levels.
+     */
+    public LevelServer(final LevelFile levels)
+    {
+        this.levels = levels;
+    }
+
+    /**
+     * Accepts connections, and serves each connection on its own thread. This
+     * method doesn't return.
+     *
+     * @param server The socket to accept the connections on.
+     * @throws IOException If a connection can't be accepted.
+     */
+    public void serve(final ServerSocket server) throws IOException
+    {
+        while (true) {
+            final Socket socket = server.accept();
+            final Thread connection = new Thread("connection") {
+                @Override
+                public void run()
+                {
+                    try {
+                        serve(socket);
+                    }
+                    catch (final IOException e) {
+                        // The client went away
+                    }
+                    finally {
+                        try {
+                            socket.close();
+                        }
+                        catch (final IOException e) {
+                            // Ignore
+                        }
+                    }
+                }
+            };
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    private void serve(final Socket socket) throws IOException
+    {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        final OutputStream out = socket.getOutputStream();
+        // The levels that have been sent but not solved, oldest first
+        final Deque<Integer> pending = new ArrayDeque<Integer>();
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && isNumber(line)) {
+                final int number = Integer.parseInt(line);
+                if (number < 1 || number > levels.size()) {
+                    write(out, LevelClient.ERROR_PREFIX + "no such level "
+                            + line + "\n");
+                    continue;
+                }
+                pending.addLast(number);
+                write(out, levels.get(number) + "\n");
+            }
+            else if (pending.isEmpty()) {
+                write(out, "Bad solution: no level has been asked for\n");
+            }
+            else {
+                final SolutionVerifier verifier = new SolutionVerifier(levels
+                        .getBoard(pending.removeFirst()));
+                write(out, verifier.verify(line) ? "Good solution\n"
+                        : "Bad solution: " + verifier.getReason() + "\n");
+            }
+        }
+    }
+
+    private static boolean isNumber(final String line)
+    {
+        if (line.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isDigit(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void write(final OutputStream out, final String text)
+            throws IOException
+    {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args The level file, and optionally the port (default 5555).
+     * @throws IOException If the file can't be read or the port opened.
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 1) {
+            System.err
+                    .println("Usage: java sokoban.LevelServer  level_file  [port]\n");
+            System.exit(2);
+        }
+
+        final LevelFile levels = new LevelFile(new File(args[0]));
+        final int port = args.length > 1 ? Integer.parseInt(args[1])
+                : LevelClient.DEFAULT_PORT;
+        // Only for local testing, so not reachable from other hosts
+        final ServerSocket server = new ServerSocket(port, 50, InetAddress
+                .getLoopbackAddress());
+        System.out.println("Serving " + levels.size() + " levels on port "
+                + server.getLocalPort());
+        new LevelServer(levels).serve(server);
+    }
+}
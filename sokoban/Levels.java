@@ -0,0 +1,23 @@
+package sokoban;
+
+/**
+ * A numbered collection of levels, such as a level file or a level pack.
+ */
+public interface Levels
+{
+    /**
+     * Returns the number of levels.
+     *
+     * @return The number of levels.
+     */
+    int size();
+
+    /**
+     * Returns the start board of a level.
+     *
+     * @param number The number of the level, starting at 1.
+     * @return A new board.
+     * @throws IndexOutOfBoundsException If there is no such level.
+     */
+    Board getBoard(int number);
+}
@@ -1,11 +1,9 @@
 package sokoban;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 
+import sokoban.solvers.SolveResult;
 import sokoban.solvers.Solver;
 import sokoban.solvers.SolverFactory;
 
@@ -15,9 +13,20 @@ import sokoban.solvers.SolverFactory;
 public class Main
 {
     /**
-     * The main method that is run when the program is executed
-     * 
-     * @param args The CLI argument list
+     * The system property that makes the client ask for all boards before
+     * solving the first one. Only use it with a server that reads the
+     * requests ahead, such as LevelServer.
+     */
+    public static final String PIPELINE_PROPERTY = "sokoban.pipeline";
+
+    /**
+     * The main method that is run when the program is executed. The server
+     * is given by the sokoban.host and sokoban.port system properties, and is
+     * the course server by default. The boards are asked for one at a time,
+     * unless sokoban.pipeline is true.
+     *
+     * @param args The CLI argument list: the solver and one or more board
+     *            numbers
      */
     public static void main(String[] args)
     {
@@ -26,54 +35,91 @@ public class Main
                     .println("You need to supply solver and board number as argument");
             return;
         }
-        int exitCode = 1;
-        
-        try {
-            byte[] boardBytes = new byte[1024];
-            Solver solver = SolverFactory.loadSolver(args[0]);
-            int boardNumber = Integer.parseInt(args[1]);
+        int exitCode = 0;
+
+        final List<Integer> boardNumbers = new ArrayList<Integer>();
+        for (int i = 1; i < args.length; i++) {
+            // Skip options such as -q
+            if (!args[i].startsWith("-")) {
+                boardNumbers.add(Integer.parseInt(args[i]));
+            }
+        }
 
-            Socket socket = new Socket("cvap103.nada.kth.se", 5555);
-            InputStream inRaw = socket.getInputStream();
-            BufferedReader in = new BufferedReader(new InputStreamReader(inRaw));
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        try {
+            final SolutionCache cache = SolutionCache.fromProperties();
+            final LevelClient client = LevelClient.connect();
+            try {
+                final boolean pipeline = Boolean
+                        .getBoolean(PIPELINE_PROPERTY);
+                final List<byte[]> boards = new ArrayList<byte[]>();
+                if (pipeline) {
+                    // Ask for all boards at once, so the server doesn't wait
+                    // for each request. The server answers in order, so all
+                    // boards come before the first result.
+                    for (final int boardNumber : boardNumbers) {
+                        client.requestLevel(boardNumber);
+                    }
+                    for (int i = 0; i < boardNumbers.size(); i++) {
+                        boards.add(client.readBoard());
+                    }
+                }
 
-            out.println(boardNumber);
+                for (int i = 0; i < boardNumbers.size(); i++) {
+                    final int boardNumber = boardNumbers.get(i);
+                    byte[] boardBytes;
+                    if (pipeline) {
+                        boardBytes = boards.get(i);
+                    }
+                    else {
+                        client.requestLevel(boardNumber);
+                        boardBytes = client.readBoard();
+                    }
+                    long beforeParse = System.currentTimeMillis();
+                    Board board = new Board(boardBytes);
+                    long parseTime = System.currentTimeMillis() - beforeParse;
+                    System.out.println("Board " + boardNumber);
+                    System.out.println(board);
+                    System.out.println("Parse time (ms): " + parseTime);
 
-            inRaw.read(boardBytes);
-            long beforeParse = System.currentTimeMillis();
-            Board board = new Board(boardBytes);
-            long parseTime = System.currentTimeMillis() - beforeParse;
-            System.out.println(board);
-            System.out.println("Parse time (ms): " + parseTime);
+                    Solver solver = SolverFactory.loadSolver(args[0]);
+                    long beforeSolve = System.currentTimeMillis();
 
-            long beforeSolve = System.currentTimeMillis();
+                    String solution;
+                    long nodes;
+                    if (cache != null) {
+                        SolveResult result = cache.solve(solver, board, null);
+                        solution = result.solution;
+                        nodes = result.nodes;
+                    }
+                    else {
+                        solution = solver.solve(board);
+                        nodes = solver.getIterationsCount();
+                    }
+                    long solveTime = System.currentTimeMillis() - beforeSolve;
 
-            String solution = solver.solve(board);
-            long solveTime = System.currentTimeMillis() - beforeSolve;
+                    client.sendSolution(solution);
+                    System.out.println("Solve time (ms): " + solveTime);
+                    System.out.println("Expanded nodes: " + nodes);
+                    System.out.println("Solution: " + solution);
 
-            out.println(solution);
-            System.out.println("Solve time (ms): " + solveTime);
-            System.out.println("Expanded nodes: " + solver.getIterationsCount());
-            System.out.println("Solution: " + solution);
+                    String result = client.readResult();
+                    System.out.println(result);
 
-            String result = in.readLine();
-            System.out.println(result);
-            
-            if (result.contains("Good solution")) {
-                exitCode = 0;
+                    if (result == null || !result.contains("Good solution")) {
+                        exitCode = 1;
+                    }
+                }
+            }
+            finally {
+                client.close();
             }
-            
-            out.close();
-            in.close();
-            socket.close();            
         }
         catch (Exception e) {
             exitCode = 1;
             e.printStackTrace();
             throw new RuntimeException(e);
         }
-        
+
         System.exit(exitCode);
     }
 }
@@ -1,8 +1,11 @@
 package sokoban;
 
 import java.io.File;
-import java.util.List;
+import java.io.IOException;
 
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.SearchProgressPrinter;
+import sokoban.solvers.SolveResult;
 import sokoban.solvers.Solver;
 import sokoban.solvers.SolverFactory;
 
@@ -17,37 +20,43 @@ public class RunOffline
      * 
      * @param args Contains what class to run, which solver, level and level
      *            file.
+     * @throws IOException If the level file can't be read.
      */
-    public static void main(final String[] args)
+    public static void main(final String[] args) throws IOException
     {
         if (args.length < 3) {
             System.err
-                    .println("Usage: java sokoban.RunOffline  solver  level_file  level_number\n");
+                    .println("Usage: java sokoban.RunOffline  solver  level_file|level_pack  level_number  [time_limit_s]\n");
             System.exit(2);
         }
 
         int exitCode = 1;
         final int boardNumber = Integer.parseInt(args[2]);
         final Solver solver = SolverFactory.loadSolver(args[0]);
+        if (Boolean.getBoolean("sokoban.progress")) {
+            solver.setSearchListener(new SearchProgressPrinter(System.err));
+        }
+        final CancellationToken deadline = args.length > 3 ? CancellationToken
+                .withTimeout(Long.parseLong(args[3]) * 1000) : null;
 
-        final File slc = new File(args[1]);
-        final List<String> boards = BoardParser.getBoardStrings(slc);
-
-        final Board board = new Board(boards.get(boardNumber - 1).getBytes());
+        final Levels levels = LevelPack.open(new File(args[1]));
+        final Board board = levels.getBoard(boardNumber);
 
         System.out.println(board);
 
-        final long beforeSolve = System.currentTimeMillis();
-        final String solution = solver.solve(board);
-        final long solveTime = System.currentTimeMillis() - beforeSolve;
+        final SolutionCache cache = SolutionCache.fromProperties();
+        final SolveResult result = cache != null ? cache.solve(solver, board,
+                deadline) : SolveResult.solve(solver, board, deadline);
 
-        if (solution != null) {
+        if (result.solution != null) {
             exitCode = 0;
         }
 
-        System.out.println("Solve time (ms): " + solveTime);
-        System.out.println("Expanded nodes: " + solver.getIterationsCount());
-        System.out.println("Solution: " + solution);
+        System.out.println("Status: " + result.status
+                + (result.timedOut ? " (timed out)" : ""));
+        System.out.println("Solve time (ms): " + result.elapsedMillis);
+        System.out.println("Expanded nodes: " + result.nodes);
+        System.out.println("Solution: " + result.solution);
 
         System.exit(exitCode);
     }
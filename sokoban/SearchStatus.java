@@ -21,4 +21,9 @@ public enum SearchStatus {
      */
     Failed,
 
+    /**
+     * The search was cancelled, or ran out of time, before it finished.
+     */
+    Cancelled,
+
 };
\ No newline at end of file
@@ -0,0 +1,410 @@
+package sokoban;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.SolveResult;
+import sokoban.solvers.Solver;
+
+/**
+ * A directory of solutions that have been found before, so that a level
+ * that has already been solved doesn't have to be searched again.
+ *
+ * A level is found by its fingerprint: a hash of its walls, goals and boxes,
+ * cropped to the walls, and of the area the player can reach. Levels that
+ * only differ in the padding around them or in where the player starts in
+ * the same area therefore share one entry; the solution is adjusted with a
+ * walk to the square it was found from. Every solution is replayed with
+ * SolutionVerifier before it is stored and again before it is returned, so a
+ * damaged or colliding entry is never used.
+ *
+ * Each entry is a file named by the fingerprint. The file times record when
+ * the entries were last used, and the least recently used entries are
+ * deleted when the cache has too many.
+ *
+ * The cache is used when the sokoban.cache system property names its
+ * directory, and sokoban.cache.size (default 10000) sets the number of
+ * entries. It isn't used by default, since it would hide the speed of the
+ * solvers.
+ */
+public class SolutionCache
+{
+    /**
+     * The default number of entries
+     */
+    public static final int DEFAULT_SIZE = 10000;
+
+    private static final String SUFFIX = ".sol";
+
+    private final File directory;
+    private final int maxEntries;
+
+    /**
+     * Opens a cache, and creates the directory if needed.
+     *
+     * @param directory The directory of the entries.
+     * @param maxEntries The number of entries to keep.
+     * @throws IOException If the directory can't be created.
+     */
+    public SolutionCache(final File directory, final int maxEntries)
+            throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create the cache " + directory);
+        }
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Opens the cache given by the system properties.
+     *
+     * @return The cache, or null if no cache is set.
+     * @throws IOException If the directory can't be created.
+     */
+    public static SolutionCache fromProperties() throws IOException
+    {
+        final String directory = System.getProperty("sokoban.cache");
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        return new SolutionCache(new File(directory), Integer.getInteger(
+                "sokoban.cache.size", DEFAULT_SIZE));
+    }
+
+    /**
+     * A level in the canonical form that the fingerprint is made of.
+     */
+    private static class Key
+    {
+        final int width;
+        final int height;
+        /**
+         * The walls, goals and boxes of the cropped level
+         */
+        final byte[] squares;
+        /**
+         * The square of the player in the cropped level
+         */
+        final int player;
+        /**
+         * The first square of the area the player can reach
+         */
+        final int area;
+        final String fingerprint;
+        /**
+         * Checks solutions from the player square
+         */
+        final SolutionVerifier verifier;
+
+        Key(final Board board)
+        {
+            int top = board.height, bottom = -1, left = board.width, right = -1;
+            for (int row = 0; row < board.height; row++) {
+                for (int col = 0; col < board.width; col++) {
+                    if (Board.is(board.cells[row][col], Board.WALL)) {
+                        top = Math.min(top, row);
+                        bottom = Math.max(bottom, row);
+                        left = Math.min(left, col);
+                        right = Math.max(right, col);
+                    }
+                }
+            }
+            if (bottom < 0) {
+                top = left = 0;
+                bottom = board.height - 1;
+                right = board.width - 1;
+            }
+
+            width = right - left + 1;
+            height = bottom - top + 1;
+            squares = new byte[width * height];
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    squares[row * width + col] = (byte) (board.cells[top + row][left
+                            + col] & (Board.WALL | Board.GOAL | Board.BOX));
+                }
+            }
+            player = (board.getPlayerRow() - top) * width
+                    + board.getPlayerCol() - left;
+
+            int first = player;
+            for (final int square : walk(player, -1)) {
+                first = Math.min(first, square);
+            }
+            area = first;
+
+            fingerprint = hash();
+            verifier = new SolutionVerifier(board);
+        }
+
+        /**
+         * Finds the squares the player can reach, by a breadth first search
+         * that records where each square was reached from.
+         *
+         * @param from The start square.
+         * @param to The square to stop at, or -1 to find all squares.
+         * @return The squares in the order they were reached, or the path to
+         *         the target in reverse order.
+         */
+        int[] walk(final int from, final int to)
+        {
+            final int[] parent = new int[squares.length];
+            Arrays.fill(parent, -1);
+            parent[from] = from;
+            final int[] queue = new int[squares.length];
+            int head = 0, tail = 0;
+            queue[tail++] = from;
+
+            while (head < tail) {
+                final int square = queue[head++];
+                if (square == to) {
+                    int length = 0;
+                    for (int s = to; s != from; s = parent[s]) {
+                        queue[length++] = s;
+                    }
+                    queue[length++] = from;
+                    return Arrays.copyOf(queue, length);
+                }
+
+                final int row = square / width;
+                final int col = square % width;
+                for (final int[] move : Board.moves) {
+                    final int r = row + move[0];
+                    final int c = col + move[1];
+                    if (r < 0 || r >= height || c < 0 || c >= width) {
+                        continue;
+                    }
+                    final int next = r * width + c;
+                    if (parent[next] < 0
+                            && (squares[next] & (Board.WALL | Board.BOX)) == 0) {
+                        parent[next] = square;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            return to < 0 ? Arrays.copyOf(queue, tail) : null;
+        }
+
+        /**
+         * Returns the moves that walk the player to a square in its area.
+         *
+         * @param to The square.
+         * @return The moves, or null if the square can't be reached.
+         */
+        String walkTo(final int to)
+        {
+            final int[] path = walk(player, to);
+            if (path == null) {
+                return null;
+            }
+            final StringBuilder moves = new StringBuilder();
+            for (int i = path.length - 1; i > 0; i--) {
+                final int step = path[i - 1] - path[i];
+                moves.append(step == -width ? 'U' : step == width ? 'D'
+                        : step == -1 ? 'L' : 'R');
+                moves.append(' ');
+            }
+            return moves.toString();
+        }
+
+        private String hash()
+        {
+            final MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            }
+            catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            digest.update(new byte[] { (byte) (width >> 8), (byte) width,
+                    (byte) (height >> 8), (byte) height,
+                    (byte) (area >> 24), (byte) (area >> 16),
+                    (byte) (area >> 8), (byte) area });
+            digest.update(squares);
+
+            final StringBuilder hex = new StringBuilder(40);
+            for (final byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+    }
+
+    /**
+     * Looks up the solution of a board.
+     *
+     * @param board The board, at its start position.
+     * @return The solution, or null if the level isn't in the cache.
+     */
+    public String get(final Board board)
+    {
+        return get(new Key(board));
+    }
+
+    private String get(final Key key)
+    {
+        final File file = new File(directory, key.fingerprint + SUFFIX);
+        final int start;
+        final String moves;
+        try {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.ISO_8859_1));
+            try {
+                start = Integer.parseInt(in.readLine().trim());
+                moves = in.readLine();
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (final IOException e) {
+            // Not in the cache
+            return null;
+        }
+        catch (final RuntimeException e) {
+            // A damaged entry, which is replaced when the level is solved
+            return null;
+        }
+        if (moves == null || start < 0 || start >= key.squares.length) {
+            return null;
+        }
+
+        final String walk = key.walkTo(start);
+        if (walk == null) {
+            return null;
+        }
+        final String solution = walk + moves;
+        if (!key.verifier.verify(solution)) {
+            return null;
+        }
+
+        // Mark the entry as recently used
+        file.setLastModified(System.currentTimeMillis());
+        return solution;
+    }
+
+    /**
+     * Stores the solution of a board, if it solves the board.
+     *
+     * @param board The board, at its start position.
+     * @param solution The solution.
+     * @return True if the solution was stored.
+     */
+    public boolean put(final Board board, final String solution)
+    {
+        return put(new Key(board), solution);
+    }
+
+    private boolean put(final Key key, final String solution)
+    {
+        if (solution == null || !key.verifier.verify(solution)) {
+            return false;
+        }
+
+        // Write to a temporary file first, so that a reader never sees half
+        // an entry
+        final File file = new File(directory, key.fingerprint + SUFFIX);
+        final File temp = new File(directory, key.fingerprint + "."
+                + Thread.currentThread().getId() + ".tmp");
+        try {
+            final Writer out = new OutputStreamWriter(new FileOutputStream(
+                    temp), StandardCharsets.ISO_8859_1);
+            try {
+                out.write(key.player + "\n" + solution.trim() + "\n");
+            }
+            finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    temp.delete();
+                    return false;
+                }
+            }
+        }
+        catch (final IOException e) {
+            temp.delete();
+            return false;
+        }
+
+        evict();
+        return true;
+    }
+
+    /**
+     * Deletes the least recently used entries while there are too many.
+     */
+    private synchronized void evict()
+    {
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name)
+            {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null || files.length <= maxEntries) {
+            return;
+        }
+
+        // The times are read once, since they change when entries are used
+        final long[][] entries = new long[files.length][];
+        for (int i = 0; i < files.length; i++) {
+            entries[i] = new long[] { files[i].lastModified(), i };
+        }
+        Arrays.sort(entries, new Comparator<long[]>() {
+            @Override
+            public int compare(final long[] a, final long[] b)
+            {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        for (int i = 0; i < files.length - maxEntries; i++) {
+            files[(int) entries[i][1]].delete();
+        }
+    }
+
+    /**
+     * Returns the cached solution of a board, or runs the solver and stores
+     * its solution.
+     *
+     * @param solver The solver.
+     * @param board The board to solve.
+     * @param token The token, or null to never cancel.
+     * @return The result. A cached solution has no nodes.
+     */
+    public SolveResult solve(final Solver solver, final Board board,
+            final CancellationToken token)
+    {
+        final long start = System.nanoTime();
+        // The key is made before the solver can change the board
+        final Key key = new Key(board);
+        final String cached = get(key);
+        if (cached != null) {
+            return SolveResult.known(cached,
+                    (System.nanoTime() - start) / 1000000);
+        }
+
+        final SolveResult result = SolveResult.solve(solver, board, token);
+        if (result.solution != null) {
+            put(key, result.solution);
+        }
+        return result;
+    }
+}
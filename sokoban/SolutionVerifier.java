@@ -0,0 +1,311 @@
+package sokoban;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Replays solutions on a level and checks that they solve it. The level is
+ * stored as one array of squares, and a solution is replayed on a copy of it
+ * without allocating anything, so the same verifier can check many
+ * solutions quickly.
+ *
+ * A solution is a string of the moves U, D, L and R, as
+ * Board.solutionToString() gives it. Spaces are ignored, and lower case
+ * moves are accepted as well.
+ *
+ * The main method checks a solutions file, with one "level: moves" line per
+ * level, as BatchRunner writes it.
+ */
+public class SolutionVerifier
+{
+    /**
+     * The reasons why a solution can fail
+     */
+    public enum Failure {
+        /**
+         * A character that isn't a move
+         */
+        UNKNOWN_MOVE("unknown move"),
+        /**
+         * The player walked into a wall
+         */
+        WALL("walked into a wall"),
+        /**
+         * A box was pushed into a wall or another box
+         */
+        BLOCKED_BOX("blocked box"),
+        /**
+         * All moves were made, but some boxes aren't on goals
+         */
+        UNSOLVED("not all boxes are on goals");
+
+        private final String description;
+
+        private Failure(final String description)
+        {
+            this.description = description;
+        }
+
+        @Override
+        public String toString()
+        {
+            return description;
+        }
+    }
+
+    private final int width;
+    private final byte[] start;
+    private final int startPlayer;
+    private final int startBoxesOffGoals;
+
+    /**
+     * The squares of the solution being replayed
+     */
+    private final byte[] squares;
+
+    private int moves;
+    private int pushes;
+    private Failure failure;
+    private int failedMove;
+
+    /**
+     * Creates a verifier for the start position of a board.
+     *
+     * @param board The board. It isn't changed.
+     */
+    public SolutionVerifier(final Board board)
+    {
+        width = board.width;
+        start = new byte[board.width * board.height];
+        int boxesOffGoals = 0;
+        for (int row = 0; row < board.height; row++) {
+            for (int col = 0; col < board.width; col++) {
+                final byte square = (byte) (board.cells[row][col] & (Board.WALL
+                        | Board.BOX | Board.GOAL));
+                start[row * width + col] = square;
+                if (square == Board.BOX) {
+                    boxesOffGoals++;
+                }
+            }
+        }
+        startPlayer = board.getPlayerRow() * width + board.getPlayerCol();
+        startBoxesOffGoals = boxesOffGoals;
+        squares = new byte[start.length];
+    }
+
+    /**
+     * Replays a solution. The counts and the failure of the solution can be
+     * read afterwards.
+     *
+     * @param solution The moves.
+     * @return True if the solution solves the level.
+     */
+    public boolean verify(final CharSequence solution)
+    {
+        System.arraycopy(start, 0, squares, 0, start.length);
+        int player = startPlayer;
+        int boxesOffGoals = startBoxesOffGoals;
+        moves = 0;
+        pushes = 0;
+        failure = null;
+        failedMove = -1;
+
+        for (int i = 0; i < solution.length(); i++) {
+            final int step;
+            switch (solution.charAt(i)) {
+                case ' ':
+                    continue;
+                case 'U':
+                case 'u':
+                    step = -width;
+                    break;
+                case 'D':
+                case 'd':
+                    step = width;
+                    break;
+                case 'L':
+                case 'l':
+                    if (player % width == 0) {
+                        return fail(Failure.WALL);
+                    }
+                    step = -1;
+                    break;
+                case 'R':
+                case 'r':
+                    if (player % width == width - 1) {
+                        return fail(Failure.WALL);
+                    }
+                    step = 1;
+                    break;
+                default:
+                    return fail(Failure.UNKNOWN_MOVE);
+            }
+
+            final int next = player + step;
+            if (!inside(next) || (squares[next] & Board.WALL) != 0) {
+                return fail(Failure.WALL);
+            }
+            if ((squares[next] & Board.BOX) != 0) {
+                final int beyond = next + step;
+                if (!inside(beyond)
+                        || (step == -1 && next % width == 0)
+                        || (step == 1 && next % width == width - 1)
+                        || (squares[beyond] & (Board.WALL | Board.BOX)) != 0) {
+                    return fail(Failure.BLOCKED_BOX);
+                }
+                squares[next] &= ~Board.BOX;
+                squares[beyond] |= Board.BOX;
+                if ((squares[next] & Board.GOAL) == 0) {
+                    boxesOffGoals--;
+                }
+                if ((squares[beyond] & Board.GOAL) == 0) {
+                    boxesOffGoals++;
+                }
+                pushes++;
+            }
+            player = next;
+            moves++;
+        }
+
+        if (boxesOffGoals > 0) {
+            failure = Failure.UNSOLVED;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean inside(final int square)
+    {
+        return square >= 0 && square < squares.length;
+    }
+
+    private boolean fail(final Failure reason)
+    {
+        failure = reason;
+        failedMove = moves + 1;
+        return false;
+    }
+
+    /**
+     * Returns the number of moves made by the last solution, up to the
+     * failed move.
+     *
+     * @return The number of moves.
+     */
+    public int getMoves()
+    {
+        return moves;
+    }
+
+    /**
+     * Returns the number of pushes made by the last solution, up to the
+     * failed move.
+     *
+     * @return The number of pushes.
+     */
+    public int getPushes()
+    {
+        return pushes;
+    }
+
+    /**
+     * Returns why the last solution failed.
+     *
+     * @return The failure, or null if the solution was correct.
+     */
+    public Failure getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Returns the move at which the last solution failed, counting the moves
+     * from 1.
+     *
+     * @return The move, or -1 if the solution was correct or all moves could
+     *         be made.
+     */
+    public int getFailedMove()
+    {
+        return failedMove;
+    }
+
+    /**
+     * Describes why the last solution failed, such as "walked into a wall at
+     * move 3".
+     *
+     * @return The reason, or null if the solution was correct.
+     */
+    public String getReason()
+    {
+        if (failure == null) {
+            return null;
+        }
+        return failedMove > 0 ? failure + " at move " + failedMove : failure
+                .toString();
+    }
+
+    /**
+     * Checks a solutions file against a level file.
+     *
+     * @param args The level file (or level pack) and the solutions file.
+     * @throws IOException If a file can't be read.
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.err
+                    .println("Usage: java sokoban.SolutionVerifier  level_file|level_pack  solutions_file\n");
+            System.exit(2);
+        }
+
+        final Levels levels = LevelPack.open(new File(args[0]));
+        final BufferedReader in = new BufferedReader(new FileReader(args[1]));
+        final long start = System.nanoTime();
+        int valid = 0;
+        int invalid = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+
+                final int number;
+                try {
+                    number = Integer.parseInt(line.substring(0, colon).trim());
+                }
+                catch (final NumberFormatException e) {
+                    continue;
+                }
+                if (number < 1 || number > levels.size()) {
+                    System.out.println(number + ": no such level");
+                    invalid++;
+                    continue;
+                }
+
+                final SolutionVerifier verifier = new SolutionVerifier(levels
+                        .getBoard(number));
+                if (verifier.verify(line.substring(colon + 1))) {
+                    valid++;
+                }
+                else {
+                    System.out.println(number + ": " + verifier.getReason());
+                    invalid++;
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        final long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("Valid: " + valid);
+        System.out.println("Invalid: " + invalid);
+        System.out.println("Time (ms): " + millis);
+        System.exit(invalid == 0 ? 0 : 1);
+    }
+}
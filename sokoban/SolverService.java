@@ -0,0 +1,365 @@
+package sokoban;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.SolveResult;
+import sokoban.solvers.Solver;
+import sokoban.solvers.SolverFactory;
+
+/**
+ * A long running solver process, which keeps the JIT warm between the
+ * levels. Requests are read from stdin, or from connections to a local
+ * port, and solved on a fixed pool of worker threads.
+ *
+ * A request is a few header lines, then the board, then an empty line:
+ *
+ * <pre>
+ * solver IDSPusher
+ * deadline 60000
+ * board
+ * #####
+ * #@$.#
+ * #####
+ *
+ * </pre>
+ *
+ * The deadline is in milliseconds and is optional, as is the solver
+ * (IDSPusher by default). The response has the same form, without a board:
+ *
+ * <pre>
+ * status Solution
+ * timedout false
+ * nodes 12
+ * millis 3
+ * solution R
+ *
+ * </pre>
+ *
+ * A request that can't be solved gets "status Error" and a "message" line.
+ * Requests may be sent before the earlier responses have arrived, and the
+ * responses are always sent in the order of the requests.
+ */
+public class SolverService
+{
+    /**
+     * The solver used when a request doesn't name one
+     */
+    public static final String DEFAULT_SOLVER = "IDSPusher";
+
+    /**
+     * The stack size of the worker threads, since the IDS solvers recurse
+     * deeply.
+     */
+    private static final long STACK_SIZE = 64 * 1024 * 1024;
+
+    private final ExecutorService workers;
+    private final SolutionCache cache;
+
+    /**
+     * Creates a service.
+     *
+     * @param threads The number of requests to solve at a time.
+     */
+    public SolverService(final int threads)
+    {
+        this(threads, null);
+    }
+
+    /**
+     * Creates a service that looks up the boards in a solution cache before
+     * solving them.
+     *
+     * @param threads The number of requests to solve at a time.
+     * @param cache The solution cache, or null.
+     */
+    public SolverService(final int threads, final SolutionCache cache)
+    {
+        this.cache = cache;
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r)
+            {
+                final Thread thread = new Thread(null, r, "solver",
+                        STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * One request.
+     */
+    private static class Request implements Callable<String>
+    {
+        String solver = DEFAULT_SOLVER;
+        long deadline;
+        final StringBuilder board = new StringBuilder();
+        String error;
+        SolutionCache cache;
+
+        @Override
+        public String call()
+        {
+            if (error != null) {
+                return error(error);
+            }
+
+            final Solver instance = SolverFactory.loadSolver(solver);
+            if (instance == null) {
+                return error("unknown solver " + solver);
+            }
+
+            final SolveResult result;
+            try {
+                final CancellationToken token = deadline > 0 ? CancellationToken
+                        .withTimeout(deadline)
+                        : null;
+                final Board start = new Board(board.toString().getBytes());
+                result = cache != null ? cache.solve(instance, start, token)
+                        : SolveResult.solve(instance, start, token);
+            }
+            catch (final RuntimeException e) {
+                return error(e.toString());
+            }
+            catch (final OutOfMemoryError e) {
+                return error("out of memory");
+            }
+
+            return "status " + result.status + "\ntimedout "
+                    + result.timedOut + "\nnodes " + result.nodes
+                    + "\nmillis " + result.elapsedMillis + "\nsolution "
+                    + (result.solution == null ? "" : result.solution.trim())
+                    + "\n\n";
+        }
+
+        private static String error(final String message)
+        {
+            return "status Error\nmessage " + message.replace('\n', ' ')
+                    + "\n\n";
+        }
+    }
+
+    /**
+     * Reads the next request.
+     *
+     * @return The request, or null at the end of the input.
+     */
+    private static Request readRequest(final BufferedReader in)
+            throws IOException
+    {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) {
+                return null;
+            }
+        }
+        while (line.trim().isEmpty());
+
+        final Request request = new Request();
+        for (; line != null && !line.equals("board"); line = in.readLine()) {
+            final String[] header = line.trim().split("\\s+", 2);
+            final String value = header.length > 1 ? header[1] : "";
+            if (header[0].equals("solver")) {
+                request.solver = value;
+            }
+            else if (header[0].equals("deadline")) {
+                try {
+                    request.deadline = Long.parseLong(value);
+                }
+                catch (final NumberFormatException e) {
+                    request.error = "bad deadline " + value;
+                }
+            }
+            else if (header[0].isEmpty()) {
+                request.error = "no board";
+                return request;
+            }
+            else {
+                request.error = "unknown header " + header[0];
+            }
+        }
+
+        for (line = in.readLine(); line != null && !line.isEmpty(); line = in
+                .readLine()) {
+            request.board.append(line).append('\n');
+        }
+        if (request.board.length() == 0 && request.error == null) {
+            request.error = "no board";
+        }
+        return request;
+    }
+
+    /**
+     * Answers the requests from a stream until it ends. The requests are
+     * solved in the worker pool, so several requests from the same stream
+     * can be solved at a time.
+     *
+     * @param in The requests.
+     * @param out The responses.
+     * @throws IOException If the stream can't be read.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    public void serve(final BufferedReader in, final Writer out)
+            throws IOException, InterruptedException
+    {
+        final BlockingQueue<Future<String>> responses = new LinkedBlockingQueue<Future<String>>();
+        // Marks the end of the responses, and is never run
+        final Future<String> end = new FutureTask<String>(new Runnable() {
+            @Override
+            public void run()
+            {
+            }
+        }, null);
+
+        final Thread writer = new Thread("responses") {
+            @Override
+            public void run()
+            {
+                try {
+                    while (true) {
+                        final Future<String> response = responses.take();
+                        if (response == end) {
+                            break;
+                        }
+
+                        String text;
+                        try {
+                            text = response.get();
+                        }
+                        catch (final ExecutionException e) {
+                            text = Request.error(e.getCause().toString());
+                        }
+                        out.write(text);
+                        out.flush();
+                    }
+                }
+                catch (final InterruptedException e) {
+                    // Stopped
+                }
+                catch (final IOException e) {
+                    // The client went away
+                }
+            }
+        };
+        writer.start();
+
+        try {
+            Request request;
+            while ((request = readRequest(in)) != null) {
+                request.cache = cache;
+                responses.put(workers.submit(request));
+            }
+        }
+        finally {
+            responses.put(end);
+            writer.join();
+        }
+    }
+
+    /**
+     * Accepts connections on a local port, and serves each connection on its
+     * own thread. This method doesn't return.
+     *
+     * @param port The port.
+     * @throws IOException If the port can't be opened.
+     */
+    public void listen(final int port) throws IOException
+    {
+        final ServerSocket server = new ServerSocket(port, 50, InetAddress
+                .getLoopbackAddress());
+        while (true) {
+            final Socket socket = server.accept();
+            final Thread connection = new Thread("connection") {
+                @Override
+                public void run()
+                {
+                    try {
+                        serve(new BufferedReader(new InputStreamReader(
+                                socket.getInputStream())),
+                                new OutputStreamWriter(socket
+                                        .getOutputStream()));
+                    }
+                    catch (final IOException e) {
+                        // The client went away
+                    }
+                    catch (final InterruptedException e) {
+                        // Stopped
+                    }
+                    finally {
+                        try {
+                            socket.close();
+                        }
+                        catch (final IOException e) {
+                            // Ignore
+                        }
+                    }
+                }
+            };
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args Optionally the port to listen on (stdin is used
+     *            otherwise), and the number of worker threads (default the
+     *            number of processors).
+     */
+    public static void main(final String[] args) throws IOException,
+            InterruptedException
+    {
+        final int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        final SolverService service = new SolverService(threads,
+                SolutionCache.fromProperties());
+
+        // The solvers print their progress, which would be mixed with the
+        // responses on stdout
+        final PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b)
+            {
+                // Discard
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len)
+            {
+                // Discard
+            }
+        }));
+
+        if (args.length > 0 && !args[0].equals("-")) {
+            service.listen(Integer.parseInt(args[0]));
+        }
+        else {
+            service.serve(new BufferedReader(new InputStreamReader(System.in)),
+                    new PrintWriter(stdout));
+        }
+    }
+}
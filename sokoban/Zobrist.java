@@ -3,8 +3,6 @@
  */
 package sokoban;
 
-import java.util.Random;
-
 /**
  * Our application of the Zobrist hash algorithm considers empty cells and
  * boxes.
@@ -22,11 +20,18 @@ public final class Zobrist
     public final static byte BOX = 1;
 
     /**
-     * TODO document the different indices here
+     * The seed of the keys. The key of a square only depends on the seed and
+     * the square, so the hashes of a board are the same in every run and can
+     * be stored on disk. A file of stored hashes must record the seed.
      */
-    public static long[][][] hash;
+    public static final long SEED = 0x5e3779b97f4a7c15L;
 
-    private static Random rand;
+    /**
+     * The keys, indexed by [EMPTY or BOX][row][column]. The table only grows,
+     * and every table has the same keys for the same squares, so a board can
+     * use the table while a larger board replaces it.
+     */
+    private static volatile long[][][] hash = new long[2][0][0];
 
     /**
      * Calculate the hash table and the hash for the specified board
@@ -36,26 +41,14 @@ public final class Zobrist
      */
     public static long calculateHashTable(final Board board)
     {
-        // hash = rand.nextLong();
-        rand = new Random();
-
-        // TODO might be faster to change the indexes here
-        hash = new long[2][board.height][board.width];
-
-        // Fill them with random stuff
-        for (int i = 0; i < hash.length; ++i) {
-            for (int j = 0; j < board.height; ++j) {
-                for (int k = 0; k < board.width; ++k) {
-                    hash[i][j][k] = rand.nextLong();
-                }
-            }
-        }
+        ensureSize(board.height, board.width);
+        final long[][][] hash = Zobrist.hash;
 
         long key = 0;
 
         for (int row = 0; row < board.height; ++row) {
             for (int col = 0; col < board.width; ++col) {
-                if (board.cells[row][col] == Board.BOX) {
+                if (Board.is(board.cells[row][col], Board.BOX)) {
                     key ^= hash[BOX][row][col];
                 }
                 else {
@@ -67,6 +60,48 @@ public final class Zobrist
         return key;
     }
 
+    /**
+     * Makes the table large enough for a board.
+     *
+     * @param height The height of the board.
+     * @param width The width of the board.
+     */
+    static synchronized void ensureSize(final int height,
+            final int width)
+    {
+        final long[][][] old = hash;
+        if (old[0].length >= height
+                && (old[0].length == 0 || old[0][0].length >= width)) {
+            return;
+        }
+
+        final int rows = Math.max(height, old[0].length);
+        final int cols = Math.max(width, old[0].length == 0 ? 0
+                : old[0][0].length);
+        final long[][][] table = new long[2][rows][cols];
+        for (int i = 0; i < table.length; ++i) {
+            for (int j = 0; j < rows; ++j) {
+                for (int k = 0; k < cols; ++k) {
+                    table[i][j][k] = key(i, j, k);
+                }
+            }
+        }
+        hash = table;
+    }
+
+    /**
+     * Returns the key of a square, by mixing the seed and the square with
+     * the SplitMix64 finalizer.
+     */
+    private static long key(final int entity, final int row, final int col)
+    {
+        long z = SEED + 0x9e3779b97f4a7c15L
+                * (((long) entity << 42 | (long) row << 21 | col) + 1);
+        z = (z ^ z >>> 30) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ z >>> 27) * 0x94d049bb133111ebL;
+        return z ^ z >>> 31;
+    }
+
     /**
      * Updates the given hash key by XOR:ing the specified entity on the
      * position specified by the row and column.
@@ -1,16 +1,31 @@
 package sokoban.benchmarking;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Locale;
 
 import sokoban.Board;
 import sokoban.BoardParser;
+import sokoban.solvers.AllocationGroup;
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.SolveResult;
 import sokoban.solvers.Solver;
 import sokoban.solvers.SolverFactory;
 
 /**
  * Benchmarker uses a Sokoban solver to solve different boards several times
  * while benchmarking performance.
+ *
+ * Usage: Benchmarker solver [levels file] [first[-last]] [options]
+ *
+ * The options are --warmup n (untimed runs per board, default 2), --runs n
+ * (timed runs per board, default 10), --timeout seconds (per run), --csv file
+ * and --json file. A new solver is created for each run, so that no state is
+ * kept between the runs.
  */
 public class Benchmarker
 {
@@ -23,42 +38,116 @@ public class Benchmarker
     public static final int TEST_RUNS = 10;
 
     /**
-     * The solver to be benchmarked.
+     * The number of untimed runs on each board before the tests, to let the
+     * JIT compile the solver.
      */
-    private Solver solver;
+    public static final int WARMUP_RUNS = 2;
 
     /**
-     * Boards to test.
+     * The stack size of the thread that runs the solver, since the IDS
+     * solvers recurse deeply.
      */
-    private ArrayList<Board> boards;
+    private static final long STACK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The name of the solver to be benchmarked.
+     */
+    private final String solverName;
+
+    /**
+     * Boards to test, as strings so that each run gets a new board.
+     */
+    private final ArrayList<String> boards;
+
+    /**
+     * The level numbers of the boards.
+     */
+    private final ArrayList<Integer> levelNumbers;
 
     /**
      * A list of results for each solved board.
      */
-    private ArrayList<ResultsList> boardResults;
+    private final ArrayList<ResultsList> boardResults;
+
+    /**
+     * The group of the threads that run the solvers, which counts their
+     * allocations.
+     */
+    private final AllocationGroup group = new AllocationGroup("benchmark");
+
+    private int warmupRuns = WARMUP_RUNS;
+    private int testRuns = TEST_RUNS;
+    private long timeoutMillis;
 
     /**
      * Constructs a new benchmarker of the specified solver.
+     *
+     * @param solverName The class name of the solver, as for SolverFactory.
      */
-    public Benchmarker(Solver solver)
+    public Benchmarker(String solverName)
     {
-        this.solver = solver;
-        this.boards = new ArrayList<Board>();
+        if (SolverFactory.loadSolver(solverName) == null) {
+            throw new IllegalArgumentException("Unknown solver: "
+                    + solverName);
+        }
+        this.solverName = solverName;
+        this.boards = new ArrayList<String>();
+        this.levelNumbers = new ArrayList<Integer>();
         this.boardResults = new ArrayList<ResultsList>();
     }
 
     /**
-     * Sets up the benchmarking environment.
+     * Sets the number of untimed runs on each board.
+     */
+    public void setWarmupRuns(int runs)
+    {
+        warmupRuns = runs;
+    }
+
+    /**
+     * Sets the number of timed runs on each board, at least 1.
+     */
+    public void setTestRuns(int runs)
+    {
+        if (runs < 1) {
+            throw new IllegalArgumentException("At least one run is needed");
+        }
+        testRuns = runs;
+    }
+
+    /**
+     * Sets the time limit of each run.
+     *
+     * @param millis The time limit in milliseconds, or 0 for no limit.
+     */
+    public void setTimeout(long millis)
+    {
+        timeoutMillis = millis;
+    }
+
+    /**
+     * Sets up the benchmarking environment with all boards in custom.slc.
      */
     public void setup()
     {
-        File levelsFile = new File(new File("."), levelsFilename);
+        setup(new File(new File("."), levelsFilename), 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sets up the benchmarking environment.
+     *
+     * @param levelsFile The levels file.
+     * @param first The number of the first level to test, starting at 1.
+     * @param last The number of the last level to test.
+     */
+    public void setup(File levelsFile, int first, int last)
+    {
         ArrayList<String> boardStrings = BoardParser
                 .getBoardStrings(levelsFile);
 
-        for (String boardString : boardStrings) {
-            Board board = new Board(boardString);
-            boards.add(board);
+        for (int i = first; i <= Math.min(last, boardStrings.size()); ++i) {
+            boards.add(boardStrings.get(i - 1));
+            levelNumbers.add(i);
         }
     }
 
@@ -67,29 +156,91 @@ public class Benchmarker
      */
     public void runTests()
     {
-        ResultsList results;
-        long startTime, runTime;
-
-        for (Board board : boards) {
-            results = new ResultsList();
+        for (String boardString : boards) {
+            ResultsList results = new ResultsList();
             System.out.println("Running tests on board:");
-            System.out.println(board);
-
-            for (int i = 0; i < TEST_RUNS; ++i) {
-                startTime = System.currentTimeMillis();
-                solver.solve(board);
-                runTime = System.currentTimeMillis() - startTime;
-
-                results
-                        .add(new TestResult(runTime, solver
-                                .getIterationsCount()));
+            System.out.println(new Board(boardString.getBytes()));
 
+            for (int i = 0; i < warmupRuns; ++i) {
+                runTest(boardString);
+            }
+            for (int i = 0; i < testRuns; ++i) {
+                results.add(runTest(boardString));
             }
 
             boardResults.add(results);
         }
     }
 
+    /**
+     * Solves a board with a new solver. The solver runs on a new thread of
+     * the benchmark group, so that the allocations of the threads it creates
+     * are counted too.
+     */
+    private TestResult runTest(String boardString)
+    {
+        final Solver solver = SolverFactory.loadSolver(solverName);
+        final Board board = new Board(boardString.getBytes());
+        final CancellationToken token = timeoutMillis > 0 ? CancellationToken
+                .withTimeout(timeoutMillis) : null;
+
+        final SolveResult[] result = new SolveResult[1];
+        final Throwable[] failure = new Throwable[1];
+        final long[] runTime = new long[1];
+        final Thread thread = new Thread(group, AllocationGroup
+                .counted(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        long startTime = System.nanoTime();
+                        try {
+                            result[0] = SolveResult.solve(solver, board, token);
+                        }
+                        catch (RuntimeException e) {
+                            failure[0] = e;
+                        }
+                        catch (Error e) {
+                            failure[0] = e;
+                        }
+                        runTime[0] = System.nanoTime() - startTime;
+                    }
+                }), "benchmark", STACK_SIZE);
+
+        long gcStart = gcTime();
+        long allocatedStart = group.allocatedBytes();
+        thread.start();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+        if (failure[0] != null) {
+            throw (RuntimeException) failure[0];
+        }
+
+        return new TestResult(runTime[0], result[0].nodes, result[0].status,
+                allocatedStart < 0 ? -1 : group.allocatedBytes()
+                        - allocatedStart, gcTime() - gcStart);
+    }
+
+    /**
+     * Returns the total time spent in garbage collection, in milliseconds.
+     */
+    private static long gcTime()
+    {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
     /**
      * Prints the collected performance values.
      */
@@ -101,31 +252,158 @@ public class Benchmarker
 
         for (int i = 0; i < boardResults.size(); ++i) {
             ResultsList results = boardResults.get(i);
-            System.out.printf("Board %d:", i);
+            System.out.printf("Board %d:", levelNumbers.get(i));
             System.out.println();
-            System.out.printf("Average run time:   %d", results
-                    .averageRunTime());
+            System.out.printf("Solved:             %d of %d", results
+                    .solvedCount(), results.size());
+            System.out.println();
+            System.out.printf(Locale.ROOT,
+                    "Run time (ms):      median %.1f, p90 %.1f, max %.1f",
+                    results.medianMillis(), results.percentileMillis(90),
+                    results.maxMillis());
             System.out.println();
             System.out.printf("Average iterations: %d", results
                     .averageIterationsCount());
             System.out.println();
+            System.out.printf(Locale.ROOT, "Iterations/s:       %.0f",
+                    results.iterationsPerSecond());
+            System.out.println();
+            System.out.printf("Allocated bytes:    %d", results
+                    .averageAllocatedBytes());
+            System.out.println();
+            System.out.printf("GC time (ms):       %d", results.totalGcTime());
             System.out.println();
+            System.out.println();
+        }
+    }
+
+    /**
+     * Writes one line per board with the summary of its runs.
+     *
+     * @param out The stream to write to.
+     */
+    public void writeCsv(PrintStream out)
+    {
+        out.println("solver,level,runs,solved,median_ms,p90_ms,max_ms,"
+                + "mean_ms,avg_iterations,iterations_per_s,"
+                + "avg_allocated_bytes,gc_ms");
+        for (int i = 0; i < boardResults.size(); ++i) {
+            ResultsList results = boardResults.get(i);
+            out.printf(Locale.ROOT,
+                    "%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%d,%.0f,%d,%d%n",
+                    solverName, levelNumbers.get(i), results.size(), results
+                            .solvedCount(), results.medianMillis(), results
+                            .percentileMillis(90), results.maxMillis(),
+                    results.meanMillis(), results.averageIterationsCount(),
+                    results.iterationsPerSecond(), results
+                            .averageAllocatedBytes(), results.totalGcTime());
+        }
+    }
+
+    /**
+     * Writes the summary and the individual runs of each board as a JSON
+     * array.
+     *
+     * @param out The stream to write to.
+     */
+    public void writeJson(PrintStream out)
+    {
+        out.println("[");
+        for (int i = 0; i < boardResults.size(); ++i) {
+            ResultsList results = boardResults.get(i);
+            out.printf(Locale.ROOT, "  {\"solver\": \"%s\", \"level\": %d, "
+                    + "\"solved\": %d, \"median_ms\": %.3f, "
+                    + "\"p90_ms\": %.3f, \"max_ms\": %.3f, "
+                    + "\"mean_ms\": %.3f, \"iterations_per_s\": %.0f, "
+                    + "\"gc_ms\": %d,%n", solverName, levelNumbers.get(i),
+                    results.solvedCount(), results.medianMillis(), results
+                            .percentileMillis(90), results.maxMillis(),
+                    results.meanMillis(), results.iterationsPerSecond(),
+                    results.totalGcTime());
+            out.println("   \"runs\": [");
+            for (int j = 0; j < results.size(); ++j) {
+                TestResult result = results.get(j);
+                out.printf(Locale.ROOT, "     {\"status\": \"%s\", "
+                        + "\"ms\": %.3f, \"iterations\": %d, "
+                        + "\"allocated_bytes\": %d, \"gc_ms\": %d}%s%n",
+                        result.getStatus(), result.getRunNanos() / 1e6,
+                        result.getIterationsCount(), result
+                                .getAllocatedBytes(), result.getGcTime(),
+                        j + 1 < results.size() ? "," : "");
+            }
+            out.println("   ]}" + (i + 1 < boardResults.size() ? "," : ""));
         }
+        out.println("]");
     }
 
     /**
      * @param args
      */
-    public static void main(String[] args)
+    public static void main(String[] args) throws FileNotFoundException
     {
+        if (args.length < 1) {
+            System.err.println("usage: Benchmarker solver [levels file] "
+                    + "[first[-last]] [--warmup n] [--runs n] "
+                    + "[--timeout seconds] [--csv file] [--json file]");
+            System.exit(1);
+        }
 
-        Benchmarker benchmarker = new Benchmarker(SolverFactory
-                .loadSolver(args[0]));
+        ArrayList<String> positional = new ArrayList<String>();
+        String csvFile = null;
+        String jsonFile = null;
+        int warmup = WARMUP_RUNS;
+        int runs = TEST_RUNS;
+        long timeout = 0;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--warmup")) {
+                warmup = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--runs")) {
+                runs = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--timeout")) {
+                timeout = Long.parseLong(args[++i]) * 1000;
+            }
+            else if (args[i].equals("--csv")) {
+                csvFile = args[++i];
+            }
+            else if (args[i].equals("--json")) {
+                jsonFile = args[++i];
+            }
+            else {
+                positional.add(args[i]);
+            }
+        }
 
-        benchmarker.setup();
+        Benchmarker benchmarker = new Benchmarker(positional.get(0));
+        benchmarker.setWarmupRuns(warmup);
+        benchmarker.setTestRuns(runs);
+        benchmarker.setTimeout(timeout);
+
+        File levelsFile = new File(positional.size() > 1 ? positional.get(1)
+                : levelsFilename);
+        int first = 1;
+        int last = Integer.MAX_VALUE;
+        if (positional.size() > 2) {
+            String[] range = positional.get(2).split("-");
+            first = Integer.parseInt(range[0]);
+            last = range.length > 1 ? Integer.parseInt(range[1]) : first;
+        }
+
+        benchmarker.setup(levelsFile, first, last);
         benchmarker.runTests();
         benchmarker.printBenchmarks();
 
+        if (csvFile != null) {
+            PrintStream out = new PrintStream(csvFile);
+            benchmarker.writeCsv(out);
+            out.close();
+        }
+        if (jsonFile != null) {
+            PrintStream out = new PrintStream(jsonFile);
+            benchmarker.writeJson(out);
+            out.close();
+        }
     }
 
 }
@@ -1,6 +1,9 @@
 package sokoban.benchmarking;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+
+import sokoban.SearchStatus;
 
 /**
  * This is a container for results for a solver solving a specific board.
@@ -32,12 +35,76 @@ public class ResultsList extends ArrayList<TestResult>
         return totalRunTime;
     }
 
+    /**
+     * Returns the mean run time.
+     *
+     * @return The mean run time in milliseconds.
+     */
+    public double meanMillis()
+    {
+        long total = 0;
+        for (TestResult result : this) {
+            total += result.getRunNanos();
+        }
+        return total / 1e6 / this.size();
+    }
+
+    /**
+     * Returns the median run time.
+     *
+     * @return The median run time in milliseconds.
+     */
+    public double medianMillis()
+    {
+        final long[] nanos = sortedRunNanos();
+        final int middle = nanos.length / 2;
+        if (nanos.length % 2 == 0) {
+            return (nanos[middle - 1] + nanos[middle]) / 2e6;
+        }
+        return nanos[middle] / 1e6;
+    }
+
+    /**
+     * Returns the run time that the given percentage of the runs were at or
+     * below, using the nearest rank.
+     *
+     * @param percent The percentile, between 0 and 100.
+     * @return The run time in milliseconds.
+     */
+    public double percentileMillis(final double percent)
+    {
+        final long[] nanos = sortedRunNanos();
+        final int rank = (int) Math.ceil(percent / 100 * nanos.length);
+        return nanos[Math.max(0, Math.min(nanos.length - 1, rank - 1))] / 1e6;
+    }
+
+    /**
+     * Returns the longest run time.
+     *
+     * @return The run time in milliseconds.
+     */
+    public double maxMillis()
+    {
+        final long[] nanos = sortedRunNanos();
+        return nanos[nanos.length - 1] / 1e6;
+    }
+
+    private long[] sortedRunNanos()
+    {
+        final long[] nanos = new long[this.size()];
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = get(i).getRunNanos();
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
     /**
      * Returns the average iterations count.
      * 
      * @return
      */
-    public int averageIterationsCount()
+    public long averageIterationsCount()
     {
         return totalIterationsCount() / this.size();
     }
@@ -47,9 +114,9 @@ public class ResultsList extends ArrayList<TestResult>
      * 
      * @return Total number of iterations.
      */
-    private int totalIterationsCount()
+    private long totalIterationsCount()
     {
-        int totalIterationsCount = 0;
+        long totalIterationsCount = 0;
 
         for (TestResult result : this) {
             totalIterationsCount += result.getIterationsCount();
@@ -57,4 +124,65 @@ public class ResultsList extends ArrayList<TestResult>
 
         return totalIterationsCount;
     }
+
+    /**
+     * Returns the number of iterations per second over all runs.
+     *
+     * @return The number of iterations per second.
+     */
+    public double iterationsPerSecond()
+    {
+        long nanos = 0;
+        for (TestResult result : this) {
+            nanos += result.getRunNanos();
+        }
+        return nanos == 0 ? 0 : totalIterationsCount() * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the number of runs that found a solution.
+     *
+     * @return The number of solved runs.
+     */
+    public int solvedCount()
+    {
+        int solved = 0;
+        for (TestResult result : this) {
+            if (result.getStatus() == SearchStatus.Solution) {
+                solved++;
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * Returns the average number of bytes allocated per run.
+     *
+     * @return The number of bytes, or -1 if unknown.
+     */
+    public long averageAllocatedBytes()
+    {
+        long total = 0;
+        for (TestResult result : this) {
+            if (result.getAllocatedBytes() < 0) {
+                return -1;
+            }
+            total += result.getAllocatedBytes();
+        }
+        return total / this.size();
+    }
+
+    /**
+     * Returns the total time spent in garbage collection.
+     *
+     * @return The time in milliseconds.
+     */
+    public long totalGcTime()
+    {
+        long total = 0;
+        for (TestResult result : this) {
+            total += result.getGcTime();
+        }
+        return total;
+    }
 }
@@ -1,13 +1,21 @@
 package sokoban.benchmarking;
 
+import sokoban.SearchStatus;
+
 /**
  * Holds a test result.
  */
 public class TestResult
 {
-    private long runTime;
+    private final long runNanos;
+
+    private final long iterations;
+
+    private final SearchStatus status;
+
+    private final long allocatedBytes;
 
-    private int  iterations;
+    private final long gcMillis;
 
     /**
      * Constructs a new test result with the given values.
@@ -17,28 +25,88 @@ public class TestResult
      * @param iterations
      *            The number of iterations the algorithm used.
      */
-    public TestResult(long runTime, int iterations)
+    public TestResult(long runTime, long iterations)
     {
-        this.runTime = runTime;
+        this(runTime * 1000000, iterations, SearchStatus.Solution, -1, 0);
+    }
+
+    /**
+     * Constructs a new test result with the given values.
+     *
+     * @param runNanos
+     *            The number of nanoseconds the solver ran.
+     * @param iterations
+     *            The number of iterations the algorithm used.
+     * @param status
+     *            The outcome of the run.
+     * @param allocatedBytes
+     *            The number of bytes allocated by the solver and its
+     *            threads, or -1 if unknown.
+     * @param gcMillis
+     *            The time spent in garbage collection during the run.
+     */
+    public TestResult(long runNanos, long iterations, SearchStatus status,
+            long allocatedBytes, long gcMillis)
+    {
+        this.runNanos = runNanos;
         this.iterations = iterations;
+        this.status = status;
+        this.allocatedBytes = allocatedBytes;
+        this.gcMillis = gcMillis;
     }
     
     /**
      * Returns the run time of this test result.
      * 
-     * @return The run time.
+     * @return The run time in milliseconds.
      */
     public long getRunTime() {
-        return runTime;
+        return runNanos / 1000000;
     }
     
+    /**
+     * Returns the run time of this test result.
+     *
+     * @return The run time in nanoseconds.
+     */
+    public long getRunNanos() {
+        return runNanos;
+    }
+
     /**
      * Returns the number of iterations required to solve the board.
      * 
      * @return The number of iterations.
      */
-    public int getIterationsCount() {
+    public long getIterationsCount() {
         return iterations;
     }
     
+    /**
+     * Returns the outcome of the run.
+     *
+     * @return Solution if the board was solved.
+     */
+    public SearchStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the solver and its threads.
+     *
+     * @return The number of bytes, or -1 if unknown.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns the time spent in garbage collection during the run.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getGcTime() {
+        return gcMillis;
+    }
+
 }
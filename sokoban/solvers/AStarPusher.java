@@ -0,0 +1,308 @@
+package sokoban.solvers;
+
+import java.util.Arrays;
+import java.util.Deque;
+
+import sokoban.Board;
+import sokoban.Board.Direction;
+
+/**
+ * An A* search over pushes. Unlike the IDS solvers, each state is expanded
+ * at most once.
+ *
+ * The nodes are stored in parallel primitive arrays, indexed by node number:
+ * the sorted box squares of each node are stored in one big int array, and
+ * the parent and the push that led to the node are stored for the
+ * reconstruction of the solution. The open list is a bucketed priority queue
+ * indexed by f, since f is a small integer.
+ */
+public class AStarPusher implements Solver, PackedLevel.Successors
+{
+    private static final int INITIAL_NODES = 1 << 12;
+
+    /**
+     * The number of expanded nodes between two checks of the cancellation
+     * token and the heartbeat. Must be a power of two.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    protected PackedLevel level;
+    private PackedLevel.Expander expander;
+
+    // The nodes
+    private int nodeCount;
+    private int[] boxes;
+    private int[] player;
+    private int[] g;
+    private int[] parent;
+    private int[] push;
+    private long[] hash;
+
+    /**
+     * The node of each state, by hash
+     */
+    private LongIntTable states;
+
+    // The open list: one stack of nodes per f value
+    private int[][] buckets;
+    private int[] bucketSize;
+    private int minBucket;
+    private long openNodes;
+
+    private int current;
+    private long expandedNodes;
+    private CancellationToken cancellation;
+
+    /**
+     * Receives progress events, if not null. Each new highest priority that
+     * is expanded is reported as an iteration.
+     */
+    private SearchListener listener;
+    private Heartbeat heartbeat;
+    private int layer;
+    private long layerStartTime;
+    private long layerStartNodes;
+
+    @Override
+    public String solve(final Board startBoard)
+    {
+        level = new PackedLevel(startBoard);
+        expander = level.new Expander();
+        nodeCount = 0;
+        boxes = new int[INITIAL_NODES * level.boxCount];
+        player = new int[INITIAL_NODES];
+        g = new int[INITIAL_NODES];
+        parent = new int[INITIAL_NODES];
+        push = new int[INITIAL_NODES];
+        hash = new long[INITIAL_NODES];
+        states = new LongIntTable("A* nodes", INITIAL_NODES);
+        buckets = new int[64][];
+        bucketSize = new int[64];
+        minBucket = 0;
+        openNodes = 0;
+        expandedNodes = 0;
+        layer = -1;
+        heartbeat = listener == null ? null : new Heartbeat(listener,
+                getClass().getSimpleName(), 0);
+
+        final int h = level.heuristic(level.startBoxes);
+        System.out.println("lowerBound(): " + h);
+        if (h == PackedLevel.DEAD) {
+            System.out.println("no solution!");
+            return null;
+        }
+
+        final int startPlayer = expander.normalize(level.startBoxes,
+                level.startPlayer);
+        final long startHash = level.hash(level.boxHash(level.startBoxes),
+                startPlayer);
+        final int root = addNode(level.startBoxes, startPlayer, startHash, 0,
+                -1, -1);
+        enqueue(root, priority(0, h));
+
+        int node;
+        while ((node = dequeue()) >= 0) {
+            if (listener != null && minBucket > layer) {
+                startLayer(minBucket);
+            }
+            if (states.get(hash[node]) != node) {
+                // A shorter path to the state was found after this node
+                continue;
+            }
+
+            final int[] nodeBoxes = boxesOf(node);
+            if (level.isSolved(nodeBoxes)) {
+                finishLayer();
+                return Board.solutionToString(toMoves(node));
+            }
+
+            if ((++expandedNodes & (CANCEL_CHECK_INTERVAL - 1)) == 0) {
+                checkpoint();
+            }
+            current = node;
+            expander.expand(nodeBoxes, player[node], hash[node], this);
+        }
+
+        finishLayer();
+        System.out.println("no solution!");
+        return null;
+    }
+
+    private void checkpoint()
+    {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new SearchCancelledException();
+        }
+        if (heartbeat != null) {
+            heartbeat.check(expandedNodes, states.size());
+        }
+    }
+
+    private void startLayer(final int priority)
+    {
+        finishLayer();
+        layer = priority;
+        layerStartTime = System.nanoTime();
+        layerStartNodes = expandedNodes;
+        listener.iterationStarted(getClass().getSimpleName(), layer,
+                expandedNodes);
+    }
+
+    private void finishLayer()
+    {
+        if (listener != null && layer >= 0) {
+            listener.iterationFinished(getClass().getSimpleName(), layer,
+                    expandedNodes - layerStartNodes, openNodes, states.size(),
+                    System.nanoTime() - layerStartTime);
+        }
+    }
+
+    @Override
+    public long getIterationsCount()
+    {
+        return expandedNodes;
+    }
+
+    @Override
+    public void setCancellationToken(final CancellationToken token)
+    {
+        cancellation = token;
+    }
+
+    @Override
+    public void setSearchListener(final SearchListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the priority of a node in the open list. Lower values are
+     * expanded first.
+     *
+     * @param g The number of pushes from the start.
+     * @param h The lower bound of the number of pushes left.
+     * @return The priority, which must not be negative.
+     */
+    protected int priority(final int g, final int h)
+    {
+        return g + h;
+    }
+
+    /**
+     * Returns whether a state that has been seen already should be searched
+     * again when a shorter path to it is found. This is needed for optimal
+     * solutions.
+     *
+     * @return True if states may be searched again.
+     */
+    protected boolean reopen()
+    {
+        return true;
+    }
+
+    @Override
+    public void successor(final int[] newBoxes, final int newPlayer,
+            final long newHash, final int box, final int dir)
+    {
+        final int h = level.heuristic(newBoxes);
+        if (h == PackedLevel.DEAD) {
+            return;
+        }
+
+        final int newG = g[current] + 1;
+        final int old = states.get(newHash);
+        if (old >= 0 && (g[old] <= newG || !reopen())) {
+            return;
+        }
+
+        final int node = addNode(newBoxes, newPlayer, newHash, newG, current,
+                box * 4 + dir);
+        enqueue(node, priority(newG, h));
+    }
+
+    private int addNode(final int[] nodeBoxes, final int nodePlayer,
+            final long nodeHash, final int nodeG, final int nodeParent,
+            final int nodePush)
+    {
+        if (nodeCount == player.length) {
+            final int capacity = 2 * nodeCount;
+            boxes = Arrays.copyOf(boxes, capacity * level.boxCount);
+            player = Arrays.copyOf(player, capacity);
+            g = Arrays.copyOf(g, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            push = Arrays.copyOf(push, capacity);
+            hash = Arrays.copyOf(hash, capacity);
+        }
+
+        final int node = nodeCount++;
+        System.arraycopy(nodeBoxes, 0, boxes, node * level.boxCount,
+                level.boxCount);
+        player[node] = nodePlayer;
+        g[node] = nodeG;
+        parent[node] = nodeParent;
+        push[node] = nodePush;
+        hash[node] = nodeHash;
+        states.put(nodeHash, node);
+        return node;
+    }
+
+    private int[] boxesOf(final int node)
+    {
+        final int from = node * level.boxCount;
+        return Arrays.copyOfRange(boxes, from, from + level.boxCount);
+    }
+
+    private void enqueue(final int node, final int f)
+    {
+        if (f >= buckets.length) {
+            final int length = Math.max(f + 1, 2 * buckets.length);
+            buckets = Arrays.copyOf(buckets, length);
+            bucketSize = Arrays.copyOf(bucketSize, length);
+        }
+        if (buckets[f] == null) {
+            buckets[f] = new int[64];
+        }
+        else if (bucketSize[f] == buckets[f].length) {
+            buckets[f] = Arrays.copyOf(buckets[f], 2 * bucketSize[f]);
+        }
+
+        buckets[f][bucketSize[f]++] = node;
+        openNodes++;
+        if (f < minBucket) {
+            minBucket = f;
+        }
+    }
+
+    /**
+     * Removes a node with the lowest f from the open list. Within a bucket
+     * the last added node is returned, which favors deeper nodes.
+     *
+     * @return The node, or -1 if the open list is empty.
+     */
+    private int dequeue()
+    {
+        while (minBucket < buckets.length && bucketSize[minBucket] == 0) {
+            minBucket++;
+        }
+        if (minBucket == buckets.length) {
+            return -1;
+        }
+        openNodes--;
+        return buckets[minBucket][--bucketSize[minBucket]];
+    }
+
+    /**
+     * Converts the pushes from the start to the node into moves.
+     */
+    private Deque<Direction> toMoves(final int node)
+    {
+        final int count = g[node];
+        final int[] pushBoxes = new int[count];
+        final int[] pushDirs = new int[count];
+        for (int n = node; parent[n] >= 0; n = parent[n]) {
+            pushBoxes[g[n] - 1] = push[n] / 4;
+            pushDirs[g[n] - 1] = push[n] % 4;
+        }
+        return expander.toMoves(pushBoxes, pushDirs, count);
+    }
+}
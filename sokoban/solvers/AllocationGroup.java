@@ -0,0 +1,130 @@
+package sokoban.solvers;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread group that counts the bytes allocated by all of its threads. A new
+ * thread is in the group of the thread that creates it, so when solve() is
+ * called on a thread of the group, the group also counts the threads of the
+ * solver.
+ *
+ * The JVM forgets the allocations of a thread when the thread ends, so the
+ * solvers run their threads through counted(), which adds the allocations of
+ * the thread to its groups just before it ends.
+ */
+public class AllocationGroup extends ThreadGroup
+{
+    /**
+     * The bytes allocated by the threads that have ended
+     */
+    private final AtomicLong endedBytes = new AtomicLong();
+
+    /**
+     * The ids of the threads that have ended, which may still be alive for
+     * a moment
+     */
+    private final Set<Long> endedThreads = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a group in the group of the current thread.
+     *
+     * @param name The name of the group.
+     */
+    public AllocationGroup(final String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Returns the number of bytes allocated by the threads of the group so
+     * far, including the threads that have ended.
+     *
+     * @return The number of bytes, or -1 if the JVM can't measure it.
+     */
+    public long allocatedBytes()
+    {
+        if (threadAllocatedBytes(Thread.currentThread().getId()) < 0) {
+            return -1;
+        }
+
+        Thread[] threads = new Thread[activeCount() + 16];
+        int count;
+        while ((count = enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+
+        long total = endedBytes.get();
+        for (int i = 0; i < count; i++) {
+            final long id = threads[i].getId();
+            if (!endedThreads.contains(id)) {
+                total += Math.max(0, threadAllocatedBytes(id));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Wraps the body of a thread so that its allocations are counted after
+     * it ends.
+     *
+     * @param run The body of the thread.
+     * @return A runnable that runs the body and then calls threadEnding().
+     */
+    public static Runnable counted(final Runnable run)
+    {
+        return new Runnable() {
+            @Override
+            public void run()
+            {
+                try {
+                    run.run();
+                }
+                finally {
+                    threadEnding();
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds the allocations of the current thread to the groups that it is
+     * in. Must be the last thing the thread does.
+     */
+    public static void threadEnding()
+    {
+        final Thread thread = Thread.currentThread();
+        final long bytes = threadAllocatedBytes(thread.getId());
+        if (bytes < 0) {
+            return;
+        }
+        for (ThreadGroup group = thread.getThreadGroup(); group != null; group = group
+                .getParent()) {
+            if (group instanceof AllocationGroup) {
+                final AllocationGroup counter = (AllocationGroup) group;
+                counter.endedThreads.add(thread.getId());
+                counter.endedBytes.addAndGet(bytes);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by a live thread, or -1 if the
+     * JVM can't measure it.
+     */
+    private static long threadAllocatedBytes(final long threadId)
+    {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory
+                .getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()
+                    && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(threadId);
+            }
+        }
+        return -1;
+    }
+}
@@ -2,6 +2,8 @@ package sokoban.solvers;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import sokoban.Board;
 import sokoban.SearchInfo;
@@ -10,107 +12,247 @@ import sokoban.SearchStatus;
 /**
  * This solver performs a bidirectional search using the IDSPusher and
  * IDSPuller.
+ * 
+ * Both searches can be paused in the middle of an iteration, so instead of
+ * choosing which side to run between complete iterations the searches are
+ * interleaved in slices of a fixed number of nodes. Before each slice the
+ * side with the smaller search frontier is chosen, which keeps one side from
+ * spending a long time on a deep iteration when the other side could reach it
+ * more cheaply.
  */
 public class BidirectionalIDS implements Solver
 {
+    /**
+     * The number of nodes to generate before switching side.
+     */
+    private static final long SLICE_NODES = 10000;
+
+    /**
+     * The pusher is run as long as its frontier is smaller than the puller's
+     * frontier divided by this value.
+     */
+    private static final int PUSHER_BIAS = 2;
+
     private IDSPuller puller;
     private IDSPusher pusher;
+    private CancellationToken cancellation;
+    private SearchListener listener;
+    private Checkpoint checkpoint;
+    private Board startBoard;
 
     @Override
     public String solve(final Board startBoard)
     {
-        final HashSet<Long> failedBoardsPuller = new HashSet<Long>();
-        final HashSet<Long> failedBoardsPusher = new HashSet<Long>();
-        final HashMap<Long, BoxPosDir> pullerStatesMap = new HashMap<Long, BoxPosDir>();
-        final HashMap<Long, BoxPosDir> pusherStatesMap = new HashMap<Long, BoxPosDir>();
+        this.startBoard = startBoard;
+        if (checkpoint == null) {
+            checkpoint = Checkpoint.fromProperties(this, startBoard);
+        }
+        final Checkpoint.Side[] saved = checkpoint == null ? null
+                : checkpoint.load(startBoard, 2);
+
+        final Set<Long> failedBoardsPuller = saved == null ? new HashSet<Long>()
+                : saved[0].failed;
+        final Set<Long> failedBoardsPusher = saved == null ? new HashSet<Long>()
+                : saved[1].failed;
+        final Map<Long, BoxPosDir> pusherStatesMap = saved == null ? new HashMap<Long, BoxPosDir>()
+                : saved[0].states;
+        final Map<Long, BoxPosDir> pullerStatesMap = saved == null ? new HashMap<Long, BoxPosDir>()
+                : saved[1].states;
 
         pusher = new IDSPusher(startBoard, failedBoardsPuller, pusherStatesMap,
                 pullerStatesMap);
         puller = new IDSPuller(startBoard, failedBoardsPusher, pullerStatesMap,
                 pusherStatesMap);
+        pusher.loadFailedStates(startBoard);
+        puller.loadFailedStates(startBoard);
+        pusher.setCancellationToken(cancellation);
+        puller.setCancellationToken(cancellation);
+        pusher.setSearchListener(listener);
+        puller.setSearchListener(listener);
 
-        boolean runPuller = true;
         final int lowerBound = IDSCommon.lowerBound(startBoard);
-        SearchInfo result;
+        int pushDepth = lowerBound / 2;
+        int pullDepth = lowerBound / 2;
+        boolean pusherDone = false;
+        boolean pullerDone = false;
+        if (saved != null) {
+            pushDepth = saved[0].depth;
+            pullDepth = saved[1].depth;
+            pusher.lastLeafCount = saved[0].lastLeafCount;
+            puller.lastLeafCount = saved[1].lastLeafCount;
+            pusherDone = saved[0].done;
+            pullerDone = saved[1].done;
+            System.out.println("Resuming at depths " + pushDepth + " and "
+                    + pullDepth + " with " + pusherStatesMap.size() + " and "
+                    + pullerStatesMap.size() + " states");
+        }
+        final ResumableSearch pushSide = new ResumableSearch(pusher, "pusher",
+                pushDepth, lowerBound);
+        final ResumableSearch pullSide = new ResumableSearch(puller, "puller",
+                pullDepth, lowerBound);
 
-        // IDS loop
-        boolean pullerFailed = false;
-        boolean pusherFailed = false;
+        final long solveStart = System.nanoTime();
+        SolverEvents.searchStarted(pusher);
+        SolverEvents.searchStarted(puller);
+        try {
+            final String solution = interleave(pushSide, pullSide,
+                    pusherDone, pullerDone);
+            if (checkpoint != null) {
+                checkpoint.delete();
+            }
+            return solution;
+        }
+        finally {
+            // Both sides are paused or done, so their sets don't change
+            pusher.saveFailedStates();
+            puller.saveFailedStates();
+            pushSide.stop();
+            pullSide.stop();
+            SolverEvents.searchFinished(pusher);
+            SolverEvents.searchFinished(puller);
+            pusher.printProfile(solveStart);
+            puller.printProfile(solveStart);
+        }
+    }
 
-        int pullerDepth = lowerBound / 2;
-        int pusherDepth = lowerBound / 2;
+    /**
+     * Runs the two searches in slices until one of them finds a solution, or
+     * both of them have failed or reached the depth limit.
+     */
+    private String interleave(final ResumableSearch pushSide,
+            final ResumableSearch pullSide, boolean pusherDone,
+            boolean pullerDone)
+    {
+        ResumableSearch last = null;
 
         while (true) {
-            result = SearchInfo.Failed;
-
-            if (pullerDepth >= IDSCommon.DEPTH_LIMIT) {
+            final boolean runPuller;
+            if (pullerDone) {
                 runPuller = false;
             }
-            if (pusherDepth >= IDSCommon.DEPTH_LIMIT) {
+            else if (pusherDone) {
                 runPuller = true;
             }
-
-            // Puller
-            if (runPuller && pullerDepth < IDSCommon.DEPTH_LIMIT) {
-                System.out.print("puller (depth " + pullerDepth + "): ");
-                result = puller.dfs(pullerDepth);
-                pullerDepth = puller.nextDepth(lowerBound);
-                System.out.println(result.status);
+            else {
+                runPuller = PUSHER_BIAS * pushSide.frontierSize() >= pullSide
+                        .frontierSize();
             }
 
-            // Pusher
-            if (!runPuller && pullerDepth < IDSCommon.DEPTH_LIMIT) {
-                System.out.print("pusher (depth " + pusherDepth + "): ");
-                result = pusher.dfs(pusherDepth);
-                pusherDepth = pusher.nextDepth(lowerBound);
-                System.out.println(result.status);
+            final ResumableSearch side = runPuller ? pullSide : pushSide;
+            if (side != last) {
+                switchedSide(side, pushSide, pullSide);
+                last = side;
             }
-
-            if (result.solution != null) {
-                System.out.println();
-                return Board.solutionToString(result.solution);
+            if (checkpoint != null && checkpoint.isDue()) {
+                saveCheckpoint(pushSide, pullSide, pusherDone, pullerDone);
             }
-            else if (pusherDepth >= IDSCommon.DEPTH_LIMIT
-                    && pullerDepth >= IDSCommon.DEPTH_LIMIT) {
-                System.out.println("Maximum depth reached!");
-                return null;
+            final SearchInfo result;
+            try {
+                result = side.resume(SLICE_NODES);
             }
-            else if (result.status == SearchStatus.Failed) {
-                if (runPuller) {
-                    pullerFailed = true;
-                }
-                if (!runPuller) {
-                    pusherFailed = true;
+            catch (final SearchCancelledException e) {
+                if (checkpoint != null) {
+                    saveCheckpoint(pushSide, pullSide, pusherDone, pullerDone);
                 }
+                throw e;
             }
 
-            if (pullerFailed && pusherFailed) {
-                System.out.println("no solution!");
-                return null;
+            if (result == null) {
+                // Paused in the middle of an iteration
+                continue;
+            }
+
+            System.out.println((runPuller ? "puller" : "pusher")
+                    + " (depth " + side.getCompletedDepth() + "): "
+                    + result.status);
+
+            if (result.solution != null) {
+                System.out.println();
+                return Board.solutionToString(result.solution);
             }
 
             // Run the other solver if only one of them failed
             // in case it failed because of a bug or hash collision
-            if (pullerFailed) {
-                runPuller = false;
-            }
-            else if (pusherFailed) {
-                runPuller = true;
-            }
-            else if (runPuller && 2 * pusher.numLeafNodes < puller.numLeafNodes) {
-                runPuller = false;
+            final boolean done = result.status == SearchStatus.Failed
+                    || side.getDepth() >= IDSCommon.DEPTH_LIMIT;
+            if (runPuller) {
+                pullerDone = done;
             }
             else {
-                runPuller = true;
+                pusherDone = done;
+            }
+
+            if (pullerDone && pusherDone) {
+                if (result.status == SearchStatus.Failed) {
+                    System.out.println("no solution!");
+                }
+                else {
+                    System.out.println("Maximum depth reached!");
+                }
+                return null;
             }
         }
     }
 
+    /**
+     * Saves the state of both sides. The sides are paused, so their
+     * iterations are restarted when the search is resumed.
+     */
+    private void saveCheckpoint(final ResumableSearch pushSide,
+            final ResumableSearch pullSide, final boolean pusherDone,
+            final boolean pullerDone)
+    {
+        checkpoint.save(startBoard, new Checkpoint.Side(pushSide.getDepth(),
+                pusher.lastLeafCount, pusherDone, pusher.failedBoards,
+                pusher.ourStatesMap), new Checkpoint.Side(pullSide.getDepth(),
+                puller.lastLeafCount, pullerDone, puller.failedBoards,
+                puller.ourStatesMap));
+    }
+
+    /**
+     * Records a flight recorder event for a switch to the given side.
+     */
+    private static void switchedSide(final ResumableSearch side,
+            final ResumableSearch pushSide, final ResumableSearch pullSide)
+    {
+        final SolverEvents.SideSwitch event = new SolverEvents.SideSwitch();
+        if (event.shouldCommit()) {
+            event.to = side == pullSide ? "puller" : "pusher";
+            event.depth = side.getDepth();
+            event.pusherFrontier = pushSide.frontierSize();
+            event.pullerFrontier = pullSide.frontierSize();
+            event.commit();
+        }
+    }
+
     @Override
-    public int getIterationsCount()
+    public long getIterationsCount()
     {
         // TODO
         return pusher.getIterationsCount() + puller.getIterationsCount();
     }
 
+    @Override
+    public void setCancellationToken(final CancellationToken token)
+    {
+        cancellation = token;
+    }
+
+    /**
+     * Sets the checkpoint that the search resumes from and saves its state
+     * to. Without one, the checkpoint directory system property is used.
+     * 
+     * @param checkpoint The checkpoint.
+     */
+    public void setCheckpoint(final Checkpoint checkpoint)
+    {
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public void setSearchListener(final SearchListener listener)
+    {
+        this.listener = listener;
+    }
+
 }
@@ -1,5 +1,6 @@
 package sokoban.solvers;
 
+import sokoban.Board;
 import sokoban.Position;
 import sokoban.Board.Direction;
 
@@ -8,6 +9,10 @@ import sokoban.Board.Direction;
  * of a board state. It contains the necessary information in order to backtrack
  * a solution by repeatedly generating the previous/next state and note the
  * player move directions.
+ * 
+ * The start states of the IDSPuller have no previous state, so they are
+ * stored with a null direction and box, and the player square of the start
+ * state.
  */
 public class BoxPosDir
 {
@@ -29,4 +34,49 @@ public class BoxPosDir
         this.box = box;
         this.player = player;
     }
+
+    /**
+     * Packs this BoxPosDir into a long, so that it can be stored in a
+     * ConcurrentLongMap. The packed value is never 0.
+     * 
+     * @param width The width of the board.
+     * @return The packed value.
+     */
+    public long pack(final int width)
+    {
+        final long dirBits = dir == null ? NO_DIRECTION : dir.ordinal();
+        final long boxIndex = box == null ? 0 : box.row * width + box.column;
+        final long playerIndex = player.row * width + player.column;
+
+        return PACKED_FLAG | dirBits << 56 | boxIndex << 28 | playerIndex;
+    }
+
+    /**
+     * Unpacks a value created by pack().
+     * 
+     * @param packed The packed value.
+     * @param board A board with the same width as the one used for packing.
+     * @return The unpacked BoxPosDir.
+     */
+    public static BoxPosDir unpack(final long packed, final Board board)
+    {
+        final int dirBits = (int) (packed >>> 56) & 0x7;
+        final int boxIndex = (int) (packed >>> 28) & INDEX_MASK;
+        final int playerIndex = (int) packed & INDEX_MASK;
+
+        if (dirBits == NO_DIRECTION) {
+            return new BoxPosDir(null, null, position(playerIndex, board));
+        }
+        return new BoxPosDir(Direction.values()[dirBits], position(boxIndex,
+                board), position(playerIndex, board));
+    }
+
+    private static Position position(final int index, final Board board)
+    {
+        return board.positions[index / board.width][index % board.width];
+    }
+
+    private static final long PACKED_FLAG = 1L << 60;
+    private static final int NO_DIRECTION = 4;
+    private static final int INDEX_MASK = (1 << 28) - 1;
 }
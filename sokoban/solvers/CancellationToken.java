@@ -0,0 +1,98 @@
+package sokoban.solvers;
+
+/**
+ * A flag that tells a running search to stop. It can be shared between
+ * several searches, and the searches check it every few nodes.
+ *
+ * A token can have a parent, and is then also cancelled when the parent is.
+ * This lets a solver cancel its own sub-searches without cancelling the
+ * token it was given.
+ *
+ * A token can also have a deadline, after which it counts as cancelled.
+ */
+public class CancellationToken
+{
+    private final CancellationToken parent;
+    private final long deadline;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a token without a parent or a deadline.
+     */
+    public CancellationToken()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates a token that is cancelled when the parent is cancelled.
+     *
+     * @param parent The parent token, or null.
+     */
+    public CancellationToken(final CancellationToken parent)
+    {
+        this.parent = parent;
+        deadline = 0;
+        hasDeadline = false;
+    }
+
+    /**
+     * Creates a token that is cancelled when the parent is cancelled, or when
+     * the timeout has passed.
+     *
+     * @param parent The parent token, or null.
+     * @param timeoutMillis The time from now until the deadline, in
+     *            milliseconds.
+     */
+    public CancellationToken(final CancellationToken parent,
+            final long timeoutMillis)
+    {
+        this.parent = parent;
+        deadline = System.nanoTime() + timeoutMillis * 1000000;
+        hasDeadline = true;
+    }
+
+    /**
+     * Creates a token that is cancelled when the timeout has passed.
+     *
+     * @param timeoutMillis The time from now until the deadline, in
+     *            milliseconds.
+     * @return The token.
+     */
+    public static CancellationToken withTimeout(final long timeoutMillis)
+    {
+        return new CancellationToken(null, timeoutMillis);
+    }
+
+    /**
+     * Tells the searches that use this token to stop.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the token has been cancelled.
+     *
+     * @return True if cancel() has been called on this token or its parent,
+     *         or a deadline has passed, otherwise false.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled || isTimedOut()
+                || (parent != null && parent.isCancelled());
+    }
+
+    /**
+     * Returns whether the deadline of this token or its parent has passed.
+     *
+     * @return True if a deadline has passed, otherwise false.
+     */
+    public boolean isTimedOut()
+    {
+        return (hasDeadline && System.nanoTime() - deadline >= 0)
+                || (parent != null && parent.isTimedOut());
+    }
+}
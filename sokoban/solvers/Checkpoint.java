@@ -0,0 +1,345 @@
+package sokoban.solvers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import sokoban.Board;
+import sokoban.Zobrist;
+
+/**
+ * A file that an IDS search saves its state to, so that a search that is
+ * stopped by a time limit can be continued by a later run on the same level.
+ * The state of each side of the search is the depth of the iteration to run
+ * next, the leaf count that the depth steps are based on, the failed boards
+ * and the states map. The boards are stored as Zobrist keys, which are the
+ * same in every run.
+ *
+ * The state is saved at the start of an iteration or between two slices of
+ * the bidirectional search, at most once per interval, and when the search
+ * is cancelled. The file is removed when the search ends with a solution or
+ * without one.
+ *
+ * The file starts with the magic number, the format version, the Zobrist
+ * seed and a hash of the level, so a file is only used for the same level
+ * with the same keys. Everything is big-endian.
+ */
+public final class Checkpoint
+{
+    /**
+     * The system property that names the directory of the checkpoints. The
+     * solvers only save checkpoints when it is set.
+     */
+    public static final String DIRECTORY_PROPERTY = "sokoban.checkpoint";
+
+    /**
+     * The system property with the least time between two checkpoints, in
+     * seconds
+     */
+    public static final String INTERVAL_PROPERTY = "sokoban.checkpoint.interval";
+
+    /**
+     * "SKCP"
+     */
+    private static final int MAGIC = 0x534b4350;
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final long intervalNanos;
+    private long lastSave;
+
+    /**
+     * The state of one side of a search.
+     */
+    static final class Side
+    {
+        final int depth;
+        final long lastLeafCount;
+        final boolean done;
+        final Set<Long> failed;
+        /**
+         * The states map, or null if the side has none
+         */
+        final Map<Long, BoxPosDir> states;
+
+        Side(final int depth, final long lastLeafCount, final boolean done,
+                final Set<Long> failed, final Map<Long, BoxPosDir> states)
+        {
+            this.depth = depth;
+            this.lastLeafCount = lastLeafCount;
+            this.done = done;
+            this.failed = failed;
+            this.states = states;
+        }
+    }
+
+    /**
+     * Creates a checkpoint.
+     *
+     * @param file The file of the checkpoint.
+     * @param intervalMillis The least time between two saves, in
+     *            milliseconds.
+     */
+    public Checkpoint(final File file, final long intervalMillis)
+    {
+        this.file = file;
+        intervalNanos = intervalMillis * 1000000;
+        lastSave = System.nanoTime();
+    }
+
+    /**
+     * Returns the checkpoint of a solver and a level in the directory given
+     * by the system properties.
+     *
+     * @param solver The solver.
+     * @param board The start board.
+     * @return The checkpoint, or null if no directory is set.
+     */
+    public static Checkpoint fromProperties(final Solver solver,
+            final Board board)
+    {
+        final String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        new File(directory).mkdirs();
+        return new Checkpoint(new File(directory, fileName(board, solver
+                .getClass().getSimpleName(), ".ckpt")), Long.getLong(
+                INTERVAL_PROPERTY, 60) * 1000);
+    }
+
+    /**
+     * Returns the name of the file of a level, made of the signature of the
+     * level in hex and the given name.
+     */
+    static String fileName(final Board board, final String name,
+            final String suffix)
+    {
+        final StringBuilder fileName = new StringBuilder();
+        for (final byte b : signature(board)) {
+            fileName.append(Character.forDigit((b >> 4) & 0xf, 16));
+            fileName.append(Character.forDigit(b & 0xf, 16));
+        }
+        return fileName.append('-').append(name).append(suffix).toString();
+    }
+
+    /**
+     * Returns the file of the checkpoint.
+     *
+     * @return The file.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns a hash of the squares and the player of a board, which
+     * identifies the level in the files that store Zobrist keys.
+     */
+    static byte[] signature(final Board board)
+    {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(new byte[] { (byte) (board.width >> 8),
+                (byte) board.width, (byte) (board.height >> 8),
+                (byte) board.height, (byte) (board.getPlayerRow() >> 8),
+                (byte) board.getPlayerRow(),
+                (byte) (board.getPlayerCol() >> 8),
+                (byte) board.getPlayerCol() });
+        for (final byte[] row : board.cells) {
+            final byte[] squares = new byte[row.length];
+            for (int col = 0; col < row.length; col++) {
+                squares[col] = (byte) (row[col] & (Board.WALL | Board.GOAL | Board.BOX));
+            }
+            digest.update(squares);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Returns whether the interval has passed since the last save.
+     */
+    boolean isDue()
+    {
+        return System.nanoTime() - lastSave >= intervalNanos;
+    }
+
+    /**
+     * Saves the state of a search. An error is reported on stderr, and
+     * doesn't stop the search.
+     *
+     * @param board The start board.
+     * @param sides The state of each side of the search.
+     */
+    void save(final Board board, final Side... sides)
+    {
+        lastSave = System.nanoTime();
+        final File temp = new File(file.getPath() + ".tmp");
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp),
+                            1 << 16));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(Zobrist.SEED);
+                out.write(signature(board));
+                out.writeInt(sides.length);
+                for (final Side side : sides) {
+                    writeSide(side, board.width, out);
+                }
+            }
+            finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Can't rename " + temp);
+                }
+            }
+        }
+        catch (final IOException e) {
+            temp.delete();
+            System.err.println("Checkpoint not saved: " + e);
+        }
+    }
+
+    private static void writeSide(final Side side, final int width,
+            final DataOutputStream out) throws IOException
+    {
+        out.writeInt(side.depth);
+        out.writeLong(side.lastLeafCount);
+        out.writeBoolean(side.done);
+        out.writeInt(side.failed.size());
+        for (final long hash : side.failed) {
+            out.writeLong(hash);
+        }
+        if (side.states == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(side.states.size());
+        for (final Map.Entry<Long, BoxPosDir> state : side.states.entrySet()) {
+            out.writeLong(state.getKey());
+            out.writeLong(state.getValue().pack(width));
+        }
+    }
+
+    /**
+     * Loads the state of a search.
+     *
+     * @param board The start board.
+     * @param sides The number of sides of the search.
+     * @return The state of each side, or null if there is no checkpoint, or
+     *         it is for another level or can't be read.
+     */
+    Side[] load(final Board board, final int sides)
+    {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                final byte[] signature = new byte[20];
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                        || in.readLong() != Zobrist.SEED) {
+                    return null;
+                }
+                in.readFully(signature);
+                if (!Arrays.equals(signature, signature(board))
+                        || in.readInt() != sides) {
+                    return null;
+                }
+
+                final Side[] result = new Side[sides];
+                for (int i = 0; i < sides; i++) {
+                    result[i] = readSide(board, in, file.length());
+                }
+                if (in.read() != -1) {
+                    throw new IOException("Data after the last side");
+                }
+                return result;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (final IOException e) {
+            System.err.println("Checkpoint not loaded: " + e);
+            return null;
+        }
+        catch (final RuntimeException e) {
+            // A corrupt file, such as a packed state off the board
+            System.err.println("Checkpoint not loaded: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads one side. The counts are checked against the length of the
+     * file, so that a corrupt count doesn't allocate a huge table.
+     */
+    private static Side readSide(final Board board, final DataInputStream in,
+            final long length) throws IOException
+    {
+        final int depth = in.readInt();
+        final long lastLeafCount = in.readLong();
+        final boolean done = in.readBoolean();
+        if (depth < 0 || lastLeafCount < -1) {
+            throw new IOException("Corrupt side");
+        }
+
+        final int failedCount = in.readInt();
+        if (failedCount < 0 || failedCount > length / 8) {
+            throw new IOException("Corrupt failed board count: "
+                    + failedCount);
+        }
+        final Set<Long> failed = new HashSet<Long>(2 * failedCount);
+        for (int i = 0; i < failedCount; i++) {
+            failed.add(in.readLong());
+        }
+
+        final int stateCount = in.readInt();
+        if (stateCount < -1 || stateCount > length / 16) {
+            throw new IOException("Corrupt state count: " + stateCount);
+        }
+        Map<Long, BoxPosDir> states = null;
+        if (stateCount >= 0) {
+            states = new HashMap<Long, BoxPosDir>(2 * stateCount);
+            for (int i = 0; i < stateCount; i++) {
+                final long hash = in.readLong();
+                states.put(hash, BoxPosDir.unpack(in.readLong(), board));
+            }
+        }
+        return new Side(depth, lastLeafCount, done, failed, states);
+    }
+
+    /**
+     * Removes the checkpoint, when the search has ended.
+     */
+    void delete()
+    {
+        file.delete();
+    }
+}
@@ -0,0 +1,238 @@
+package sokoban.solvers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A map from long keys (board hashes) to packed long values, such as
+ * BoxPosDir.pack(), that can be shared between threads. It works like
+ * ConcurrentLongSet, but each slot has three entries in the AtomicLongArray:
+ * a version, the key and the value.
+ *
+ * The key and the value can't be written with one compare-and-set, so the
+ * version works as a sequence lock of the slot. A writer takes the slot by
+ * a compare-and-set of the version from even to odd, writes the key and the
+ * value, and makes the version even again. A reader reads the version, the
+ * key and the value, and only uses them if the version is even and still the
+ * same afterwards. So a reader never sees the key of one writer with the
+ * value of another, also when old entries are overwritten in lossy mode.
+ * Readers don't write anything, and a writer only holds a slot for two
+ * writes.
+ */
+public class ConcurrentLongMap
+{
+    /**
+     * Returned by get() when the key isn't in the map.
+     */
+    public static final long NO_VALUE = 0;
+
+    private static final int MAX_PROBES = 32;
+    private static final long EMPTY = 0;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final boolean lossy;
+    private final int probeLimit;
+
+    private final AtomicLong zeroValue = new AtomicLong(NO_VALUE);
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates a new map.
+     *
+     * @param capacity The minimum number of slots, which is rounded up to a
+     *            power of two.
+     * @param lossy True if old entries may be overwritten when the table gets
+     *            full, false if put() should throw instead.
+     */
+    public ConcurrentLongMap(final int capacity, final boolean lossy)
+    {
+        final int slots = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        table = new AtomicLongArray(3 * slots);
+        mask = slots - 1;
+        this.lossy = lossy;
+        probeLimit = lossy ? Math.min(MAX_PROBES, slots) : slots;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous value.
+     *
+     * @param key The key.
+     * @param value The value, which must not be NO_VALUE.
+     * @throws IllegalStateException If the table is full and the map isn't
+     *             lossy.
+     */
+    public void put(final long key, final long value)
+    {
+        insert(key, value, true);
+    }
+
+    /**
+     * Maps the key to the value, unless the key is already in the map.
+     *
+     * @param key The key.
+     * @param value The value, which must not be NO_VALUE.
+     * @return True if the key was added, false if it was in the map already.
+     * @throws IllegalStateException If the table is full and the map isn't
+     *             lossy.
+     */
+    public boolean putIfAbsent(final long key, final long value)
+    {
+        return insert(key, value, false);
+    }
+
+    private boolean insert(final long key, final long value,
+            final boolean replace)
+    {
+        if (value == NO_VALUE) {
+            throw new IllegalArgumentException("NO_VALUE can't be stored");
+        }
+
+        if (key == EMPTY) {
+            final boolean added = zeroValue.compareAndSet(NO_VALUE, value);
+            if (added) {
+                size.increment();
+            }
+            else if (replace) {
+                zeroValue.set(value);
+            }
+            return added;
+        }
+
+        final int home = ConcurrentLongSet.index(key, mask);
+        int i = home;
+        for (int probes = 0; probes < probeLimit; probes++) {
+            // Check without taking the slot first, since most slots that are
+            // probed hold other keys
+            final long current = table.get(3 * i + 1);
+            if (current == EMPTY || current == key) {
+                final long version = lock(i);
+                final long locked = table.get(3 * i + 1);
+                if (locked == EMPTY) {
+                    table.set(3 * i + 1, key);
+                    table.set(3 * i + 2, value);
+                    unlock(i, version);
+                    size.increment();
+                    return true;
+                }
+                if (locked == key) {
+                    if (replace) {
+                        table.set(3 * i + 2, value);
+                    }
+                    unlock(i, version);
+                    return false;
+                }
+                // Another thread took the slot for another key
+                unlock(i, version);
+            }
+            i = (i + 1) & mask;
+        }
+
+        if (lossy) {
+            // Overwrite the home slot
+            final long version = lock(home);
+            table.set(3 * home + 1, key);
+            table.set(3 * home + 2, value);
+            unlock(home, version);
+            return true;
+        }
+        throw new IllegalStateException("ConcurrentLongMap is full");
+    }
+
+    /**
+     * Takes a slot for writing, waiting for any other writer of the slot.
+     *
+     * @return The odd version that the slot has while it is taken.
+     */
+    private long lock(final int slot)
+    {
+        while (true) {
+            final long version = table.get(3 * slot);
+            if ((version & 1) == 0
+                    && table.compareAndSet(3 * slot, version, version + 1)) {
+                return version + 1;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void unlock(final int slot, final long version)
+    {
+        table.set(3 * slot, version + 1);
+    }
+
+    /**
+     * Returns the value that the key maps to.
+     *
+     * @param key The key.
+     * @return The value, or NO_VALUE if the key isn't in the map.
+     */
+    public long get(final long key)
+    {
+        if (key == EMPTY) {
+            return zeroValue.get();
+        }
+
+        int i = ConcurrentLongSet.index(key, mask);
+        for (int probes = 0; probes < probeLimit; probes++) {
+            long current;
+            long value;
+            while (true) {
+                final long version = table.get(3 * i);
+                if ((version & 1) == 0) {
+                    current = table.get(3 * i + 1);
+                    value = table.get(3 * i + 2);
+                    if (table.get(3 * i) == version) {
+                        break;
+                    }
+                }
+                // A writer has the slot
+                Thread.onSpinWait();
+            }
+            if (current == key) {
+                return value;
+            }
+            if (current == EMPTY) {
+                return NO_VALUE;
+            }
+            i = (i + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns whether the key is in the map.
+     *
+     * @param key The key.
+     * @return True if the key maps to a value, otherwise false.
+     */
+    public boolean containsKey(final long key)
+    {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Returns the number of entries in the map. In lossy mode this may be
+     * larger than the actual number of entries.
+     *
+     * @return The number of entries.
+     */
+    public long size()
+    {
+        return size.sum();
+    }
+
+    /**
+     * Removes all entries. This must not be called while other threads are
+     * using the map.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, EMPTY);
+        }
+        zeroValue.set(NO_VALUE);
+        size.reset();
+    }
+}
@@ -0,0 +1,232 @@
+package sokoban.solvers;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free set of long values (board hashes) that can be shared between
+ * threads. The values are stored in an open addressing table backed by an
+ * AtomicLongArray: adding a value is a compare-and-set of an empty slot, and
+ * lookups don't lock or write anything.
+ *
+ * The table has a fixed capacity. In lossy mode, adding a value to a crowded
+ * part of the table overwrites an old value instead of failing. This is fine
+ * for sets of visited or failed boards, since losing a value only means that
+ * a board may be searched again.
+ *
+ * The Set methods taking Long objects are provided so that the set can be
+ * used in place of a HashSet<Long>, but they box the values.
+ */
+public class ConcurrentLongSet extends AbstractSet<Long>
+{
+    /**
+     * The number of slots to probe before overwriting a value in lossy mode.
+     */
+    private static final int MAX_PROBES = 32;
+
+    /**
+     * Marks an empty slot. The value 0 is stored separately.
+     */
+    private static final long EMPTY = 0;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final boolean lossy;
+    private final int probeLimit;
+
+    private final AtomicBoolean containsZero = new AtomicBoolean();
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates a new set.
+     *
+     * @param capacity The minimum number of slots, which is rounded up to a
+     *            power of two.
+     * @param lossy True if old values may be overwritten when the table gets
+     *            full, false if add() should throw instead.
+     */
+    public ConcurrentLongSet(final int capacity, final boolean lossy)
+    {
+        final int slots = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        table = new AtomicLongArray(slots);
+        mask = slots - 1;
+        this.lossy = lossy;
+        probeLimit = lossy ? Math.min(MAX_PROBES, slots) : slots;
+    }
+
+    /**
+     * Returns the slot where the search for the value starts.
+     */
+    static int index(final long value, final int mask)
+    {
+        // Board hashes are random already, but other values might not be
+        final long mixed = value * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32) & mask;
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value The value to add.
+     * @return True if the value wasn't in the set before, otherwise false.
+     * @throws IllegalStateException If the table is full and the set isn't
+     *             lossy.
+     */
+    public boolean add(final long value)
+    {
+        if (value == EMPTY) {
+            if (containsZero.compareAndSet(false, true)) {
+                size.increment();
+                return true;
+            }
+            return false;
+        }
+
+        final int home = index(value, mask);
+        int i = home;
+        for (int probes = 0; probes < probeLimit; probes++) {
+            long current = table.get(i);
+            if (current == EMPTY) {
+                if (table.compareAndSet(i, EMPTY, value)) {
+                    size.increment();
+                    return true;
+                }
+                // Another thread took the slot
+                current = table.get(i);
+            }
+            if (current == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+
+        if (lossy) {
+            // Lose the value in the home slot
+            table.set(home, value);
+            return true;
+        }
+        throw new IllegalStateException("ConcurrentLongSet is full");
+    }
+
+    /**
+     * Returns whether the value is in the set.
+     *
+     * @param value The value to look for.
+     * @return True if the value is in the set, otherwise false.
+     */
+    public boolean contains(final long value)
+    {
+        if (value == EMPTY) {
+            return containsZero.get();
+        }
+
+        int i = index(value, mask);
+        for (int probes = 0; probes < probeLimit; probes++) {
+            final long current = table.get(i);
+            if (current == value) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(final Long value)
+    {
+        return add(value.longValue());
+    }
+
+    @Override
+    public boolean contains(final Object value)
+    {
+        return value instanceof Long && contains(((Long) value).longValue());
+    }
+
+    /**
+     * Returns the number of values in the set. In lossy mode this may be
+     * larger than the actual number of values, since overwritten values
+     * aren't subtracted.
+     */
+    @Override
+    public int size()
+    {
+        return (int) Math.min(size.sum(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of slots in the table.
+     *
+     * @return The capacity.
+     */
+    public int capacity()
+    {
+        return table.length();
+    }
+
+    /**
+     * Removes all values. This must not be called while other threads are
+     * using the set.
+     */
+    @Override
+    public void clear()
+    {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, EMPTY);
+        }
+        containsZero.set(false);
+        size.reset();
+    }
+
+    /**
+     * Returns an iterator over the values. Values that are added while
+     * iterating may or may not be returned. The iterator doesn't support
+     * remove().
+     */
+    @Override
+    public Iterator<Long> iterator()
+    {
+        return new Iterator<Long>() {
+            private int slot = containsZero.get() ? -1 : nextSlot(0);
+
+            private int nextSlot(int from)
+            {
+                while (from < table.length() && table.get(from) == EMPTY) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return slot < table.length();
+            }
+
+            @Override
+            public Long next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                final long value = slot < 0 ? EMPTY : table.get(slot);
+                slot = nextSlot(slot + 1);
+                return value;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
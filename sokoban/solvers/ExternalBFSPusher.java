@@ -0,0 +1,820 @@
+package sokoban.solvers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sokoban.Board;
+
+/**
+ * A breadth-first search over pushes that keeps its states on disk instead of
+ * in the heap, for levels with more states than the heap can hold. The
+ * solutions have the least possible number of pushes.
+ *
+ * Each layer of the search (the states that are a given number of pushes from
+ * the start) is a file of packed states, sorted. The successors of a layer
+ * are collected in a buffer, which is sorted and written to a run file when
+ * it is full. The runs are then merged, and the duplicates are removed in the
+ * same pass by merging them with a file of all the states seen so far
+ * (delayed duplicate detection), which also gives the file of the states
+ * seen for the next layer. When there are many runs, they are first merged
+ * in groups into fewer, longer runs. All files are read and written
+ * sequentially.
+ *
+ * When a solved state is found, the pushes are found by scanning the layers
+ * backwards, looking for a state in each layer with a successor that is the
+ * state found in the next one.
+ *
+ * A state is packed as the box squares and the normalized player square,
+ * 16 bits each, in as many longs as needed, so that the order of the states
+ * is the order of the longs. The directory and the size of the buffer are
+ * read from the system properties sokoban.bfs.dir and sokoban.bfs.memory (in
+ * megabytes) when the solver is created with the default constructor, as
+ * SolverFactory does.
+ */
+public class ExternalBFSPusher implements Solver, PackedLevel.Successors
+{
+    /**
+     * The system property that names the directory of the files. The default
+     * is the temporary directory of the JVM.
+     */
+    public static final String DIRECTORY_PROPERTY = "sokoban.bfs.dir";
+
+    /**
+     * The system property with the size of the successor buffer, in
+     * megabytes
+     */
+    public static final String MEMORY_PROPERTY = "sokoban.bfs.memory";
+
+    /**
+     * The size of the successor buffer when the property isn't set, in
+     * megabytes
+     */
+    public static final int DEFAULT_MEMORY = 64;
+
+    /**
+     * The number of expanded nodes between two checks of the cancellation
+     * token and the heartbeat. Must be a power of two.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    /**
+     * The buffer size of the layer files
+     */
+    private static final int FILE_BUFFER = 1 << 20;
+
+    /**
+     * The buffer size of the run files, which are open at once when they are
+     * merged
+     */
+    private static final int RUN_BUFFER = 1 << 16;
+
+    /**
+     * The most runs that are merged at once. When a layer has more, they are
+     * first merged in groups into longer runs, so that the number of open
+     * files and the memory of their buffers stay bounded.
+     */
+    private static final int MERGE_WIDTH = 64;
+
+    private final File parent;
+    private final long memory;
+
+    private PackedLevel level;
+    private PackedLevel.Expander expander;
+
+    /**
+     * The number of longs in a packed state
+     */
+    private int words;
+    private File directory;
+
+    // The successors of the layer that haven't been written to a run
+    private long[] buffer;
+    private int bufferStates;
+    private final List<File> runs = new ArrayList<File>();
+    private int runNumber;
+
+    // Scratch states for the sort
+    private long[] pivot;
+    private long[] state;
+
+    /**
+     * The solved state, once it is found
+     */
+    private long[] solved;
+
+    /**
+     * The direction of each push of the solution, from findPushes()
+     */
+    private int[] pushDirs;
+
+    private long expandedNodes;
+    private long visitedStates;
+    private CancellationToken cancellation;
+    private SearchListener listener;
+    private Heartbeat heartbeat;
+
+    /**
+     * Creates a solver with the directory and the buffer size from the system
+     * properties.
+     */
+    public ExternalBFSPusher()
+    {
+        this(new File(System.getProperty(DIRECTORY_PROPERTY, System
+                .getProperty("java.io.tmpdir"))), Long.getLong(
+                MEMORY_PROPERTY, DEFAULT_MEMORY) << 20);
+    }
+
+    /**
+     * Creates a solver.
+     *
+     * @param directory The directory to create the files of each search in.
+     * @param memory The size of the successor buffer, in bytes.
+     */
+    public ExternalBFSPusher(final File directory, final long memory)
+    {
+        parent = directory;
+        this.memory = memory;
+    }
+
+    @Override
+    public String solve(final Board startBoard)
+    {
+        level = new PackedLevel(startBoard);
+        expander = level.new Expander();
+        if (level.squares > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("The board is too large");
+        }
+        words = (level.boxCount + 1 + 3) / 4;
+        final long bufferSize = Math.max(1, Math.min(memory / (8L * words),
+                (Integer.MAX_VALUE - 8) / words));
+        buffer = new long[(int) bufferSize * words];
+        pivot = new long[words];
+        state = new long[words];
+        bufferStates = 0;
+        runNumber = 0;
+        solved = null;
+        expandedNodes = 0;
+        visitedStates = 0;
+        heartbeat = listener == null ? null : new Heartbeat(listener,
+                getClass().getSimpleName(), 0);
+
+        if (level.heuristic(level.startBoxes) == PackedLevel.DEAD) {
+            System.out.println("no solution!");
+            return null;
+        }
+        final int startPlayer = expander.normalize(level.startBoxes,
+                level.startPlayer);
+        if (level.isSolved(level.startBoxes)) {
+            return "";
+        }
+
+        try {
+            directory = File.createTempFile("bfs", "", parent);
+            if (!directory.delete() || !directory.mkdir()) {
+                throw new IOException("Can't create " + directory);
+            }
+            return search(startPlayer);
+        }
+        catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            buffer = null;
+            runs.clear();
+            if (directory != null) {
+                final File[] files = directory.listFiles();
+                for (final File file : files == null ? new File[0] : files) {
+                    file.delete();
+                }
+                directory.delete();
+                directory = null;
+            }
+        }
+    }
+
+    private String search(final int startPlayer) throws IOException
+    {
+        final long[] start = new long[words];
+        pack(level.startBoxes, startPlayer, start, 0);
+        RecordWriter writer = new RecordWriter(layerFile(0), FILE_BUFFER);
+        writer.write(start, 0);
+        writer.close();
+        writer = new RecordWriter(visitedFile(0), FILE_BUFFER);
+        writer.write(start, 0);
+        writer.close();
+        visitedStates = 1;
+
+        final String name = getClass().getSimpleName();
+        for (int depth = 0;; depth++) {
+            final long startNodes = expandedNodes;
+            final long startTime = System.nanoTime();
+            if (listener != null) {
+                listener.iterationStarted(name, depth, expandedNodes);
+            }
+
+            expandLayer(depth);
+            if (solved != null) {
+                return Board.solutionToString(expander.toMoves(
+                        findPushes(depth), pushDirs, depth + 1));
+            }
+            final long layerSize = mergeRuns(depth);
+
+            if (listener != null) {
+                listener.iterationFinished(name, depth, expandedNodes
+                        - startNodes, layerSize, visitedStates, System
+                        .nanoTime() - startTime);
+            }
+            if (layerSize == 0) {
+                System.out.println("no solution!");
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Expands the states of a layer into run files, or until a solved state
+     * is found.
+     */
+    private void expandLayer(final int depth) throws IOException
+    {
+        final int[] boxes = new int[level.boxCount];
+        final RecordReader layer = new RecordReader(layerFile(depth),
+                FILE_BUFFER);
+        try {
+            while (solved == null && layer.next()) {
+                final int player = unpack(layer.record, 0, boxes);
+                if ((++expandedNodes & (CANCEL_CHECK_INTERVAL - 1)) == 0) {
+                    checkpoint();
+                }
+                expander.expand(boxes, player, level.hash(level
+                        .boxHash(boxes), player), this);
+            }
+        }
+        finally {
+            layer.close();
+        }
+        if (solved == null) {
+            flushRun();
+        }
+    }
+
+    private void checkpoint()
+    {
+        checkCancelled();
+        if (heartbeat != null) {
+            heartbeat.check(expandedNodes, visitedStates);
+        }
+    }
+
+    private void checkCancelled()
+    {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new SearchCancelledException();
+        }
+    }
+
+    @Override
+    public void successor(final int[] newBoxes, final int newPlayer,
+            final long newHash, final int box, final int dir)
+    {
+        if (solved != null) {
+            return;
+        }
+        if (level.isSolved(newBoxes)) {
+            solved = new long[words];
+            pack(newBoxes, newPlayer, solved, 0);
+            return;
+        }
+
+        pack(newBoxes, newPlayer, buffer, bufferStates * words);
+        if (++bufferStates * words == buffer.length) {
+            try {
+                flushRun();
+            }
+            catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Sorts the buffer and writes it to a new run file, without duplicates.
+     */
+    private void flushRun() throws IOException
+    {
+        if (bufferStates == 0) {
+            return;
+        }
+        sort(0, bufferStates);
+
+        final File file = newRunFile();
+        final RecordWriter run = new RecordWriter(file, FILE_BUFFER);
+        try {
+            for (int i = 0; i < bufferStates; i++) {
+                if (i == 0
+                        || compare(buffer, (i - 1) * words, buffer, i * words) != 0) {
+                    run.write(buffer, i * words);
+                }
+            }
+        }
+        finally {
+            run.close();
+        }
+        runs.add(file);
+        bufferStates = 0;
+    }
+
+    private File newRunFile()
+    {
+        return new File(directory, "run-" + runNumber++ + ".bin");
+    }
+
+    /**
+     * Merges the runs in groups of MERGE_WIDTH into longer runs, until they
+     * are few enough to be merged at once.
+     */
+    private void reduceRuns() throws IOException
+    {
+        long records = 0;
+        while (runs.size() > MERGE_WIDTH) {
+            final List<File> merged = new ArrayList<File>();
+            for (int i = 0; i < runs.size(); i += MERGE_WIDTH) {
+                final List<File> group = runs.subList(i, Math.min(
+                        runs.size(), i + MERGE_WIDTH));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+
+                final File file = newRunFile();
+                final RunMerger merger = new RunMerger(group);
+                final RecordWriter run = new RecordWriter(file, FILE_BUFFER);
+                try {
+                    while (merger.next()) {
+                        if ((++records & (CANCEL_CHECK_INTERVAL - 1)) == 0) {
+                            checkCancelled();
+                        }
+                        run.write(merger.record, 0);
+                    }
+                }
+                finally {
+                    merger.close();
+                    run.close();
+                }
+                for (final File input : group) {
+                    input.delete();
+                }
+                merged.add(file);
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+    }
+
+    /**
+     * Merges the runs into the next layer, leaving out the states that have
+     * been seen, and writes the states seen so far to a new file.
+     *
+     * @return The number of states in the next layer.
+     */
+    private long mergeRuns(final int depth) throws IOException
+    {
+        reduceRuns();
+        long records = 0;
+        final RunMerger successors = new RunMerger(runs);
+        final RecordReader visited = new RecordReader(visitedFile(depth),
+                FILE_BUFFER);
+        final RecordWriter layer = new RecordWriter(layerFile(depth + 1),
+                FILE_BUFFER);
+        final RecordWriter nextVisited = new RecordWriter(
+                visitedFile(depth + 1), FILE_BUFFER);
+        try {
+            boolean more = visited.next();
+            while (successors.next()) {
+                if ((++records & (CANCEL_CHECK_INTERVAL - 1)) == 0) {
+                    checkCancelled();
+                }
+                int order = -1;
+                while (more
+                        && (order = compare(visited.record, 0,
+                                successors.record, 0)) < 0) {
+                    nextVisited.write(visited.record, 0);
+                    more = visited.next();
+                }
+                if (more && order == 0) {
+                    continue;
+                }
+                layer.write(successors.record, 0);
+                nextVisited.write(successors.record, 0);
+            }
+            while (more) {
+                if ((++records & (CANCEL_CHECK_INTERVAL - 1)) == 0) {
+                    checkCancelled();
+                }
+                nextVisited.write(visited.record, 0);
+                more = visited.next();
+            }
+        }
+        finally {
+            successors.close();
+            visited.close();
+            layer.close();
+            nextVisited.close();
+        }
+
+        for (final File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        visitedFile(depth).delete();
+        visitedStates += layer.count;
+        return layer.count;
+    }
+
+    /**
+     * Finds the pushes that lead to the solved state, by scanning the layers
+     * from the last one to the start.
+     *
+     * @param depth The depth of the layer that the solved state was found
+     *            from.
+     * @return The square of the pushed box before each push. The directions
+     *         are stored in pushDirs.
+     */
+    private int[] findPushes(final int depth) throws IOException
+    {
+        final int[] pushBoxes = new int[depth + 1];
+        pushDirs = new int[depth + 1];
+        final int[] boxes = new int[level.boxCount];
+        final Predecessor predecessor = new Predecessor(solved);
+
+        for (int d = depth; d >= 0; d--) {
+            final RecordReader layer = new RecordReader(layerFile(d),
+                    FILE_BUFFER);
+            try {
+                predecessor.found = false;
+                while (!predecessor.found && layer.next()) {
+                    final int player = unpack(layer.record, 0, boxes);
+                    expander.expand(boxes, player, level.hash(level
+                            .boxHash(boxes), player), predecessor);
+                }
+                if (!predecessor.found) {
+                    throw new IllegalStateException("No state in layer " + d
+                            + " leads to the next layer");
+                }
+                pushBoxes[d] = predecessor.box;
+                pushDirs[d] = predecessor.dir;
+                System.arraycopy(layer.record, 0, predecessor.target, 0, words);
+            }
+            finally {
+                layer.close();
+            }
+        }
+        return pushBoxes;
+    }
+
+    /**
+     * Looks for the push that leads to a given state.
+     */
+    private final class Predecessor implements PackedLevel.Successors
+    {
+        final long[] target;
+        final long[] packed = new long[words];
+        boolean found;
+        int box;
+        int dir;
+
+        Predecessor(final long[] target)
+        {
+            this.target = target.clone();
+        }
+
+        @Override
+        public void successor(final int[] newBoxes, final int newPlayer,
+                final long newHash, final int pushedBox, final int pushDir)
+        {
+            if (found) {
+                return;
+            }
+            pack(newBoxes, newPlayer, packed, 0);
+            if (compare(packed, 0, target, 0) == 0) {
+                found = true;
+                box = pushedBox;
+                dir = pushDir;
+            }
+        }
+    }
+
+    private File layerFile(final int depth)
+    {
+        return new File(directory, "layer-" + depth + ".bin");
+    }
+
+    private File visitedFile(final int depth)
+    {
+        return new File(directory, "visited-" + depth + ".bin");
+    }
+
+    /**
+     * Packs a state into the longs of out from offset.
+     */
+    private void pack(final int[] boxes, final int player, final long[] out,
+            final int offset)
+    {
+        Arrays.fill(out, offset, offset + words, 0);
+        for (int i = 0; i < boxes.length; i++) {
+            out[offset + i / 4] |= (long) boxes[i] << (48 - 16 * (i % 4));
+        }
+        final int i = boxes.length;
+        out[offset + i / 4] |= (long) player << (48 - 16 * (i % 4));
+    }
+
+    /**
+     * Unpacks a state into boxes.
+     *
+     * @return The player square.
+     */
+    private int unpack(final long[] in, final int offset, final int[] boxes)
+    {
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = (int) (in[offset + i / 4] >>> (48 - 16 * (i % 4))) & 0xffff;
+        }
+        final int i = boxes.length;
+        return (int) (in[offset + i / 4] >>> (48 - 16 * (i % 4))) & 0xffff;
+    }
+
+    private int compare(final long[] a, final int aOffset, final long[] b,
+            final int bOffset)
+    {
+        for (int w = 0; w < words; w++) {
+            if (a[aOffset + w] != b[bOffset + w]) {
+                return a[aOffset + w] < b[bOffset + w] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sorts the states from index low to high (exclusive) in the buffer with
+     * a quicksort.
+     */
+    private void sort(int low, int high)
+    {
+        while (high - low > 16) {
+            final int middle = (low + high) >>> 1;
+            if (compare(buffer, middle * words, buffer, low * words) < 0) {
+                swap(low, middle);
+            }
+            if (compare(buffer, (high - 1) * words, buffer, middle * words) < 0) {
+                swap(middle, high - 1);
+                if (compare(buffer, middle * words, buffer, low * words) < 0) {
+                    swap(low, middle);
+                }
+            }
+            System.arraycopy(buffer, middle * words, pivot, 0, words);
+
+            int i = low;
+            int j = high - 1;
+            while (i <= j) {
+                while (compare(buffer, i * words, pivot, 0) < 0) {
+                    i++;
+                }
+                while (compare(buffer, j * words, pivot, 0) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // Recurse into the smaller part
+            if (j - low < high - i) {
+                sort(low, j + 1);
+                low = i;
+            }
+            else {
+                sort(i, high);
+                high = j + 1;
+            }
+        }
+
+        for (int i = low + 1; i < high; i++) {
+            System.arraycopy(buffer, i * words, state, 0, words);
+            int j = i - 1;
+            while (j >= low && compare(buffer, j * words, state, 0) > 0) {
+                System.arraycopy(buffer, j * words, buffer, (j + 1) * words,
+                        words);
+                j--;
+            }
+            System.arraycopy(state, 0, buffer, (j + 1) * words, words);
+        }
+    }
+
+    private void swap(final int a, final int b)
+    {
+        for (int w = 0; w < words; w++) {
+            final long t = buffer[a * words + w];
+            buffer[a * words + w] = buffer[b * words + w];
+            buffer[b * words + w] = t;
+        }
+    }
+
+    @Override
+    public long getIterationsCount()
+    {
+        return expandedNodes;
+    }
+
+    @Override
+    public void setCancellationToken(final CancellationToken token)
+    {
+        cancellation = token;
+    }
+
+    @Override
+    public void setSearchListener(final SearchListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Writes packed states to a file.
+     */
+    private final class RecordWriter implements Closeable
+    {
+        private final DataOutputStream out;
+        long count;
+
+        RecordWriter(final File file, final int bufferSize) throws IOException
+        {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), bufferSize));
+        }
+
+        void write(final long[] state, final int offset) throws IOException
+        {
+            for (int w = 0; w < words; w++) {
+                out.writeLong(state[offset + w]);
+            }
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the packed states of a file, one at a time.
+     */
+    private final class RecordReader implements Closeable
+    {
+        private final DataInputStream in;
+        private long remaining;
+
+        /**
+         * The current state
+         */
+        final long[] record = new long[words];
+
+        RecordReader(final File file, final int bufferSize) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), bufferSize));
+            remaining = file.length() / (8L * words);
+        }
+
+        /**
+         * Reads the next state into record.
+         *
+         * @return False if there are no more states.
+         */
+        boolean next() throws IOException
+        {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            for (int w = 0; w < words; w++) {
+                record[w] = in.readLong();
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Merges sorted run files into one sorted stream without duplicates. The
+     * runs are kept in a binary heap ordered by their current states.
+     */
+    private final class RunMerger implements Closeable
+    {
+        private final RecordReader[] heap;
+        private int size;
+        private boolean first = true;
+
+        /**
+         * The current state
+         */
+        final long[] record = new long[words];
+
+        RunMerger(final List<File> runs) throws IOException
+        {
+            heap = new RecordReader[runs.size()];
+            try {
+                for (final File run : runs) {
+                    final RecordReader reader = new RecordReader(run,
+                            RUN_BUFFER);
+                    heap[size++] = reader;
+                    if (!reader.next()) {
+                        reader.close();
+                        size--;
+                    }
+                }
+            }
+            catch (final IOException e) {
+                close();
+                throw e;
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        /**
+         * Reads the next state into record.
+         *
+         * @return False if there are no more states.
+         */
+        boolean next() throws IOException
+        {
+            while (size > 0) {
+                final RecordReader top = heap[0];
+                final boolean duplicate = !first
+                        && compare(top.record, 0, record, 0) == 0;
+                if (!duplicate) {
+                    System.arraycopy(top.record, 0, record, 0, words);
+                }
+                if (!top.next()) {
+                    top.close();
+                    heap[0] = heap[--size];
+                }
+                siftDown(0);
+                if (!duplicate) {
+                    first = false;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void siftDown(int i)
+        {
+            while (true) {
+                int least = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2; child++) {
+                    if (child < size
+                            && compare(heap[child].record, 0,
+                                    heap[least].record, 0) < 0) {
+                        least = child;
+                    }
+                }
+                if (least == i) {
+                    return;
+                }
+                final RecordReader t = heap[i];
+                heap[i] = heap[least];
+                heap[least] = t;
+                i = least;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            for (int i = 0; i < size; i++) {
+                heap[i].close();
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package sokoban.solvers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import sokoban.Board;
+import sokoban.Zobrist;
+
+/**
+ * A file of the failed boards of a level, which is kept between runs, so that
+ * a search doesn't have to find the boards that fail again. The boards are
+ * stored as Zobrist keys, which are the same in every run.
+ *
+ * The file is an append-only log. It starts with the magic number, the format
+ * version, the Zobrist seed and a hash of the level, and each merge appends a
+ * block of the keys that weren't in the file: the number of keys, the keys
+ * and a CRC-32 of the keys. A block that wasn't written completely, because
+ * the process was killed, is ignored and overwritten by the next merge.
+ * Everything is big-endian.
+ *
+ * The pusher and the puller have their own files, since their boards are
+ * different.
+ */
+public final class FailedStateStore
+{
+    /**
+     * The system property that names the directory of the files. The solvers
+     * only use the files when it is set.
+     */
+    public static final String DIRECTORY_PROPERTY = "sokoban.failedstates";
+
+    /**
+     * "SKFL"
+     */
+    private static final int MAGIC = 0x534b464c;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16 + 20;
+
+    private final File file;
+    private final byte[] signature;
+
+    /**
+     * The keys in the file, sorted
+     */
+    private long[] stored = new long[0];
+
+    /**
+     * The length of the valid part of the file
+     */
+    private long validLength;
+
+    /**
+     * Creates a store.
+     *
+     * @param file The file.
+     * @param board The start board of the level.
+     */
+    public FailedStateStore(final File file, final Board board)
+    {
+        this.file = file;
+        signature = Checkpoint.signature(board);
+    }
+
+    /**
+     * Returns the store of a solver and a level in the directory given by the
+     * system properties.
+     *
+     * @param solver The solver.
+     * @param board The start board.
+     * @return The store, or null if no directory is set.
+     */
+    public static FailedStateStore fromProperties(final Solver solver,
+            final Board board)
+    {
+        final String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        new File(directory).mkdirs();
+        return new FailedStateStore(new File(directory, Checkpoint.fileName(
+                board, solver.getClass().getSimpleName(), ".fail")), board);
+    }
+
+    /**
+     * Returns the file of the store.
+     *
+     * @return The file.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Reads the keys in the file. A file that is for another level or seed,
+     * or can't be read, is treated as empty, and is replaced by the next
+     * merge.
+     *
+     * @return A new set of the keys.
+     */
+    public Set<Long> load()
+    {
+        stored = new long[0];
+        validLength = 0;
+        if (!file.isFile()) {
+            return new HashSet<Long>();
+        }
+
+        long[] keys = new long[1024];
+        int count = 0;
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                final byte[] header = new byte[20];
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                        || in.readLong() != Zobrist.SEED) {
+                    return new HashSet<Long>();
+                }
+                in.readFully(header);
+                if (!Arrays.equals(header, signature)) {
+                    return new HashSet<Long>();
+                }
+                validLength = HEADER_SIZE;
+
+                while (true) {
+                    final int blockSize = in.readInt();
+                    if (blockSize < 0
+                            || HEADER_SIZE + 8L * (count + blockSize) > file
+                                    .length()) {
+                        break;
+                    }
+                    if (count + blockSize > keys.length) {
+                        keys = Arrays.copyOf(keys, Math.max(2 * keys.length,
+                                count + blockSize));
+                    }
+                    final CRC32 crc = new CRC32();
+                    for (int i = 0; i < blockSize; i++) {
+                        final long key = in.readLong();
+                        keys[count + i] = key;
+                        update(crc, key);
+                    }
+                    if ((int) crc.getValue() != in.readInt()) {
+                        break;
+                    }
+                    count += blockSize;
+                    validLength += 4 + 8L * blockSize + 4;
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (final EOFException e) {
+            // A block that wasn't written completely
+        }
+        catch (final IOException e) {
+            System.err.println("Failed states not loaded: " + e);
+        }
+
+        stored = Arrays.copyOf(keys, count);
+        Arrays.sort(stored);
+        final Set<Long> result = new HashSet<Long>(2 * count);
+        for (final long key : stored) {
+            result.add(key);
+        }
+        return result;
+    }
+
+    /**
+     * Appends the keys that aren't in the file yet. An error is reported on
+     * stderr.
+     *
+     * @param failed The failed boards of the search.
+     * @return The number of keys that were added.
+     */
+    public int merge(final Set<Long> failed)
+    {
+        final long[] added = new long[failed.size()];
+        int count = 0;
+        for (final long key : failed) {
+            if (Arrays.binarySearch(stored, key) < 0) {
+                added[count++] = key;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        try {
+            if (validLength < HEADER_SIZE) {
+                writeHeader();
+            }
+            else {
+                // Drop a block that wasn't written completely
+                final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(validLength);
+                }
+                finally {
+                    raf.close();
+                }
+            }
+
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file, true),
+                            1 << 16));
+            try {
+                final CRC32 crc = new CRC32();
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(added[i]);
+                    update(crc, added[i]);
+                }
+                out.writeInt((int) crc.getValue());
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch (final IOException e) {
+            System.err.println("Failed states not saved: " + e);
+            return 0;
+        }
+
+        validLength += 4 + 8L * count + 4;
+        final long[] merged = Arrays.copyOf(stored, stored.length + count);
+        System.arraycopy(added, 0, merged, stored.length, count);
+        Arrays.sort(merged);
+        stored = merged;
+        return count;
+    }
+
+    private void writeHeader() throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(file));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Zobrist.SEED);
+            out.write(signature);
+        }
+        finally {
+            out.close();
+        }
+        validLength = HEADER_SIZE;
+    }
+
+    private static void update(final CRC32 crc, final long key)
+    {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (key >>> shift));
+        }
+    }
+}
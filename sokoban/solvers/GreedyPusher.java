@@ -0,0 +1,22 @@
+package sokoban.solvers;
+
+/**
+ * A greedy best-first search over pushes, which always expands a state with
+ * the lowest lower bound, ignoring the number of pushes made so far. It
+ * usually finds a solution quickly, but the solution may be far from
+ * optimal.
+ */
+public class GreedyPusher extends AStarPusher
+{
+    @Override
+    protected int priority(final int g, final int h)
+    {
+        return h;
+    }
+
+    @Override
+    protected boolean reopen()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,492 @@
+package sokoban.solvers;
+
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import sokoban.Board;
+import sokoban.Board.Direction;
+
+/**
+ * A parallel A* search over pushes, using hash distributed A* (HDA*). Each
+ * worker thread owns the states whose hash maps to it, and has its own open
+ * list and closed set, so duplicate detection needs no locks. Successors are
+ * collected in batches per owner, and the batches are sent through lock-free
+ * mailboxes. A worker without nodes parks until a batch is sent to it or
+ * the search ends.
+ *
+ * The search stops at the first solved state that a worker expands. Since the
+ * workers don't expand states in strict f order between them, the solution
+ * may be a few pushes longer than the optimal one.
+ */
+public class HDAStarPusher implements Solver
+{
+    /**
+     * The number of nodes in a batch, before it is sent to its owner.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * The number of nodes a worker expands between checks of its mailbox.
+     */
+    private static final int EXPAND_SLICE = 32;
+
+    /**
+     * How often the heartbeat is checked while waiting for the workers, in
+     * milliseconds.
+     */
+    private static final long HEARTBEAT_POLL_MILLIS = 100;
+
+    /**
+     * The longest time an idle worker parks before it checks the
+     * cancellation token, in nanoseconds.
+     */
+    private static final long IDLE_PARK_NANOS = 10 * 1000 * 1000;
+
+    /**
+     * The initial number of slots of the closed set of each worker.
+     */
+    private static final int CLOSED_CAPACITY = 1 << 12;
+
+    /**
+     * A search node. Nodes are immutable once they have been sent.
+     */
+    static final class Node
+    {
+        final int[] boxes;
+        final int player;
+        final long hash;
+        final int g;
+        final int f;
+        final Node parent;
+        final int pushBox;
+        final int pushDir;
+
+        Node(final int[] boxes, final int player, final long hash,
+                final int g, final int h, final Node parent,
+                final int pushBox, final int pushDir)
+        {
+            this.boxes = boxes;
+            this.player = player;
+            this.hash = hash;
+            this.g = g;
+            this.f = g + h;
+            this.parent = parent;
+            this.pushBox = pushBox;
+            this.pushDir = pushDir;
+        }
+    }
+
+    /**
+     * Orders nodes by f, and then by g descending, so that deeper nodes are
+     * preferred among equals.
+     */
+    private static final Comparator<Node> NODE_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(final Node a, final Node b)
+        {
+            if (a.f != b.f) {
+                return a.f < b.f ? -1 : 1;
+            }
+            return b.g - a.g;
+        }
+    };
+
+    private final int threads;
+
+    private PackedLevel level;
+    private Worker[] workers;
+
+    /**
+     * The number of nodes that have been generated but not expanded or
+     * discarded, in all workers and mailboxes. When it reaches 0 the whole
+     * search space has been searched.
+     */
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicReference<Node> goal = new AtomicReference<Node>();
+    private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    private volatile boolean done;
+    private long expandedNodes;
+    private CancellationToken cancellation;
+    private SearchListener listener;
+
+    /**
+     * Creates a solver that uses one thread per processor.
+     */
+    public HDAStarPusher()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a solver that uses the given number of threads.
+     *
+     * @param threads The number of threads.
+     */
+    public HDAStarPusher(final int threads)
+    {
+        this.threads = threads;
+    }
+
+    @Override
+    public String solve(final Board startBoard)
+    {
+        level = new PackedLevel(startBoard);
+        pending.set(0);
+        goal.set(null);
+        error.set(null);
+        done = false;
+        expandedNodes = 0;
+
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+        }
+
+        final int[] boxes = level.startBoxes;
+        final int h = level.heuristic(boxes);
+        if (h == PackedLevel.DEAD) {
+            System.out.println("no solution!");
+            return null;
+        }
+        final int player = workers[0].expander.normalize(boxes,
+                level.startPlayer);
+        final long hash = level.hash(level.boxHash(boxes), player);
+        pending.set(1);
+        workers[owner(hash)].insert(new Node(boxes, player, hash, 0, h,
+                null, -1, -1));
+
+        final Thread[] workerThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workerThreads[i] = new Thread(AllocationGroup.counted(workers[i]),
+                    "HDA* worker " + i);
+            workers[i].thread = workerThreads[i];
+        }
+        for (final Thread thread : workerThreads) {
+            thread.start();
+        }
+        try {
+            final Heartbeat heartbeat = listener == null ? null
+                    : new Heartbeat(listener, getClass().getSimpleName(), 0);
+            for (final Thread thread : workerThreads) {
+                if (heartbeat == null) {
+                    thread.join();
+                    continue;
+                }
+                while (thread.isAlive()) {
+                    thread.join(HEARTBEAT_POLL_MILLIS);
+                    heartbeat.check(countExpanded(), countClosed());
+                }
+            }
+        }
+        catch (final InterruptedException e) {
+            finish();
+            Thread.currentThread().interrupt();
+        }
+
+        expandedNodes = countExpanded();
+        if (error.get() != null) {
+            throw new RuntimeException("HDA* worker failed", error.get());
+        }
+
+        final Node solved = goal.get();
+        if (solved == null && cancellation != null
+                && cancellation.isCancelled()) {
+            throw new SearchCancelledException();
+        }
+        else if (solved == null) {
+            System.out.println("no solution!");
+            return null;
+        }
+        return Board.solutionToString(toMoves(solved));
+    }
+
+    @Override
+    public long getIterationsCount()
+    {
+        return expandedNodes;
+    }
+
+    @Override
+    public void setCancellationToken(final CancellationToken token)
+    {
+        cancellation = token;
+    }
+
+    @Override
+    public void setSearchListener(final SearchListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Ends the search, and wakes the workers that are parked.
+     */
+    private void finish()
+    {
+        done = true;
+        for (final Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * Returns the number of nodes expanded by the workers. While they are
+     * running, this is only an estimate.
+     */
+    private long countExpanded()
+    {
+        long sum = 0;
+        for (final Worker worker : workers) {
+            sum += worker.expandedCount;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of states seen by the workers. While they are
+     * running, this is only an estimate.
+     */
+    private long countClosed()
+    {
+        long sum = 0;
+        for (final Worker worker : workers) {
+            sum += worker.closedCount;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the worker that owns the state with the given hash.
+     */
+    private int owner(final long hash)
+    {
+        return (int) ((hash & Long.MAX_VALUE) % threads);
+    }
+
+    /**
+     * Converts the pushes from the start to the node into moves.
+     */
+    private Deque<Direction> toMoves(final Node node)
+    {
+        final int count = node.g;
+        final int[] pushBoxes = new int[count];
+        final int[] pushDirs = new int[count];
+        for (Node n = node; n.parent != null; n = n.parent) {
+            pushBoxes[n.g - 1] = n.pushBox;
+            pushDirs[n.g - 1] = n.pushDir;
+        }
+        return workers[0].expander.toMoves(pushBoxes, pushDirs, count);
+    }
+
+    /**
+     * A worker thread, which expands the nodes that it owns.
+     */
+    private class Worker implements Runnable, PackedLevel.Successors
+    {
+        private final int id;
+        final PackedLevel.Expander expander = level.new Expander();
+
+        private final ConcurrentLinkedQueue<Node[]> mailbox = new ConcurrentLinkedQueue<Node[]>();
+        private final PriorityQueue<Node> open = new PriorityQueue<Node>(
+                1024, NODE_ORDER);
+
+        /**
+         * The lowest g of each state that this worker has seen
+         */
+        final LongIntTable closed = new LongIntTable("HDA* closed",
+                CLOSED_CAPACITY);
+
+        /**
+         * Successors waiting to be sent, per owner. The buffers have room for
+         * the successors of one more node beyond BATCH_SIZE.
+         */
+        private final Node[][] outgoing = new Node[threads][];
+        private final int[] outgoingCount = new int[threads];
+
+        private Node current;
+        private int successors;
+        private long expanded;
+
+        /**
+         * The thread of the worker, which is unparked when a batch is sent
+         */
+        Thread thread;
+
+        // The counts of the worker, published for the other threads after
+        // each slice
+        volatile long expandedCount;
+        volatile long closedCount;
+
+        Worker(final int id)
+        {
+            this.id = id;
+            for (int i = 0; i < threads; i++) {
+                outgoing[i] = newBatch();
+            }
+        }
+
+        private Node[] newBatch()
+        {
+            return new Node[BATCH_SIZE + 4 * level.boxCount];
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                while (!done) {
+                    receive();
+                    if (cancellation != null && cancellation.isCancelled()) {
+                        finish();
+                    }
+                    else if (open.isEmpty()) {
+                        if (pending.get() == 0) {
+                            // Nothing left anywhere
+                            finish();
+                        }
+                        else {
+                            // A batch that is sent unparks the worker
+                            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        }
+                        continue;
+                    }
+
+                    for (int i = 0; i < EXPAND_SLICE && !open.isEmpty()
+                            && !done; i++) {
+                        expand(open.poll());
+                    }
+                    flush(0);
+                    publishCounts();
+                }
+            }
+            catch (final Throwable e) {
+                error.compareAndSet(null, e);
+                finish();
+            }
+            finally {
+                publishCounts();
+            }
+        }
+
+        private void publishCounts()
+        {
+            expandedCount = expanded;
+            closedCount = closed.size();
+        }
+
+        /**
+         * Inserts the nodes in the mailbox.
+         */
+        private void receive()
+        {
+            Node[] batch;
+            while ((batch = mailbox.poll()) != null) {
+                int discarded = 0;
+                for (final Node node : batch) {
+                    if (node == null) {
+                        break;
+                    }
+                    if (!insert(node)) {
+                        discarded++;
+                    }
+                }
+                if (discarded > 0) {
+                    pending.addAndGet(-discarded);
+                }
+            }
+        }
+
+        /**
+         * Adds the node to the open list, unless the state has been seen
+         * with a lower or equal g.
+         *
+         * @return True if the node was added.
+         */
+        boolean insert(final Node node)
+        {
+            final int best = closed.get(node.hash);
+            if (best >= 0 && best <= node.g) {
+                return false;
+            }
+            closed.put(node.hash, node.g);
+            open.add(node);
+            return true;
+        }
+
+        private void expand(final Node node)
+        {
+            final int best = closed.get(node.hash);
+            if (best >= 0 && best < node.g) {
+                // A shorter path to the state was found after this one
+                pending.decrementAndGet();
+                return;
+            }
+
+            expanded++;
+            if (level.isSolved(node.boxes)) {
+                goal.compareAndSet(null, node);
+                finish();
+                return;
+            }
+
+            current = node;
+            successors = 0;
+            expander.expand(node.boxes, node.player, node.hash, this);
+
+            // Count the successors before they can be seen by other workers
+            pending.addAndGet(successors - 1);
+
+            // Our own successors are inserted right away
+            final Node[] own = outgoing[id];
+            int discarded = 0;
+            for (int i = 0; i < outgoingCount[id]; i++) {
+                if (!insert(own[i])) {
+                    discarded++;
+                }
+                own[i] = null;
+            }
+            outgoingCount[id] = 0;
+            if (discarded > 0) {
+                pending.addAndGet(-discarded);
+            }
+
+            flush(BATCH_SIZE);
+        }
+
+        @Override
+        public void successor(final int[] boxes, final int player,
+                final long hash, final int box, final int dir)
+        {
+            final int h = level.heuristic(boxes);
+            if (h == PackedLevel.DEAD) {
+                return;
+            }
+
+            final int to = owner(hash);
+            outgoing[to][outgoingCount[to]++] = new Node(boxes, player, hash,
+                    current.g + 1, h, current, box, dir);
+            successors++;
+        }
+
+        /**
+         * Sends the batches that have at least the given number of nodes.
+         */
+        private void flush(final int minimum)
+        {
+            for (int i = 0; i < threads; i++) {
+                if (i != id && outgoingCount[i] > 0
+                        && outgoingCount[i] >= minimum) {
+                    workers[i].mailbox.add(outgoing[i]);
+                    LockSupport.unpark(workers[i].thread);
+                    outgoing[i] = newBatch();
+                    outgoingCount[i] = 0;
+                }
+            }
+        }
+    }
+}
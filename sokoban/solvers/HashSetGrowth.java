@@ -0,0 +1,80 @@
+package sokoban.solvers;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Follows the capacity of a HashSet of boards, so that a TableResize event
+ * can be recorded when it grows. HashSet doesn't tell its capacity, but with
+ * the default load factor it doubles the capacity when it gets more than 3/4
+ * full, so the capacity follows from the size. Other sets, such as the
+ * shared tables of ParallelIDSPusher, record their own events and are
+ * ignored.
+ */
+final class HashSetGrowth
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final String name;
+    private Set<Long> set;
+    private int capacity;
+
+    /**
+     * Creates a tracker.
+     *
+     * @param name The name of the table in the TableResize events.
+     */
+    HashSetGrowth(final String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Records an event if the set has grown. Call this after adding a board
+     * to the set. A set that hasn't been seen before is only measured.
+     *
+     * @param set The set.
+     */
+    void added(final Set<Long> set)
+    {
+        if (set != this.set) {
+            this.set = set;
+            capacity = set instanceof HashSet ? capacityFor(set.size(),
+                    DEFAULT_CAPACITY) : Integer.MAX_VALUE;
+            return;
+        }
+
+        final int size = set.size();
+        if (size > threshold(capacity)) {
+            final int oldCapacity = capacity;
+            capacity = capacityFor(size, capacity);
+
+            final SolverEvents.TableResize event = new SolverEvents.TableResize();
+            if (event.shouldCommit()) {
+                event.table = name;
+                event.oldCapacity = oldCapacity;
+                event.newCapacity = capacity;
+                event.entries = size;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest capacity, starting from a given one and doubling,
+     * that holds a number of entries.
+     */
+    private static int capacityFor(final int size, final int start)
+    {
+        int capacity = start;
+        while (size > threshold(capacity) && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int threshold(final int capacity)
+    {
+        return capacity == Integer.MAX_VALUE ? capacity : capacity / 4 * 3;
+    }
+}
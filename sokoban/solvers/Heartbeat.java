@@ -0,0 +1,47 @@
+package sokoban.solvers;
+
+/**
+ * Throttles the heartbeats of one search thread to one per
+ * SearchListener.HEARTBEAT_INTERVAL, and computes the node rate.
+ */
+final class Heartbeat
+{
+    private final SearchListener listener;
+    private final String solver;
+    private long lastTime;
+    private long lastNodes;
+
+    /**
+     * Creates a heartbeat for a search that starts now.
+     *
+     * @param listener The listener.
+     * @param solver The name of the solver.
+     * @param nodes The current node count.
+     */
+    Heartbeat(final SearchListener listener, final String solver,
+            final long nodes)
+    {
+        this.listener = listener;
+        this.solver = solver;
+        lastTime = System.nanoTime();
+        lastNodes = nodes;
+    }
+
+    /**
+     * Sends a heartbeat if the interval has passed since the last one.
+     *
+     * @param nodes The current node count.
+     * @param tableEntries The number of entries in the hash tables.
+     */
+    void check(final long nodes, final long tableEntries)
+    {
+        final long now = System.nanoTime();
+        final long elapsed = now - lastTime;
+        if (elapsed >= SearchListener.HEARTBEAT_INTERVAL) {
+            final double rate = (nodes - lastNodes) * 1e9 / elapsed;
+            listener.heartbeat(solver, nodes, rate, tableEntries);
+            lastTime = now;
+            lastNodes = nodes;
+        }
+    }
+}
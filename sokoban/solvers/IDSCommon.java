@@ -1,14 +1,16 @@
 package sokoban.solvers;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Deque;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 import sokoban.Board;
 import sokoban.Position;
 import sokoban.SearchInfo;
+import sokoban.Board.Direction;
 
 /**
  * A class containing the common parts of the solvers.
@@ -23,7 +25,85 @@ public abstract class IDSCommon implements Solver
     /**
      * The number of generated nodes
      */
-    public int generatedNodes = 0;
+    public long generatedNodes = 0;
+
+    /**
+     * The number of leaf nodes in the current (or last) iteration
+     */
+    public long numLeafNodes;
+
+    /**
+     * The number of leaf nodes in the last completed iteration, or -1 before
+     * the first iteration
+     */
+    long lastLeafCount = -1;
+
+    /**
+     * The number of nodes between two checks of the cancellation token and
+     * the heartbeat.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    /**
+     * The interleaving scheduler running this search, if any.
+     */
+    ResumableSearch resumable;
+
+    /**
+     * The node count at which the search will be paused next.
+     */
+    private long pauseAt = Long.MAX_VALUE;
+
+    /**
+     * Cancels the search when set, if not null.
+     */
+    CancellationToken cancellation;
+
+    /**
+     * The node count at which the pause and cancellation checks are done.
+     */
+    private long nextCheckpoint = Long.MAX_VALUE;
+
+    /**
+     * Saves the state of the search, if not null.
+     */
+    Checkpoint checkpoint;
+
+    /**
+     * Keeps the failed boards between runs, if not null.
+     */
+    FailedStateStore failedStore;
+
+    /**
+     * The profile of this search, if profiling is enabled.
+     */
+    protected final SearchProfile profile = SearchProfile.ENABLED ? new SearchProfile()
+            : null;
+
+    /**
+     * Receives progress events, if not null.
+     */
+    private SearchListener listener;
+    private Heartbeat heartbeat;
+    private long iterationStartTime;
+    private long iterationStartNodes;
+    private SolverEvents.Iteration iterationEvent;
+
+    /**
+     * The number of moves pruned because of a freeze deadlock
+     */
+    long freezePrunes;
+
+    /**
+     * The number of moves pruned because the box would end up on a dead
+     * square. Only counted when profiling is enabled, since the test is
+     * otherwise not needed in the search loop.
+     */
+    long deadSquarePrunes;
+
+    private final HashSetGrowth visitedGrowth = new HashSetGrowth(
+            "IDS visited");
+    private final HashSetGrowth failedGrowth = new HashSetGrowth("IDS failed");
 
     protected Board board;
     protected Board startBoard;
@@ -32,11 +112,11 @@ public abstract class IDSCommon implements Solver
      * In bidirectional search, this map is shared between the pushing solver
      * and the pulling solver, in order to check for collisions.
      */
-    protected HashMap<Long, BoxPosDir> ourStatesMap;
-    protected HashMap<Long, BoxPosDir> otherStatesMap;
+    protected Map<Long, BoxPosDir> ourStatesMap;
+    protected Map<Long, BoxPosDir> otherStatesMap;
 
     @Override
-    public int getIterationsCount()
+    public long getIterationsCount()
     {
         return generatedNodes;
     }
@@ -44,13 +124,13 @@ public abstract class IDSCommon implements Solver
     /**
      * Set of visited boards, including the player position
      */
-    protected HashSet<Long> visitedBoards;
+    protected Set<Long> visitedBoards;
 
     /**
      * Boards that just lead to deadlocks or already visited boards. It
      * doesn't make sense to visit these in later iterations.
      */
-    protected HashSet<Long> failedBoards;
+    protected Set<Long> failedBoards;
 
     /**
      * Common constructor.
@@ -60,9 +140,8 @@ public abstract class IDSCommon implements Solver
      * @param ours A map containing all states we have been in
      * @param others A map containing all states the other solver has been in
      */
-    public IDSCommon(final Board startBoard, final HashSet<Long> failedBoards,
-            final HashMap<Long, BoxPosDir> ours,
-            final HashMap<Long, BoxPosDir> others)
+    public IDSCommon(final Board startBoard, final Set<Long> failedBoards,
+            final Map<Long, BoxPosDir> ours, final Map<Long, BoxPosDir> others)
     {
         this.startBoard = startBoard;
         this.failedBoards = failedBoards;
@@ -86,6 +165,435 @@ public abstract class IDSCommon implements Solver
      */
     public abstract SearchInfo dfs(int maxDepth);
 
+    /**
+     * Calculate the next depth to iterate to
+     * 
+     * @param lowerBound The lower bound for the board
+     * @return The new depth
+     */
+    public abstract int nextDepth(int lowerBound);
+
+    /**
+     * Counts a generated node. This is called once for every node in the
+     * DFS, and pauses the search if it is running under a ResumableSearch and
+     * has used up its node budget.
+     * 
+     * @throws SearchCancelledException If the cancellation token is set.
+     */
+    protected final void countNode()
+    {
+        if (++generatedNodes >= nextCheckpoint) {
+            checkpoint();
+        }
+    }
+
+    private void checkpoint()
+    {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new SearchCancelledException();
+        }
+
+        if (heartbeat != null) {
+            heartbeat.check(generatedNodes, visitedBoards.size());
+        }
+
+        if (generatedNodes >= pauseAt) {
+            resumable.pause();
+        }
+
+        scheduleCheckpoint();
+    }
+
+    /**
+     * Sets the node count at which the search will be paused next.
+     * 
+     * @param nodes The node count.
+     */
+    void setPauseAt(final long nodes)
+    {
+        pauseAt = nodes;
+        scheduleCheckpoint();
+    }
+
+    @Override
+    public void setCancellationToken(final CancellationToken token)
+    {
+        cancellation = token;
+        scheduleCheckpoint();
+    }
+
+    /**
+     * Sets the checkpoint that the search resumes from and saves its state
+     * to. Without one, the checkpoint directory system property is used.
+     * 
+     * @param checkpoint The checkpoint.
+     */
+    public void setCheckpoint(final Checkpoint checkpoint)
+    {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Sets the store that the failed boards are loaded from and merged into.
+     * Without one, the failed states directory system property is used.
+     * 
+     * @param store The store.
+     */
+    public void setFailedStateStore(final FailedStateStore store)
+    {
+        failedStore = store;
+    }
+
+    @Override
+    public void setSearchListener(final SearchListener listener)
+    {
+        this.listener = listener;
+        heartbeat = listener == null ? null : new Heartbeat(listener,
+                getClass().getSimpleName(), generatedNodes);
+        scheduleCheckpoint();
+    }
+
+    /**
+     * Prints the profile of the search, if profiling is enabled.
+     * 
+     * @param startNanos The System.nanoTime() when the search started.
+     */
+    protected final void printProfile(final long startNanos)
+    {
+        if (SearchProfile.ENABLED) {
+            profile.print(System.out, getClass().getSimpleName(), System
+                    .nanoTime()
+                    - startNanos);
+        }
+    }
+
+    /**
+     * Counts a move that was undone because of a freeze deadlock.
+     */
+    protected final void countFreezePrune()
+    {
+        freezePrunes++;
+        if (SearchProfile.ENABLED) {
+            profile.freezePrune();
+        }
+    }
+
+    /**
+     * Counts a move that was not made because the box would end up on a dead
+     * square.
+     */
+    protected final void countDeadSquarePrune()
+    {
+        deadSquarePrunes++;
+        if (SearchProfile.ENABLED) {
+            profile.deadSquarePrune();
+        }
+    }
+
+    /**
+     * Records a flight recorder event if the visited set has grown. Called
+     * after a board was added to it.
+     */
+    protected final void visitedAdded()
+    {
+        visitedGrowth.added(visitedBoards);
+    }
+
+    /**
+     * Records a flight recorder event if the failed set has grown. Called
+     * after a board was added to it.
+     */
+    protected final void failedAdded()
+    {
+        failedGrowth.added(failedBoards);
+    }
+
+    /**
+     * Tells the listener, if any, that an iteration is starting, and starts
+     * the flight recorder event of the iteration.
+     * 
+     * @param depth The depth limit of the iteration.
+     */
+    protected final void iterationStarted(final int depth)
+    {
+        iterationStartNodes = generatedNodes;
+        iterationEvent = new SolverEvents.Iteration();
+        iterationEvent.begin();
+        if (listener != null) {
+            iterationStartTime = System.nanoTime();
+            listener.iterationStarted(getClass().getSimpleName(), depth,
+                    generatedNodes);
+        }
+    }
+
+    /**
+     * Tells the listener, if any, that an iteration has ended, and commits
+     * the flight recorder event of the iteration.
+     * 
+     * @param depth The depth limit of the iteration.
+     */
+    protected final void iterationFinished(final int depth)
+    {
+        if (iterationEvent.shouldCommit()) {
+            iterationEvent.solver = getClass().getSimpleName();
+            iterationEvent.depth = depth;
+            iterationEvent.nodes = generatedNodes - iterationStartNodes;
+            iterationEvent.leafNodes = numLeafNodes;
+            iterationEvent.commit();
+        }
+        iterationEvent = null;
+
+        if (listener != null) {
+            listener.iterationFinished(getClass().getSimpleName(), depth,
+                    generatedNodes - iterationStartNodes, numLeafNodes,
+                    failedBoards.size(), System.nanoTime()
+                            - iterationStartTime);
+        }
+    }
+
+    /**
+     * Loads the checkpoint of a single sided search, if there is one, and
+     * restores the failed boards and the depth schedule from it.
+     * 
+     * @param startBoard The start board.
+     * @param depth The depth of the first iteration without a checkpoint.
+     * @return The depth of the first iteration.
+     */
+    protected final int resumeCheckpoint(final Board startBoard,
+            final int depth)
+    {
+        if (checkpoint == null) {
+            checkpoint = Checkpoint.fromProperties(this, startBoard);
+        }
+        if (checkpoint == null) {
+            return depth;
+        }
+
+        final Checkpoint.Side[] saved = checkpoint.load(startBoard, 1);
+        if (saved == null) {
+            return depth;
+        }
+        lastLeafCount = saved[0].lastLeafCount;
+        failedBoards = saved[0].failed;
+        System.out.println("Resuming at depth " + saved[0].depth + " with "
+                + failedBoards.size() + " failed boards");
+        return saved[0].depth;
+    }
+
+    /**
+     * Saves the state of a single sided search to the checkpoint.
+     * 
+     * @param startBoard The start board.
+     * @param depth The depth of the next iteration to run.
+     */
+    protected final void saveCheckpoint(final Board startBoard,
+            final int depth)
+    {
+        checkpoint.save(startBoard, new Checkpoint.Side(depth, lastLeafCount,
+                false, failedBoards, null));
+    }
+
+    /**
+     * Adds the failed boards of earlier runs on the level, if there is a
+     * store.
+     * 
+     * @param startBoard The start board.
+     */
+    protected final void loadFailedStates(final Board startBoard)
+    {
+        if (failedStore == null) {
+            failedStore = FailedStateStore.fromProperties(this, startBoard);
+        }
+        if (failedStore != null) {
+            failedBoards.addAll(failedStore.load());
+            System.out.println("Loaded failed boards: " + failedBoards.size());
+        }
+    }
+
+    /**
+     * Adds the failed boards of this run to the store, if there is one.
+     */
+    protected final void saveFailedStates()
+    {
+        if (failedStore != null) {
+            failedStore.merge(failedBoards);
+        }
+    }
+
+    /**
+     * Removes the checkpoint, if any, when the search has ended.
+     */
+    protected final void deleteCheckpoint()
+    {
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+    }
+
+    private void scheduleCheckpoint()
+    {
+        nextCheckpoint = pauseAt;
+        if (cancellation != null || heartbeat != null) {
+            nextCheckpoint = Math.min(nextCheckpoint, generatedNodes
+                    + CANCEL_CHECK_INTERVAL);
+        }
+    }
+
+    /**
+     * Calculates how much the depth should be increased for the next
+     * iteration.
+     * 
+     * @param lowerBound The lower bound for the board.
+     * @param boxCount The number of boxes.
+     * @param failedGoalTests The sum of the number of boxes not in place over
+     *            all leaf nodes.
+     * @param leafCount The number of leaf nodes in this iteration.
+     * @param lastLeafCount The number of leaf nodes in the last iteration.
+     * @return The depth step.
+     */
+    protected static int depthStep(final int lowerBound, final int boxCount,
+            final long failedGoalTests, final long leafCount,
+            final long lastLeafCount)
+    {
+        // If we have many boxes in the goals we can take a larger step
+        final long nonGoalPerNode = failedGoalTests / Math.max(leafCount, 1);
+        final long goalStep = lowerBound
+                / Math.max(boxCount - nonGoalPerNode + 1, 1);
+
+        // If we have pruned so many nodes we have less leaf nodes this
+        // time we take a larger step
+        final long depthChangeStep = 10 * (leafCount / lastLeafCount);
+
+        return (int) Math.min(DEPTH_LIMIT, Math.max(3, Math.max(goalStep,
+                depthChangeStep)));
+    }
+
+    /**
+     * Finds the path from a state that the other solver (the puller) has
+     * visited to the goal, by following the moves in otherStatesMap. Each
+     * pull is replayed as a push, with the walking paths between them.
+     * 
+     * @param meeting The state to start from. This board isn't modified.
+     * @return The moves from the given state to the goal, or null if the
+     *         moves in the map don't lead to the goal.
+     */
+    protected Deque<Direction> pathToGoal(final Board meeting)
+    {
+        final Board board = (Board) meeting.clone();
+        final Deque<Direction> path = new LinkedList<Direction>();
+
+        for (int steps = 0; board.getRemainingBoxes() != 0; steps++) {
+            final BoxPosDir pull = otherStatesMap.get(board.getZobristKey());
+            if (pull == null || pull.dir == null
+                    || steps > otherStatesMap.size()) {
+                // A broken chain or a cycle, probably a hash collision
+                return null;
+            }
+
+            if (!replayPush(board, pull.dir, pull.box, path)) {
+                return null;
+            }
+        }
+
+        return path;
+    }
+
+    /**
+     * Finds the path from the start to a state that the other solver (the
+     * pusher) has visited, by following the moves in otherStatesMap back to
+     * the start and then replaying them as pushes from the start.
+     * 
+     * @param start The start board of the pusher.
+     * @param meeting The state to find the path to. This board isn't
+     *            modified.
+     * @return The moves from the start to the given state, including the
+     *         walk to the player position of the given board, or null if the
+     *         moves in the map don't lead to the start.
+     */
+    protected Deque<Direction> pathFromStart(final Board start,
+            final Board meeting)
+    {
+        final Board board = (Board) meeting.clone();
+        final Deque<BoxPosDir> pushes = new LinkedList<BoxPosDir>();
+        final long startHash = start.getZobristKey();
+
+        // Undo the pushes until we get back to the start
+        while (board.getZobristKey() != startHash) {
+            final BoxPosDir push = otherStatesMap.get(board.getZobristKey());
+            if (push == null || pushes.size() > otherStatesMap.size()) {
+                // A broken chain or a cycle, probably a hash collision
+                return null;
+            }
+
+            final Position boxTo = board.getPosition(push.box,
+                    Board.moves[push.dir.ordinal()]);
+            if (!Board.is(board.cells[boxTo.row][boxTo.column], Board.BOX)
+                    || Board.is(board.cells[push.box.row][push.box.column],
+                            Board.REJECT_PULL)) {
+                return null;
+            }
+            board.moveBox(boxTo, push.box);
+            board.movePlayer(push.player);
+            pushes.addFirst(push);
+        }
+
+        // Replay them from the start
+        final Board replay = (Board) start.clone();
+        final Deque<Direction> path = new LinkedList<Direction>();
+        for (final BoxPosDir push : pushes) {
+            if (!replayPush(replay, push.dir, push.box, path)) {
+                return null;
+            }
+        }
+
+        if (replay.getZobristKey() != meeting.getZobristKey()) {
+            return null;
+        }
+
+        final Deque<Direction> walk = replay
+                .findPath(meeting.positions[meeting.getPlayerRow()][meeting
+                        .getPlayerCol()]);
+        if (walk == null) {
+            return null;
+        }
+        path.addAll(walk);
+        return path;
+    }
+
+    /**
+     * Walks to the given box and pushes it one step in the given direction,
+     * and adds the moves to the path.
+     * 
+     * @return True if the push was possible, otherwise false.
+     */
+    static boolean replayPush(final Board board, final Direction dir,
+            final Position box, final Deque<Direction> path)
+    {
+        final int[] move = Board.moves[dir.ordinal()];
+        final Position player = board.getPosition(box,
+                Board.moves[dir.reverse().ordinal()]);
+        final Position boxTo = board.getPosition(box, move);
+
+        if (!Board.is(board.cells[box.row][box.column], Board.BOX)
+                || Board.is(board.cells[boxTo.row][boxTo.column],
+                        Board.REJECT_PULL)
+                || Board.is(board.cells[player.row][player.column],
+                        Board.REJECT_PULL)) {
+            return false;
+        }
+
+        final Deque<Direction> walk = board.findPath(player);
+        if (walk == null) {
+            return false;
+        }
+
+        path.addAll(walk);
+        path.add(dir);
+        board.moveBox(box, boxTo);
+        board.movePlayer(box);
+        return true;
+    }
+
     protected static int lowerBound(final Board board)
     {
         final ArrayList<Position> boxes = new ArrayList<Position>();
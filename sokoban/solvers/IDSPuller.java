@@ -1,15 +1,20 @@
 package sokoban.solvers;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.LinkedList;
 
 import sokoban.Board;
 import sokoban.Position;
 import sokoban.SearchInfo;
 import sokoban.SearchStatus;
 import sokoban.Board.Direction;
+import sokoban.solvers.SearchProfile.Phase;
 
 /**
  * A solver that pulls boxes around (it finds a path from the goal to the
@@ -19,18 +24,23 @@ public class IDSPuller extends IDSCommon implements Solver
 {
     private int depth, maxDepth;
 
-    private int failedGoalTests;
-    /**
-     * The number of leaf nodes
-     */
-    public int numLeafNodes;
-    private int lastLeafCount;
+    private long failedGoalTests;
 
     // Extra information for the puller
     private int boxesNotInStart, initialBoxesNotInStart;
     private boolean[][] boxStart;
     private Position playerStart;
 
+    /**
+     * One start square for each player region in the goal state.
+     */
+    private Position[] startSquares;
+
+    /**
+     * The start board before it was reversed.
+     */
+    private Board forwardStartBoard;
+
     /**
      * Create a new pusher
      * 
@@ -39,15 +49,16 @@ public class IDSPuller extends IDSCommon implements Solver
      * @param pusherStatesMap This solvers visited states
      * @param pullerStatesMap The other solvers visited states
      */
-    public IDSPuller(final Board startBoard, final HashSet<Long> failedBoards,
-            final HashMap<Long, BoxPosDir> pusherStatesMap,
-            final HashMap<Long, BoxPosDir> pullerStatesMap)
+    public IDSPuller(final Board startBoard, final Set<Long> failedBoards,
+            final Map<Long, BoxPosDir> pusherStatesMap,
+            final Map<Long, BoxPosDir> pullerStatesMap)
     {
         super(startBoard, failedBoards, pusherStatesMap, pullerStatesMap);
 
         numLeafNodes = 0;
         lastLeafCount = -1;
 
+        forwardStartBoard = startBoard;
         this.startBoard = (Board) startBoard.clone();
         reverseBoard(this.startBoard);
     }
@@ -74,18 +85,37 @@ public class IDSPuller extends IDSCommon implements Solver
         this.maxDepth = maxDepth;
         failedGoalTests = 0;
         numLeafNodes = 0;
-        forceDirection = false;
 
-        board = (Board) startBoard.clone();
         visitedBoards = new HashSet<Long>(failedBoards);
-        visitedBoards.add(board.getZobristKey());
-        boxesNotInStart = initialBoxesNotInStart;
 
-        return dfs();
-    }
+        // Search from each of the player regions in the goal state
+        boolean inconclusive = false;
+        for (final Position start : startSquares) {
+            board = (Board) startBoard.clone();
+            board.movePlayer(start);
+            board.forceReachabilityUpdate();
+            boxesNotInStart = initialBoxesNotInStart;
+
+            final long hash = board.getZobristKey();
+            if (!visitedBoards.add(hash)) {
+                continue;
+            }
+            ourStatesMap.put(hash, new BoxPosDir(null, null, start));
 
-    private boolean forceDirection = false;
-    private Direction forcedDirection;
+            final SearchInfo result = dfs();
+            switch (result.status) {
+                case Solution:
+                    return result;
+                case Inconclusive:
+                    inconclusive = true;
+                    continue;
+                case Failed:
+                    continue;
+            }
+        }
+
+        return inconclusive ? SearchInfo.Inconclusive : SearchInfo.Failed;
+    }
 
     /**
      * Recursive Depth-First algorithm
@@ -94,7 +124,9 @@ public class IDSPuller extends IDSCommon implements Solver
      */
     private SearchInfo dfs()
     {
-        generatedNodes++;
+        countNode();
+        final boolean sample = SearchProfile.ENABLED && profile.node();
+        long start = 0;
 
         if (boxesNotInStart == 0) {
             // Found a solution, try to go back to the start
@@ -108,6 +140,18 @@ public class IDSPuller extends IDSCommon implements Solver
             }
         }
 
+        if (otherStatesMap.containsKey(board.getZobristKey())) {
+            // We reached a state from the other end (IDSPusher), so we can
+            // follow its path back to the start.
+            final Deque<Direction> path = pathFromStart(forwardStartBoard,
+                    board);
+            if (path != null) {
+                final SearchInfo result = SearchInfo.emptySolution();
+                result.solution.addAll(path);
+                return result;
+            }
+        }
+
         if (depth >= maxDepth) {
             failedGoalTests += boxesNotInStart;
             numLeafNodes++;
@@ -124,12 +168,19 @@ public class IDSPuller extends IDSCommon implements Solver
         depth++;
 
         final byte[][] cells = board.cells;
-        for (final Position boxTo : findReachableBoxSquares()) {
-            for (final Direction dir : Board.Direction.values()) {
-                if (forceDirection && dir != forcedDirection) {
-                    continue;
-                }
+        if (sample) {
+            start = System.nanoTime();
+        }
+        final Collection<Position> reachable = board.findReachableBoxSquares();
+        if (SearchProfile.ENABLED) {
+            if (sample) {
+                profile.time(Phase.REACHABILITY, start);
+            }
+            profile.expansion();
+        }
 
+        for (final Position boxTo : reachable) {
+            for (final Direction dir : Board.Direction.values()) {
                 final Position boxFrom = board.getPosition(boxTo,
                         Board.moves[dir.ordinal()]);
                 final Position playerTo = board.getPosition(boxTo,
@@ -143,8 +194,14 @@ public class IDSPuller extends IDSCommon implements Solver
                     // The move is possible
 
                     // Move the player and pull the box
+                    if (sample) {
+                        start = System.nanoTime();
+                    }
                     board.moveBox(boxFrom, boxTo);
                     board.movePlayer(playerTo);
+                    if (sample) {
+                        profile.time(Phase.MOVE, start);
+                    }
 
                     if (boxStart[boxFrom.row][boxFrom.column]) {
                         boxesNotInStart++;
@@ -155,16 +212,39 @@ public class IDSPuller extends IDSCommon implements Solver
 
                     // Process successor states
                     SearchInfo result = SearchInfo.Failed;
-                    if (visitedBoards.add(board.getZobristKey())) {
+                    if (sample) {
+                        start = System.nanoTime();
+                    }
+                    final boolean added = visitedBoards.add(board
+                            .getZobristKey());
+                    if (added) {
                         // This state hasn't been visited before
                         ourStatesMap.put(board.getZobristKey(), new BoxPosDir(
                                 dir, boxTo, playerTo));
+                        visitedAdded();
+                    }
+                    if (SearchProfile.ENABLED) {
+                        if (sample) {
+                            profile.time(Phase.HASHING, start);
+                        }
+                        profile.transposition(!added);
+                        if (added) {
+                            profile.successor();
+                        }
+                    }
+                    if (added) {
                         result = dfs();
                     }
 
                     // Restore changes
+                    if (sample) {
+                        start = System.nanoTime();
+                    }
                     board.moveBox(boxTo, boxFrom);
                     board.movePlayer(source);
+                    if (sample) {
+                        profile.time(Phase.MOVE, start);
+                    }
 
                     if (boxStart[boxFrom.row][boxFrom.column]) {
                         boxesNotInStart--;
@@ -197,6 +277,13 @@ public class IDSPuller extends IDSCommon implements Solver
                             continue;
                     }
                 }
+                else if (SearchProfile.ENABLED
+                        && Board.is(cells[boxFrom.row][boxFrom.column],
+                                Board.BOX)
+                        && Board.is(cells[boxTo.row][boxTo.column],
+                                Board.BOX_TRAP)) {
+                    countDeadSquarePrune();
+                }
             }
         }
 
@@ -208,115 +295,88 @@ public class IDSPuller extends IDSCommon implements Solver
         }
         else {
             // All successors failed, so this node is failed
-            failedBoards.add(hash);
+            if (failedBoards.add(hash)) {
+                failedAdded();
+            }
             return SearchInfo.Failed;
         }
     }
 
-    private Collection<Position> findReachableBoxSquares()
+    public String solve(final Board startBoard)
     {
-        final long hash = board.getZobristKey();
-        if (otherStatesMap.containsKey(hash)) {
-            final Collection<Position> boxes = new HashSet<Position>(1);
-            final BoxPosDir nextState = otherStatesMap.get(hash);
-
-            // Add next reachable square and force the correct direction.
-            boxes.add(nextState.box);
-            forceDirection = true;
-            forcedDirection = nextState.dir;
-
-            // Since we have found a collision we know know the way to the goal.
-            // Make sure we do not quit because of reaching the max depth.
-            maxDepth++;
-
-            return boxes;
+        final long solveStart = System.nanoTime();
+        SolverEvents.searchStarted(this);
+        try {
+            return iterate(startBoard);
         }
-        else if (depth == 1) {
-            forceDirection = false;
-            final Collection<Position> boxes = new HashSet<Position>(
-                    board.boxCount);
-            for (int row = 1; row < board.height - 1; row++) {
-                for (int col = 1; col < board.width - 1; col++) {
-                    if (!Board.is(board.cells[row][col], Board.BOX)) {
-                        continue;
-                    }
-
-                    for (final Direction dir : Direction.values()) {
-                        final int spaceRow = row
-                                + Board.moves[dir.ordinal()][0];
-                        final int spaceCol = col
-                                + Board.moves[dir.ordinal()][1];
-                        if (spaceRow > 0 && spaceRow < board.height - 1
-                                && spaceCol > 0 && spaceCol < board.width - 1) {
-                            boxes.add(board.positions[spaceRow][spaceCol]);
-                        }
-                    }
-                }
-            }
-            return boxes;
-        }
-        else {
-            forceDirection = false;
-            return board.findReachableBoxSquares();
+        finally {
+            SolverEvents.searchFinished(this);
+            printProfile(solveStart);
         }
     }
 
-    public String solve(final Board startBoard)
+    /**
+     * Runs the iterations of the IDS until a solution is found, or the search
+     * fails or reaches the depth limit.
+     */
+    private String iterate(final Board startBoard)
     {
         failedBoards = new HashSet<Long>();
         final int lowerBound = lowerBound(startBoard);
         System.out.println("lowerBound(): " + lowerBound);
         System.out.println("IDS depth limit (progress): ");
 
-        reverseBoard(startBoard);
+        this.startBoard = (Board) startBoard.clone();
+        reverseBoard(this.startBoard);
 
         lastLeafCount = -1;
-        for (maxDepth = lowerBound; maxDepth < DEPTH_LIMIT; nextDepth(lowerBound)) {
-            System.out.print(maxDepth + ".");
-
-            visitedBoards = new HashSet<Long>(failedBoards);
-            depth = 0;
-            board = (Board) startBoard.clone();
-            boxesNotInStart = initialBoxesNotInStart;
-            visitedBoards.add(board.getZobristKey());
-            failedGoalTests = 0;
+        maxDepth = resumeCheckpoint(startBoard, lowerBound);
+        loadFailedStates(startBoard);
+        try {
+            for (; maxDepth < DEPTH_LIMIT; nextDepth(lowerBound)) {
+                System.out.print(maxDepth + ".");
+                if (checkpoint != null && checkpoint.isDue()) {
+                    saveCheckpoint(startBoard, maxDepth);
+                }
 
-            final SearchInfo result = dfs();
-            if (result.solution != null) {
-                System.out.println();
-                return Board.solutionToString(result.solution);
+                iterationStarted(maxDepth);
+                final SearchInfo result = dfs(maxDepth);
+                iterationFinished(maxDepth);
+                if (result.solution != null) {
+                    System.out.println();
+                    deleteCheckpoint();
+                    return Board.solutionToString(result.solution);
+                }
+                else if (result.status == SearchStatus.Failed) {
+                    System.out.println("no solution!");
+                    deleteCheckpoint();
+                    return null;
+                }
             }
-            else if (result.status == SearchStatus.Failed) {
-                System.out.println("no solution!");
-                return null;
+        }
+        catch (final SearchCancelledException e) {
+            // The boards that failed in the unfinished iteration have
+            // failed, so they are saved with it
+            if (checkpoint != null) {
+                saveCheckpoint(startBoard, maxDepth);
             }
+            throw e;
+        }
+        finally {
+            saveFailedStates();
         }
 
         System.out.println("maximum depth reached!");
+        deleteCheckpoint();
         return null;
     }
 
-    /**
-     * Calculate the next depth to iterate to
-     * 
-     * @param lowerBound The lower bound for the board
-     * @return The new depth
-     */
+    @Override
     public int nextDepth(final int lowerBound)
     {
-        // System.out.println("fGT "+failedGoalTests+"   nLN "+numLeafNodes+" ("+lastLeafCount+")  boxC "+board.boxCount+"  lB "+lowerBound);
-        // If we have many boxes in the goals we can take a larger step
-        final int nonGoalPerNode = failedGoalTests / Math.max(numLeafNodes, 1);
-        // System.out.println("nonGoalPerNode: "+nonGoalPerNode);
-        final int goalStep = lowerBound
-                / Math.max(board.boxCount - nonGoalPerNode + 1, 1);
-
-        // If we have pruned so many nodes we have less leaf nodes this
-        // time we take a larger step
-        final int depthChangeStep = 10 * (numLeafNodes / lastLeafCount);
-
+        final int step = depthStep(lowerBound, board.boxCount,
+                failedGoalTests, numLeafNodes, lastLeafCount);
         lastLeafCount = numLeafNodes;
-        final int step = Math.max(3, Math.max(goalStep, depthChangeStep));
 
         maxDepth += step;
         return maxDepth;
@@ -351,6 +411,67 @@ public class IDSPuller extends IDSCommon implements Solver
         }
 
         board.forceReachabilityUpdate();
+        startSquares = findStartSquares(board);
+    }
+
+    /**
+     * Finds the regions that the player can be in when all boxes are in the
+     * goals, since the final player position isn't known. One start square
+     * is returned for each region: the topmost, leftmost square in it, which
+     * is the square that getTopLeftReachable() would return. Regions without
+     * any box next to them are skipped, since no box can be pulled from
+     * them, and so are regions outside the walls.
+     * 
+     * @param board The board with all boxes in the goals.
+     * @return The start squares of the regions.
+     */
+    private static Position[] findStartSquares(final Board board)
+    {
+        final ArrayList<Position> starts = new ArrayList<Position>();
+        final boolean[][] visited = new boolean[board.height][board.width];
+        final Deque<Position> stack = new LinkedList<Position>();
+
+        for (int row = 0; row < board.height; row++) {
+            for (int col = 0; col < board.width; col++) {
+                if (visited[row][col]
+                        || Board.is(board.cells[row][col], Board.REJECT_PULL)) {
+                    continue;
+                }
+
+                // Flood fill the region. The first square found in it is the
+                // topmost, leftmost one.
+                boolean outside = false;
+                boolean boxNearby = false;
+                visited[row][col] = true;
+                stack.push(board.positions[row][col]);
+                while (!stack.isEmpty()) {
+                    final Position pos = stack.pop();
+                    for (final int[] move : Board.moves) {
+                        final int r = pos.row + move[0];
+                        final int c = pos.column + move[1];
+                        if (!board.contains(r, c)) {
+                            outside = true;
+                            continue;
+                        }
+
+                        final byte cell = board.cells[r][c];
+                        if (Board.is(cell, Board.BOX)) {
+                            boxNearby = true;
+                        }
+                        else if (!Board.is(cell, Board.WALL) && !visited[r][c]) {
+                            visited[r][c] = true;
+                            stack.push(board.positions[r][c]);
+                        }
+                    }
+                }
+
+                if (boxNearby && !outside) {
+                    starts.add(board.positions[row][col]);
+                }
+            }
+        }
+
+        return starts.toArray(new Position[starts.size()]);
     }
 
 }
@@ -1,14 +1,21 @@
 package sokoban.solvers;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import sokoban.Board;
 import sokoban.Position;
 import sokoban.SearchInfo;
 import sokoban.SearchStatus;
 import sokoban.Board.Direction;
+import sokoban.solvers.SearchProfile.Phase;
 
 /**
  * A solver that pushes boxes around with iterative deepening and
@@ -19,13 +26,20 @@ public class IDSPusher extends IDSCommon implements Solver
 
     private int remainingDepth;
 
-    private int failedGoalTests;
+    private long failedGoalTests;
+    private int maxDepth;
+
     /**
-     * The number of leaf nodes
+     * When set, subtrees below splitDepth are added to this list instead of
+     * being searched. See split().
      */
-    public int numLeafNodes;
-    private int lastLeafCount;
-    private int maxDepth;
+    private List<ParallelIDSPusher.Subtree> subtrees;
+    private int splitDepth;
+
+    /**
+     * The pushes from the start to the current node, when splitting.
+     */
+    private LinkedList<BoxPosDir> pushPath;
 
     /**
      * Create a new pusher
@@ -35,9 +49,9 @@ public class IDSPusher extends IDSCommon implements Solver
      * @param pusherStatesMap This solvers visited states
      * @param pullerStatesMap The other solvers visited states
      */
-    public IDSPusher(final Board startBoard, final HashSet<Long> failedBoards,
-            final HashMap<Long, BoxPosDir> pusherStatesMap,
-            final HashMap<Long, BoxPosDir> pullerStatesMap)
+    public IDSPusher(final Board startBoard, final Set<Long> failedBoards,
+            final Map<Long, BoxPosDir> pusherStatesMap,
+            final Map<Long, BoxPosDir> pullerStatesMap)
     {
         super(startBoard, failedBoards, pusherStatesMap, pullerStatesMap);
 
@@ -75,6 +89,75 @@ public class IDSPusher extends IDSCommon implements Solver
         return dfs();
     }
 
+    /**
+     * Runs the first plies of an iteration, but doesn't search the subtrees
+     * below the split depth. They are added to the given list instead, so
+     * that they can be searched in parallel with searchSubtree().
+     * 
+     * @param maxDepth The maximum depth allowed for this iteration.
+     * @param splitDepth The depth of the subtrees.
+     * @param visited The set of visited boards for this iteration.
+     * @param subtrees The list to add the subtrees to.
+     * @return A SearchInfo result. The result is inconclusive if any subtree
+     *         was added to the list.
+     */
+    SearchInfo split(final int maxDepth, final int splitDepth,
+            final Set<Long> visited,
+            final List<ParallelIDSPusher.Subtree> subtrees)
+    {
+        remainingDepth = maxDepth;
+        failedGoalTests = 0;
+        numLeafNodes = 0;
+        this.maxDepth = maxDepth;
+        this.splitDepth = splitDepth;
+        this.subtrees = subtrees;
+        pushPath = new LinkedList<BoxPosDir>();
+
+        board = (Board) startBoard.clone();
+        visitedBoards = visited;
+        visitedBoards.add(board.getZobristKey());
+
+        try {
+            return dfs();
+        }
+        finally {
+            this.subtrees = null;
+        }
+    }
+
+    /**
+     * Searches a subtree that was left by split().
+     * 
+     * @param subtree The subtree. Its board is used by the search.
+     * @param visited The set of visited boards for this iteration.
+     * @return A SearchInfo result, with the solution from the root of the
+     *         subtree.
+     */
+    SearchInfo searchSubtree(final ParallelIDSPusher.Subtree subtree,
+            final Set<Long> visited)
+    {
+        remainingDepth = subtree.remainingDepth;
+        failedGoalTests = 0;
+        numLeafNodes = 0;
+        maxDepth = subtree.remainingDepth;
+
+        board = subtree.board;
+        visitedBoards = visited;
+
+        return dfs();
+    }
+
+    /**
+     * Returns the sum of the number of boxes that were not in a goal, over all
+     * leaf nodes in the last iteration.
+     * 
+     * @return The number of boxes.
+     */
+    long getFailedGoalTests()
+    {
+        return failedGoalTests;
+    }
+
     /**
      * Recursive Depth-First algorithm
      * 
@@ -82,7 +165,9 @@ public class IDSPusher extends IDSCommon implements Solver
      */
     private SearchInfo dfs()
     {
-        generatedNodes++;
+        countNode();
+        final boolean sample = SearchProfile.ENABLED && profile.node();
+        long start = 0;
 
         if (board.getRemainingBoxes() == 0) {
             // Found a solution
@@ -91,7 +176,16 @@ public class IDSPusher extends IDSCommon implements Solver
 
         final long hash = board.getZobristKey();
 
-        final BoxPosDir collision = otherStatesMap.get(hash);
+        if (otherStatesMap.containsKey(hash)) {
+            // We reached a state from the other end (IDSPuller), so we can
+            // follow its path the rest of the way to the goal.
+            final Deque<Direction> path = pathToGoal(board);
+            if (path != null) {
+                final SearchInfo result = SearchInfo.emptySolution();
+                result.solution.addAll(path);
+                return result;
+            }
+        }
 
         if (remainingDepth <= 0) {
             failedGoalTests += board.getRemainingBoxes();
@@ -99,6 +193,13 @@ public class IDSPusher extends IDSCommon implements Solver
             return SearchInfo.Inconclusive;
         }
 
+        if (subtrees != null && maxDepth - remainingDepth >= splitDepth) {
+            // Leave this subtree to be searched in parallel
+            subtrees.add(new ParallelIDSPusher.Subtree((Board) board.clone(),
+                    remainingDepth, new ArrayList<BoxPosDir>(pushPath)));
+            return SearchInfo.Inconclusive;
+        }
+
         // True if at least one successor tree was inconclusive.
         boolean inconclusive = false;
 
@@ -107,22 +208,19 @@ public class IDSPusher extends IDSCommon implements Solver
         remainingDepth--;
 
         final byte[][] cells = board.cells;
-        for (final Position player : board.findReachableBoxSquares()) {
-            for (final Direction dir : Board.Direction.values()) {
-                if (collision != null) {
-                    // We reached a state from the other end (IDSPuller)
-                    if (dir != collision.dir) {
-                        // This is successor state isn't on the path from
-                        // the other end.
-                        continue;
-                    }
-
-                    // Since we have found a collision we now know the way to
-                    // the goal, so make sure that we do not quit because of
-                    // reaching the max depth.
-                    remainingDepth++;
-                }
+        if (sample) {
+            start = System.nanoTime();
+        }
+        final Collection<Position> reachable = board.findReachableBoxSquares();
+        if (SearchProfile.ENABLED) {
+            if (sample) {
+                profile.time(Phase.REACHABILITY, start);
+            }
+            profile.expansion();
+        }
 
+        for (final Position player : reachable) {
+            for (final Direction dir : Board.Direction.values()) {
                 final Position boxFrom = board.getPosition(player,
                         Board.moves[dir.ordinal()]);
                 final Position boxTo = board.getPosition(boxFrom,
@@ -155,25 +253,71 @@ public class IDSPusher extends IDSCommon implements Solver
                             Board.moves[dir.reverse().ordinal()]);
 
                     // Move the player and push the box
+                    if (sample) {
+                        start = System.nanoTime();
+                    }
                     board.moveBox(boxFrom, boxTo);
                     board.movePlayer(playerTo);
+                    if (sample) {
+                        profile.time(Phase.MOVE, start);
+                        start = System.nanoTime();
+                    }
 
                     SearchInfo result = SearchInfo.Failed;
                     // Check if we got a freeze deadlock
-                    if (!freezeDeadlock(boxTo, DEADLOCK_BOTH,
-                            new HashSet<Position>())) {
-                        if (visitedBoards.add(board.getZobristKey())) {
+                    final boolean deadlock = freezeDeadlock(boxTo,
+                            DEADLOCK_BOTH, new HashSet<Position>());
+                    if (sample) {
+                        profile.time(Phase.DEADLOCK, start);
+                    }
+                    if (deadlock) {
+                        countFreezePrune();
+                    }
 
-                            ourStatesMap.put(board.getZobristKey(),
-                                    new BoxPosDir(dir, boxFrom, source));
+                    if (!deadlock) {
+                        if (sample) {
+                            start = System.nanoTime();
+                        }
+                        final boolean added = visitedBoards.add(board
+                                .getZobristKey());
+                        BoxPosDir push = null;
+                        if (added) {
+                            push = new BoxPosDir(dir, boxFrom, source);
+                            ourStatesMap.put(board.getZobristKey(), push);
+                            visitedAdded();
+                        }
+                        if (SearchProfile.ENABLED) {
+                            if (sample) {
+                                profile.time(Phase.HASHING, start);
+                            }
+                            profile.transposition(!added);
+                        }
 
-                            result = dfs();
+                        if (added) {
+                            if (SearchProfile.ENABLED) {
+                                profile.successor();
+                            }
+
+                            if (subtrees != null) {
+                                pushPath.addLast(push);
+                                result = dfs();
+                                pushPath.removeLast();
+                            }
+                            else {
+                                result = dfs();
+                            }
                         }
                     }
 
                     // Restore changes
+                    if (sample) {
+                        start = System.nanoTime();
+                    }
                     board.moveBox(boxTo, boxFrom);
                     board.movePlayer(source);
+                    if (sample) {
+                        profile.time(Phase.MOVE, start);
+                    }
 
                     // Evaluate result
                     switch (result.status) {
@@ -211,6 +355,13 @@ public class IDSPusher extends IDSCommon implements Solver
                             continue;
                     }
                 }
+                else if (SearchProfile.ENABLED
+                        && Board.is(cells[boxFrom.row][boxFrom.column],
+                                Board.BOX)
+                        && Board.is(cells[boxTo.row][boxTo.column],
+                                Board.BOX_TRAP)) {
+                    countDeadSquarePrune();
+                }
             }
         }
 
@@ -222,7 +373,9 @@ public class IDSPusher extends IDSCommon implements Solver
         }
         else {
             // All successors failed, so this node is failed
-            failedBoards.add(hash);
+            if (failedBoards.add(hash)) {
+                failedAdded();
+            }
             return SearchInfo.Failed;
         }
     }
@@ -297,6 +450,23 @@ public class IDSPusher extends IDSCommon implements Solver
     }
 
     public String solve(final Board startBoard)
+    {
+        final long solveStart = System.nanoTime();
+        SolverEvents.searchStarted(this);
+        try {
+            return iterate(startBoard);
+        }
+        finally {
+            SolverEvents.searchFinished(this);
+            printProfile(solveStart);
+        }
+    }
+
+    /**
+     * Runs the iterations of the IDS until a solution is found, or the search
+     * fails or reaches the depth limit.
+     */
+    private String iterate(final Board startBoard)
     {
         failedBoards = new HashSet<Long>();
         final long startTime = System.currentTimeMillis();
@@ -306,54 +476,65 @@ public class IDSPusher extends IDSCommon implements Solver
         System.out.println("IDS depth limit (progress): ");
 
         lastLeafCount = -1;
-        for (maxDepth = lowerBound; maxDepth < DEPTH_LIMIT; nextDepth(lowerBound)) {
-            System.out.print(maxDepth + ".");
-
-            visitedBoards = new HashSet<Long>(failedBoards);
-            remainingDepth = maxDepth;
-            board = (Board) startBoard.clone();
-            visitedBoards.add(board.getZobristKey());
-            failedGoalTests = 0;
-
-            final SearchInfo result = dfs();
-            if (result.solution != null) {
-                System.out.println();
-                return Board.solutionToString(result.solution);
+        maxDepth = resumeCheckpoint(startBoard, lowerBound);
+        loadFailedStates(startBoard);
+        try {
+            for (; maxDepth < DEPTH_LIMIT; nextDepth(lowerBound)) {
+                System.out.print(maxDepth + ".");
+                if (checkpoint != null && checkpoint.isDue()) {
+                    saveCheckpoint(startBoard, maxDepth);
+                }
+
+                visitedBoards = new HashSet<Long>(failedBoards);
+                remainingDepth = maxDepth;
+                board = (Board) startBoard.clone();
+                visitedBoards.add(board.getZobristKey());
+                failedGoalTests = 0;
+
+                iterationStarted(maxDepth);
+                final SearchInfo result = dfs();
+                iterationFinished(maxDepth);
+                if (result.solution != null) {
+                    System.out.println();
+                    deleteCheckpoint();
+                    return Board.solutionToString(result.solution);
+                }
+                else if (result.status == SearchStatus.Failed) {
+                    System.out.println("no solution!");
+                    deleteCheckpoint();
+                    return null;
+                }
             }
-            else if (result.status == SearchStatus.Failed) {
-                System.out.println("no solution!");
-                return null;
+        }
+        catch (final SearchCancelledException e) {
+            // The boards that failed in the unfinished iteration have
+            // failed, so they are saved with it
+            if (checkpoint != null) {
+                saveCheckpoint(startBoard, maxDepth);
             }
+            throw e;
+        }
+        finally {
+            saveFailedStates();
         }
 
         System.out.println("maximum depth reached!");
+        deleteCheckpoint();
         return null;
     }
 
-    /**
-     * Calculate the next depth to iterate to
-     * 
-     * @param lowerBound The lower bound for the board
-     * @return The new depth
-     */
+    @Override
     public int nextDepth(final int lowerBound)
     {
-        // If we have many boxes in the goals we can take a larger step
-        final int nonGoalPerNode = failedGoalTests / Math.max(numLeafNodes, 1);
-        final int goalStep = lowerBound / (board.boxCount - nonGoalPerNode + 1);
-
-        // If we have pruned so many nodes we have less leaf nodes this
-        // time we take a larger step
-        final int depthChangeStep = 10 * (numLeafNodes / lastLeafCount);
-
+        final int step = depthStep(lowerBound, board.boxCount,
+                failedGoalTests, numLeafNodes, lastLeafCount);
         lastLeafCount = numLeafNodes;
-        final int step = Math.max(3, Math.max(goalStep, depthChangeStep));
 
         maxDepth += step;
         return maxDepth;
     }
 
-    private final static byte DEADLOCK_BOTH = 0;
+    final static byte DEADLOCK_BOTH = 0;
     private final static byte DEADLOCK_HORIZONTAL = 1;
     private final static byte DEADLOCK_VERTICAL = 2;
 
@@ -367,7 +548,7 @@ public class IDSPusher extends IDSCommon implements Solver
      * @param to The new position
      * @return True if there is a freeze deadlock
      */
-    private boolean freezeDeadlock(final Position box, final byte type,
+    boolean freezeDeadlock(final Position box, final byte type,
             final HashSet<Position> visited)
 
     {
@@ -0,0 +1,94 @@
+package sokoban.solvers;
+
+/**
+ * An open addressing hash table from state hashes to int values, such as node
+ * numbers or g values, without boxing. It grows when it gets half full.
+ */
+final class LongIntTable
+{
+    private final String name;
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    /**
+     * Creates a table.
+     *
+     * @param name The name of the table in the TableResize events.
+     * @param capacity The initial number of slots, a power of two.
+     */
+    LongIntTable(final String name, final int capacity)
+    {
+        this.name = name;
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * Returns the value of the key, or -1.
+     */
+    int get(final long key)
+    {
+        final int mask = keys.length - 1;
+        for (int i = ConcurrentLongSet.index(key, mask); used[i]; i = (i + 1)
+                & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void put(final long key, final int value)
+    {
+        if (2 * (size + 1) > keys.length) {
+            grow();
+        }
+
+        final int mask = keys.length - 1;
+        int i = ConcurrentLongSet.index(key, mask);
+        while (used[i] && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (!used[i]) {
+            used[i] = true;
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    private void grow()
+    {
+        final SolverEvents.TableResize event = new SolverEvents.TableResize();
+        event.begin();
+
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        final boolean[] oldUsed = used;
+        keys = new long[2 * oldKeys.length];
+        values = new int[2 * oldKeys.length];
+        used = new boolean[2 * oldKeys.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        if (event.shouldCommit()) {
+            event.table = name;
+            event.oldCapacity = oldKeys.length;
+            event.newCapacity = keys.length;
+            event.entries = size;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package sokoban.solvers;
+
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.Random;
+
+import sokoban.Board;
+import sokoban.Board.Direction;
+
+/**
+ * A compact, read-only description of a level, used by the best-first
+ * solvers. Squares are numbered row * width + column, and a state is stored
+ * as the sorted array of box squares and the topmost, leftmost square that
+ * the player can reach (like Board.getTopLeftReachable()), instead of a
+ * cloned Board.
+ *
+ * The level is shared between threads. Each thread that expands states needs
+ * its own Expander, which holds the scratch arrays.
+ */
+public final class PackedLevel
+{
+    /**
+     * The push distance of a square from which no box can reach a goal.
+     */
+    public static final int DEAD = Integer.MAX_VALUE;
+
+    /**
+     * The width of the board
+     */
+    public final int width;
+
+    /**
+     * The number of squares on the board
+     */
+    public final int squares;
+
+    /**
+     * The number of boxes
+     */
+    public final int boxCount;
+
+    /**
+     * The box squares of the start state, sorted
+     */
+    public final int[] startBoxes;
+
+    /**
+     * The square of the player in the start state (not normalized)
+     */
+    public final int startPlayer;
+
+    /**
+     * The square offsets of the moves, in Direction order
+     */
+    final int[] offsets;
+
+    private final boolean[] wall;
+    private final boolean[] goal;
+
+    /**
+     * The minimum number of pushes needed to get a box from each square to
+     * the nearest goal, ignoring other boxes, or DEAD.
+     */
+    private final int[] pushDistance;
+
+    private final long[] boxKeys;
+    private final long[] playerKeys;
+
+    /**
+     * Creates a packed level from the given board.
+     *
+     * @param board The board.
+     */
+    public PackedLevel(final Board board)
+    {
+        width = board.width;
+        squares = board.width * board.height;
+        offsets = new int[] { -width, width, -1, 1 };
+
+        wall = new boolean[squares];
+        goal = new boolean[squares];
+        int boxes = 0;
+        for (int row = 0; row < board.height; row++) {
+            for (int col = 0; col < board.width; col++) {
+                final int square = row * width + col;
+                final byte cell = board.cells[row][col];
+
+                // The outermost squares are treated as walls, so that moves
+                // never need bounds checks.
+                wall[square] = Board.is(cell, Board.WALL) || row == 0
+                        || col == 0 || row == board.height - 1
+                        || col == board.width - 1;
+                goal[square] = Board.is(cell, Board.GOAL);
+                if (Board.is(cell, Board.BOX)) {
+                    boxes++;
+                }
+            }
+        }
+
+        boxCount = boxes;
+        startBoxes = new int[boxes];
+        int i = 0;
+        for (int square = 0; square < squares; square++) {
+            if (Board.is(board.cells[square / width][square % width],
+                    Board.BOX)) {
+                startBoxes[i++] = square;
+            }
+        }
+        startPlayer = board.getPlayerRow() * width + board.getPlayerCol();
+
+        pushDistance = computePushDistances();
+
+        // A fixed seed keeps the hashes the same between runs
+        final Random random = new Random(squares);
+        boxKeys = new long[squares];
+        playerKeys = new long[squares];
+        for (int square = 0; square < squares; square++) {
+            boxKeys[square] = random.nextLong();
+            playerKeys[square] = random.nextLong();
+        }
+    }
+
+    /**
+     * Computes the push distances with a breadth-first search from each
+     * goal, which pulls a box away from the goal.
+     */
+    private int[] computePushDistances()
+    {
+        final int[] distance = new int[squares];
+        Arrays.fill(distance, DEAD);
+
+        final int[] queue = new int[squares];
+        final int[] goalDistance = new int[squares];
+        for (int g = 0; g < squares; g++) {
+            if (!goal[g] || wall[g]) {
+                continue;
+            }
+
+            Arrays.fill(goalDistance, DEAD);
+            goalDistance[g] = 0;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = g;
+            while (head < tail) {
+                final int box = queue[head++];
+                for (final int offset : offsets) {
+                    // Pull the box one step, with the player in front of it
+                    final int from = box + offset;
+                    final int player = from + offset;
+                    if (!wall[from] && !wall[player]
+                            && goalDistance[from] == DEAD) {
+                        goalDistance[from] = goalDistance[box] + 1;
+                        queue[tail++] = from;
+                    }
+                }
+            }
+
+            for (int square = 0; square < squares; square++) {
+                distance[square] = Math.min(distance[square],
+                        goalDistance[square]);
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the lower bound of the number of pushes left, which is the sum
+     * of the push distances of the boxes.
+     *
+     * @param boxes The box squares.
+     * @return The lower bound, or DEAD if a box can never reach a goal.
+     */
+    public int heuristic(final int[] boxes)
+    {
+        int sum = 0;
+        for (final int box : boxes) {
+            if (pushDistance[box] == DEAD) {
+                return DEAD;
+            }
+            sum += pushDistance[box];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns whether all boxes are in goals.
+     *
+     * @param boxes The box squares.
+     * @return True if the state is solved.
+     */
+    public boolean isSolved(final int[] boxes)
+    {
+        for (final int box : boxes) {
+            if (!goal[box]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash of the given boxes, without the player.
+     *
+     * @param boxes The box squares.
+     * @return The hash.
+     */
+    public long boxHash(final int[] boxes)
+    {
+        long hash = 0;
+        for (final int box : boxes) {
+            hash ^= boxKeys[box];
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the hash of a state.
+     *
+     * @param boxHash The hash of the boxes, from boxHash().
+     * @param player The normalized player square.
+     * @return The hash.
+     */
+    public long hash(final long boxHash, final int player)
+    {
+        return boxHash ^ playerKeys[player];
+    }
+
+    /**
+     * Returns the square of the box after a push.
+     *
+     * @param box The box square before the push.
+     * @param dir The direction ordinal of the push.
+     * @return The box square after the push.
+     */
+    public int pushTarget(final int box, final int dir)
+    {
+        return box + offsets[dir];
+    }
+
+    /**
+     * Receives the successors from Expander.expand().
+     */
+    public interface Successors
+    {
+        /**
+         * Called for each successor state.
+         *
+         * @param boxes The box squares of the successor, sorted. The array
+         *            is owned by the receiver.
+         * @param player The normalized player square of the successor.
+         * @param hash The hash of the successor.
+         * @param box The square of the pushed box, before the push.
+         * @param dir The direction ordinal of the push.
+         */
+        void successor(int[] boxes, int player, long hash, int box, int dir);
+    }
+
+    /**
+     * Generates successor states. This holds the scratch arrays, so each
+     * thread needs its own.
+     */
+    public final class Expander
+    {
+        private final boolean[] box = new boolean[squares];
+        private final int[] reach = new int[squares];
+        private final int[] scratch = new int[squares];
+        private final int[] stack = new int[squares];
+        private int reachStamp;
+        private int scratchStamp;
+
+        /**
+         * Returns the normalized player square of a state, i.e. the
+         * topmost, leftmost square the player can reach.
+         *
+         * @param boxes The box squares.
+         * @param player Any square the player can reach.
+         * @return The normalized player square.
+         */
+        public int normalize(final int[] boxes, final int player)
+        {
+            setBoxes(boxes, true);
+            final int min = fill(player, scratch, ++scratchStamp);
+            setBoxes(boxes, false);
+            return min;
+        }
+
+        /**
+         * Generates all successors of a state that push a box to a square
+         * that is not dead, and don't create a 2x2 block of boxes and walls
+         * with a box that isn't in a goal.
+         *
+         * @param boxes The box squares, sorted.
+         * @param player The normalized player square.
+         * @param hash The hash of the state.
+         * @param out Receives the successors.
+         * @return The number of successors.
+         */
+        public int expand(final int[] boxes, final int player,
+                final long hash, final Successors out)
+        {
+            setBoxes(boxes, true);
+            final int stamp = ++reachStamp;
+            fill(player, reach, stamp);
+            final long boxHash = hash ^ playerKeys[player];
+
+            int count = 0;
+            for (int i = 0; i < boxes.length; i++) {
+                final int from = boxes[i];
+                for (int dir = 0; dir < 4; dir++) {
+                    final int offset = offsets[dir];
+                    final int to = from + offset;
+                    if (reach[from - offset] != stamp || wall[to] || box[to]
+                            || pushDistance[to] == DEAD) {
+                        continue;
+                    }
+
+                    box[from] = false;
+                    box[to] = true;
+                    if (!blocked(to)) {
+                        final int newPlayer = fill(from, scratch,
+                                ++scratchStamp);
+                        final int[] newBoxes = movedBox(boxes, i, to);
+                        final long newHash = boxHash ^ boxKeys[from]
+                                ^ boxKeys[to] ^ playerKeys[newPlayer];
+                        out.successor(newBoxes, newPlayer, newHash, from, dir);
+                        count++;
+                    }
+                    box[to] = false;
+                    box[from] = true;
+                }
+            }
+
+            setBoxes(boxes, false);
+            return count;
+        }
+
+        private void setBoxes(final int[] boxes, final boolean value)
+        {
+            for (final int b : boxes) {
+                box[b] = value;
+            }
+        }
+
+        /**
+         * Flood fills the squares reachable from start, and returns the
+         * smallest square.
+         */
+        private int fill(final int start, final int[] mark, final int stamp)
+        {
+            int min = start;
+            int top = 0;
+            stack[top++] = start;
+            mark[start] = stamp;
+            while (top > 0) {
+                final int square = stack[--top];
+                if (square < min) {
+                    min = square;
+                }
+                for (final int offset : offsets) {
+                    final int next = square + offset;
+                    if (!wall[next] && !box[next] && mark[next] != stamp) {
+                        mark[next] = stamp;
+                        stack[top++] = next;
+                    }
+                }
+            }
+            return min;
+        }
+
+        /**
+         * Checks if the box is part of a 2x2 block of boxes and walls that
+         * has a box that isn't in a goal. Such boxes can never be moved.
+         */
+        private boolean blocked(final int square)
+        {
+            for (final int rowOffset : new int[] { -width, width }) {
+                for (final int colOffset : new int[] { -1, 1 }) {
+                    final int a = square + rowOffset;
+                    final int b = square + colOffset;
+                    final int c = a + colOffset;
+                    if (solid(a) && solid(b) && solid(c)
+                            && (notInGoal(square) || notInGoal(a)
+                                    || notInGoal(b) || notInGoal(c))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean solid(final int square)
+        {
+            return wall[square] || box[square];
+        }
+
+        private boolean notInGoal(final int square)
+        {
+            return box[square] && !goal[square];
+        }
+
+        /**
+         * Finds the walking path between two squares, with the given boxes
+         * in the way.
+         *
+         * @param boxes The box squares.
+         * @param from The start square.
+         * @param to The goal square.
+         * @return The directions to walk, or null if there is no path.
+         */
+        public Deque<Direction> walk(final int[] boxes, final int from,
+                final int to)
+        {
+            setBoxes(boxes, true);
+            final int[] previous = scratch;
+            final int stamp = ++scratchStamp;
+            final int[] queue = stack;
+            final int[] via = new int[squares];
+
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = from;
+            previous[from] = stamp;
+            while (head < tail && previous[to] != stamp) {
+                final int square = queue[head++];
+                for (int dir = 0; dir < 4; dir++) {
+                    final int next = square + offsets[dir];
+                    if (!wall[next] && !box[next] && previous[next] != stamp) {
+                        previous[next] = stamp;
+                        via[next] = dir;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            setBoxes(boxes, false);
+
+            if (previous[to] != stamp) {
+                return null;
+            }
+
+            final Deque<Direction> path = new LinkedList<Direction>();
+            for (int square = to; square != from; square -= offsets[via[square]]) {
+                path.addFirst(Direction.values()[via[square]]);
+            }
+            return path;
+        }
+
+        /**
+         * Converts a list of pushes from the start state into the moves of
+         * the player, including the walks between the pushes.
+         *
+         * @param pushBoxes The square of the pushed box before each push.
+         * @param pushDirs The direction ordinal of each push.
+         * @param count The number of pushes.
+         * @return The moves, or null if a push isn't possible.
+         */
+        public Deque<Direction> toMoves(final int[] pushBoxes,
+                final int[] pushDirs, final int count)
+        {
+            final int[] boxes = startBoxes.clone();
+            int player = startPlayer;
+            final Deque<Direction> moves = new LinkedList<Direction>();
+
+            for (int i = 0; i < count; i++) {
+                final int from = pushBoxes[i];
+                final int dir = pushDirs[i];
+                final Deque<Direction> path = walk(boxes, player, from
+                        - offsets[dir]);
+                final int index = Arrays.binarySearch(boxes, from);
+                if (path == null || index < 0) {
+                    return null;
+                }
+
+                moves.addAll(path);
+                moves.add(Direction.values()[dir]);
+                final int[] moved = movedBox(boxes, index, from + offsets[dir]);
+                System.arraycopy(moved, 0, boxes, 0, boxes.length);
+                player = from;
+            }
+            return moves;
+        }
+    }
+
+    /**
+     * Returns a copy of the sorted box array, with one box moved.
+     *
+     * @param boxes The box squares, sorted.
+     * @param index The index of the box to move.
+     * @param to The new square of the box.
+     * @return The new box squares, sorted.
+     */
+    static int[] movedBox(final int[] boxes, final int index, final int to)
+    {
+        final int[] moved = boxes.clone();
+        int i = index;
+        while (i > 0 && moved[i - 1] > to) {
+            moved[i] = moved[i - 1];
+            i--;
+        }
+        while (i < moved.length - 1 && moved[i + 1] < to) {
+            moved[i] = moved[i + 1];
+            i++;
+        }
+        moved[i] = to;
+        return moved;
+    }
+}
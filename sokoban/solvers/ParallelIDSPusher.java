@@ -0,0 +1,474 @@
+package sokoban.solvers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sokoban.Board;
+import sokoban.SearchInfo;
+import sokoban.SearchStatus;
+
+/**
+ * A parallel version of the IDSPusher. Each iteration searches the first few
+ * plies on the calling thread, and then searches the subtrees below them as
+ * tasks on a pool of search threads. Each task has its own copy of the
+ * board, and the tasks share the set of visited boards and the set of failed
+ * boards, which are lock-free tables. As soon as one of the tasks finds a
+ * solution the others are cancelled.
+ *
+ * The DFS recurses deeply, and the workers of a ForkJoinPool can't be given
+ * a larger stack, so the pool is a plain executor of threads with a large
+ * stack. The pool only lives as long as one call to solve().
+ */
+public class ParallelIDSPusher implements Solver
+{
+    /**
+     * The depth at which the search tree is split into tasks.
+     */
+    private static final int SPLIT_DEPTH = 3;
+
+    /**
+     * The maximum number of slots in the visited and failed tables. When they
+     * get full, old boards are forgotten.
+     */
+    private static final int TABLE_CAPACITY = 1 << 22;
+
+    /**
+     * The minimum number of slots in the visited table. The first iteration
+     * has no estimate of its size, and a visited table that is too small
+     * loses boards, so that the same subtrees are searched over and over.
+     */
+    private static final int MIN_VISITED_CAPACITY = 1 << 20;
+
+    /**
+     * The stack size of the search threads, since the DFS recurses deeply.
+     */
+    private static final long STACK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * A subtree of the search tree, which is searched by one task.
+     */
+    static class Subtree
+    {
+        /**
+         * The board at the root of the subtree
+         */
+        final Board board;
+
+        /**
+         * The remaining depth at the root of the subtree
+         */
+        final int remainingDepth;
+
+        /**
+         * The pushes from the start to the root of the subtree
+         */
+        final List<BoxPosDir> pushes;
+
+        Subtree(final Board board, final int remainingDepth,
+                final List<BoxPosDir> pushes)
+        {
+            this.board = board;
+            this.remainingDepth = remainingDepth;
+            this.pushes = pushes;
+        }
+    }
+
+    private final int threads;
+    private ExecutorService pool;
+    private final AtomicLong generatedNodes = new AtomicLong();
+
+    private Board startBoard;
+    private ConcurrentLongSet failedBoards;
+    private CancellationToken cancellation;
+    private SearchProfile profile;
+    private SearchListener listener;
+
+    /**
+     * Creates a solver that uses one thread per processor.
+     */
+    public ParallelIDSPusher()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a solver that uses the given number of threads.
+     * 
+     * @param threads The number of threads.
+     */
+    public ParallelIDSPusher(final int threads)
+    {
+        this.threads = threads;
+    }
+
+    @Override
+    public String solve(final Board startBoard)
+    {
+        pool = Executors.newFixedThreadPool(threads, new SearchThreadFactory());
+        try {
+            if (!SearchProfile.ENABLED) {
+                return iterate(startBoard);
+            }
+
+            profile = new SearchProfile();
+            final long solveStart = System.nanoTime();
+            try {
+                return iterate(startBoard);
+            }
+            finally {
+                profile.print(System.out, getClass().getSimpleName(), System
+                        .nanoTime()
+                        - solveStart);
+            }
+        }
+        finally {
+            // The tasks have all finished, so the threads are idle
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the threads of the last call to solve() have ended.
+     *
+     * @return True if they have ended, or if solve() hasn't been called.
+     */
+    public boolean isTerminated()
+    {
+        return pool == null || pool.isTerminated();
+    }
+
+    /**
+     * Creates the search threads, with a large stack.
+     */
+    private static class SearchThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable run)
+        {
+            final Thread thread = new Thread(null, AllocationGroup.counted(run),
+                    "ParallelIDSPusher-" + count.incrementAndGet(), STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Runs the iterations of the IDS until a solution is found, or the search
+     * fails or reaches the depth limit.
+     */
+    private String iterate(final Board startBoard)
+    {
+        this.startBoard = startBoard;
+        failedBoards = new ConcurrentLongSet(TABLE_CAPACITY, true);
+        generatedNodes.set(0);
+
+        final int lowerBound = IDSCommon.lowerBound(startBoard);
+        System.out.println("lowerBound(): " + lowerBound);
+        System.out.println("IDS depth limit (progress): ");
+
+        long lastLeafCount = -1;
+        int lastCapacity = 0;
+        int maxDepth = lowerBound;
+        while (maxDepth < IDSCommon.DEPTH_LIMIT) {
+            System.out.print(maxDepth + ".");
+
+            // Make room for the failed boards and the nodes so far, with a
+            // margin for the growth of the iteration
+            final long expected = 8L * (failedBoards.size() + generatedNodes
+                    .get());
+            final int capacity = (int) Math.max(MIN_VISITED_CAPACITY, Math
+                    .min(TABLE_CAPACITY, expected));
+
+            if (capacity != lastCapacity) {
+                tableResized(lastCapacity, capacity);
+                lastCapacity = capacity;
+            }
+
+            final Iteration iteration = new Iteration(maxDepth, capacity);
+            final long startNodes = generatedNodes.get();
+            final long startTime = System.nanoTime();
+            final SolverEvents.Iteration event = new SolverEvents.Iteration();
+            event.begin();
+            if (listener != null) {
+                listener.iterationStarted(getClass().getSimpleName(),
+                        maxDepth, startNodes);
+            }
+
+            final SearchInfo result = iteration.run();
+
+            if (event.shouldCommit()) {
+                event.solver = getClass().getSimpleName();
+                event.depth = maxDepth;
+                event.nodes = generatedNodes.get() - startNodes;
+                event.leafNodes = iteration.leafCount.get();
+                event.commit();
+            }
+
+            if (listener != null) {
+                listener.iterationFinished(getClass().getSimpleName(),
+                        maxDepth, generatedNodes.get() - startNodes,
+                        iteration.leafCount.get(), failedBoards.size(), System
+                                .nanoTime()
+                                - startTime);
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new SearchCancelledException();
+            }
+            else if (result.solution != null) {
+                System.out.println();
+                return Board.solutionToString(result.solution);
+            }
+            else if (result.status == SearchStatus.Failed) {
+                System.out.println("no solution!");
+                return null;
+            }
+
+            final long leafCount = iteration.leafCount.get();
+            maxDepth += IDSCommon.depthStep(lowerBound, startBoard.boxCount,
+                    iteration.failedGoalTests.get(), leafCount, lastLeafCount);
+            lastLeafCount = leafCount;
+        }
+
+        System.out.println("maximum depth reached!");
+        return null;
+    }
+
+    /**
+     * Records a flight recorder event for a visited table with a new
+     * capacity.
+     */
+    private void tableResized(final int oldCapacity, final int newCapacity)
+    {
+        final SolverEvents.TableResize event = new SolverEvents.TableResize();
+        if (event.shouldCommit()) {
+            event.table = "visited";
+            event.oldCapacity = oldCapacity;
+            event.newCapacity = newCapacity;
+            event.entries = failedBoards.size();
+            event.commit();
+        }
+    }
+
+    @Override
+    public long getIterationsCount()
+    {
+        return generatedNodes.get();
+    }
+
+    @Override
+    public void setCancellationToken(final CancellationToken token)
+    {
+        cancellation = token;
+    }
+
+    /**
+     * Sets the listener. Only the iterations are reported, since the nodes
+     * are only counted when the tasks finish.
+     */
+    @Override
+    public void setSearchListener(final SearchListener listener)
+    {
+        this.listener = listener;
+    }
+
+    private IDSPusher newPusher()
+    {
+        // Solutions are found within the tasks, so the states maps are only
+        // used locally.
+        final Map<Long, BoxPosDir> empty = Collections.emptyMap();
+        return new IDSPusher(startBoard, failedBoards,
+                new HashMap<Long, BoxPosDir>(), empty);
+    }
+
+    /**
+     * One iteration of the IDS, which splits the search into subtrees and
+     * combines their results.
+     */
+    private class Iteration
+    {
+        private final int maxDepth;
+        private final ConcurrentLongSet visited;
+        /**
+         * Cancelled when a subtree is solved, or when the solver is
+         * cancelled.
+         */
+        private final CancellationToken cancellation = new CancellationToken(
+                ParallelIDSPusher.this.cancellation);
+
+        final AtomicLong leafCount = new AtomicLong();
+        final AtomicLong failedGoalTests = new AtomicLong();
+
+        Iteration(final int maxDepth, final int capacity)
+        {
+            this.maxDepth = maxDepth;
+            visited = new ConcurrentLongSet(capacity, true);
+        }
+
+        /**
+         * Runs the iteration, with the subtrees on the pool.
+         */
+        SearchInfo run()
+        {
+            for (final long hash : failedBoards) {
+                visited.add(hash);
+            }
+
+            final List<Subtree> subtrees = new ArrayList<Subtree>();
+            final IDSPusher pusher = newPusher();
+            pusher.setCancellationToken(cancellation);
+            final SearchInfo result = pusher.split(maxDepth, SPLIT_DEPTH,
+                    visited, subtrees);
+            count(pusher);
+
+            if (result.status != SearchStatus.Inconclusive
+                    || subtrees.isEmpty()) {
+                return result;
+            }
+
+            final List<SubtreeTask> tasks = new ArrayList<SubtreeTask>(
+                    subtrees.size());
+            for (final Subtree subtree : subtrees) {
+                tasks.add(new SubtreeTask(subtree));
+            }
+            final List<Future<SearchInfo>> results;
+            try {
+                results = pool.invokeAll(tasks);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancellation.cancel();
+                return SearchInfo.Inconclusive;
+            }
+
+            // Failed only if all subtrees failed
+            boolean inconclusive = false;
+            for (int i = 0; i < tasks.size(); i++) {
+                final SubtreeTask task = tasks.get(i);
+                final SearchInfo subtreeResult = result(results.get(i));
+                switch (subtreeResult.status) {
+                    case Solution:
+                        return fromStart(task.subtree, subtreeResult);
+                    case Inconclusive:
+                        inconclusive = true;
+                        continue;
+                    case Failed:
+                        continue;
+                }
+            }
+
+            return inconclusive ? SearchInfo.Inconclusive : SearchInfo.Failed;
+        }
+
+        /**
+         * Returns the result of a finished task, and throws the exception
+         * that the task threw, if any.
+         */
+        private SearchInfo result(final Future<SearchInfo> task)
+        {
+            try {
+                return task.get();
+            }
+            catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+            catch (final InterruptedException e) {
+                // invokeAll() has waited for the task already
+                Thread.currentThread().interrupt();
+                return SearchInfo.Inconclusive;
+            }
+        }
+
+        /**
+         * Adds the pushes from the start to the root of the subtree to the
+         * solution.
+         */
+        private SearchInfo fromStart(final Subtree subtree,
+                final SearchInfo result)
+        {
+            final Board board = (Board) startBoard.clone();
+            final SearchInfo solution = SearchInfo.emptySolution();
+            for (final BoxPosDir push : subtree.pushes) {
+                IDSCommon.replayPush(board, push.dir, push.box,
+                        solution.solution);
+            }
+            solution.solution.addAll(result.solution);
+            return solution;
+        }
+
+        private void count(final IDSPusher pusher)
+        {
+            generatedNodes.addAndGet(pusher.generatedNodes);
+            if (SearchProfile.ENABLED) {
+                profile.add(pusher.profile);
+            }
+            leafCount.addAndGet(pusher.numLeafNodes);
+            failedGoalTests.addAndGet(pusher.getFailedGoalTests());
+        }
+
+        /**
+         * Searches one subtree.
+         */
+        private class SubtreeTask implements Callable<SearchInfo>
+        {
+            final Subtree subtree;
+
+            SubtreeTask(final Subtree subtree)
+            {
+                this.subtree = subtree;
+            }
+
+            @Override
+            public SearchInfo call()
+            {
+                if (cancellation.isCancelled()) {
+                    return SearchInfo.Inconclusive;
+                }
+
+                final IDSPusher pusher = newPusher();
+                pusher.setCancellationToken(cancellation);
+
+                SearchInfo result;
+                try {
+                    result = pusher.searchSubtree(subtree, visited);
+                }
+                catch (final SearchCancelledException e) {
+                    result = SearchInfo.Inconclusive;
+                }
+                finally {
+                    count(pusher);
+                }
+
+                if (result.status == SearchStatus.Solution) {
+                    cancellation.cancel();
+                }
+                return result;
+            }
+        }
+    }
+}
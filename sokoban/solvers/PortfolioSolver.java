@@ -0,0 +1,211 @@
+package sokoban.solvers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import sokoban.Board;
+
+/**
+ * Runs several solvers at the same time, each on its own thread and with its
+ * own copy of the board. The first solution found is returned, and the other
+ * solvers are cancelled.
+ *
+ * The solvers are given by class name, as for SolverFactory. When created
+ * with the default constructor, the names are read from the comma separated
+ * system property sokoban.portfolio.
+ */
+public class PortfolioSolver implements Solver
+{
+    /**
+     * The system property with the names of the solvers
+     */
+    public static final String ENGINES_PROPERTY = "sokoban.portfolio";
+
+    /**
+     * The solvers used when the property isn't set
+     */
+    public static final String DEFAULT_ENGINES = "IDSPusher,BidirectionalIDS,GreedyPusher";
+
+    /**
+     * The stack size of the solver threads, since the IDS solvers recurse
+     * deeply.
+     */
+    private static final long STACK_SIZE = 64 * 1024 * 1024;
+
+    private final String[] names;
+    private final Solver[] engines;
+    private CancellationToken cancellation;
+    private String winner;
+
+    /**
+     * Creates a portfolio of the solvers in the sokoban.portfolio property.
+     */
+    public PortfolioSolver()
+    {
+        this(System.getProperty(ENGINES_PROPERTY, DEFAULT_ENGINES).split(","));
+    }
+
+    /**
+     * Creates a portfolio of the given solvers.
+     *
+     * @param names The class names of the solvers in sokoban.solvers.
+     */
+    public PortfolioSolver(final String... names)
+    {
+        this.names = new String[names.length];
+        engines = new Solver[names.length];
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i].trim();
+            engines[i] = SolverFactory.loadSolver(name);
+            if (engines[i] == null) {
+                throw new IllegalArgumentException("Unknown solver: " + name);
+            }
+            this.names[i] = engines[i].getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Creates a portfolio of the given solver instances.
+     *
+     * @param engines The solvers.
+     */
+    public PortfolioSolver(final Solver... engines)
+    {
+        this.engines = engines.clone();
+        names = new String[engines.length];
+        for (int i = 0; i < engines.length; i++) {
+            names[i] = engines[i].getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * The outcome of one solver.
+     */
+    private static class Outcome
+    {
+        final int engine;
+        final String solution;
+
+        Outcome(final int engine, final String solution)
+        {
+            this.engine = engine;
+            this.solution = solution;
+        }
+    }
+
+    @Override
+    public String solve(final Board startBoard)
+    {
+        winner = null;
+        final CancellationToken race = new CancellationToken(cancellation);
+        final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<Outcome>();
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < engines.length; i++) {
+            final int engine = i;
+            final Board board = (Board) startBoard.clone();
+            engines[i].setCancellationToken(race);
+
+            final Runnable run = new Runnable() {
+                @Override
+                public void run()
+                {
+                    String solution = null;
+                    try {
+                        solution = engines[engine].solve(board);
+                    }
+                    catch (final SearchCancelledException e) {
+                        // Another solver won
+                    }
+                    catch (final RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    catch (final Error e) {
+                        // E.g. a StackOverflowError or OutOfMemoryError,
+                        // which only ends this solver
+                        e.printStackTrace();
+                    }
+                    finally {
+                        // solve() waits for one outcome from each solver
+                        outcomes.add(new Outcome(engine, solution));
+                    }
+                }
+            };
+            final Thread thread = new Thread(null, AllocationGroup.counted(run),
+                    names[i], STACK_SIZE);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        String solution = null;
+        try {
+            for (int i = 0; i < engines.length && solution == null; i++) {
+                final Outcome outcome = outcomes.take();
+                if (outcome.solution != null) {
+                    solution = outcome.solution;
+                    winner = names[outcome.engine];
+                }
+            }
+
+            // Stop the others, and wait so that the node counts are final
+            race.cancel();
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        }
+        catch (final InterruptedException e) {
+            race.cancel();
+            Thread.currentThread().interrupt();
+        }
+
+        if (winner != null) {
+            System.out.println("Portfolio winner: " + winner);
+        }
+        else if (cancellation != null && cancellation.isCancelled()) {
+            throw new SearchCancelledException();
+        }
+        return solution;
+    }
+
+    /**
+     * Returns the name of the solver that found the last solution.
+     *
+     * @return The simple class name of the solver, as SolverFactory
+     *         loads it, or null if no solver found a solution.
+     */
+    public String getWinner()
+    {
+        return winner;
+    }
+
+    @Override
+    public long getIterationsCount()
+    {
+        long sum = 0;
+        for (final Solver engine : engines) {
+            sum += engine.getIterationsCount();
+        }
+        return sum;
+    }
+
+    @Override
+    public void setCancellationToken(final CancellationToken token)
+    {
+        cancellation = token;
+    }
+
+    /**
+     * Sets the listener of all the solvers. The listener must be
+     * thread-safe.
+     */
+    @Override
+    public void setSearchListener(final SearchListener listener)
+    {
+        for (final Solver engine : engines) {
+            engine.setSearchListener(listener);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package sokoban.solvers;
+
+import java.util.concurrent.SynchronousQueue;
+
+import sokoban.SearchInfo;
+import sokoban.SearchStatus;
+
+/**
+ * Runs the iterations of an IDS search on a separate thread so that the
+ * search can be suspended after a given number of nodes and later be resumed
+ * from where it was. Control is handed back and forth between the caller and
+ * the search thread, so only one of them runs at a time and the search
+ * doesn't need to be thread safe.
+ */
+class ResumableSearch implements Runnable
+{
+    /**
+     * The stack size of the search thread. The DFS recurses once per depth
+     * level, and the reachability check recurses once per square.
+     */
+    private static final long STACK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Returned to the caller when the search has used up its node budget.
+     */
+    private static final SearchInfo PAUSED = new SearchInfo(
+            SearchStatus.Inconclusive);
+
+    /**
+     * Thrown inside the search thread to unwind the DFS when it is stopped.
+     */
+    private static class Stopped extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final IDSCommon search;
+    private final String name;
+    private final int lowerBound;
+
+    private final SynchronousQueue<Long> budgets = new SynchronousQueue<Long>();
+    private final SynchronousQueue<SearchInfo> results = new SynchronousQueue<SearchInfo>();
+
+    private Thread thread;
+    private RuntimeException exception;
+    private Error error;
+
+    /**
+     * The depth of the iteration that is currently running.
+     */
+    private int depth;
+
+    /**
+     * The depth of the iteration that completed last.
+     */
+    private int completedDepth;
+
+    /**
+     * Creates a new resumable search.
+     * 
+     * @param search The search to run.
+     * @param name The name of the search, used for the thread name.
+     * @param depth The depth of the first iteration.
+     * @param lowerBound The lower bound of the board, used to calculate the
+     *            next depth.
+     */
+    ResumableSearch(final IDSCommon search, final String name,
+            final int depth, final int lowerBound)
+    {
+        this.search = search;
+        this.name = name;
+        this.depth = depth;
+        this.lowerBound = lowerBound;
+
+        search.resumable = this;
+    }
+
+    /**
+     * Runs the search until it has generated the given number of nodes or
+     * until the current iteration is complete, whichever comes first.
+     * 
+     * @param nodes The maximum number of nodes to generate.
+     * @return The result of the iteration, or null if it was paused before it
+     *         completed.
+     */
+    SearchInfo resume(final long nodes)
+    {
+        if (thread == null) {
+            thread = new Thread(null, AllocationGroup.counted(this), name,
+                    STACK_SIZE);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        final SearchInfo result;
+        try {
+            budgets.put(nodes);
+            result = results.take();
+        }
+        catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+        if (error != null) {
+            throw error;
+        }
+        return result == PAUSED ? null : result;
+    }
+
+    /**
+     * Stops the search thread. The search can't be resumed after this.
+     */
+    void stop()
+    {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Called from the search thread when the node budget is used up. Blocks
+     * until the search is resumed.
+     */
+    void pause()
+    {
+        try {
+            results.put(PAUSED);
+            setBudget(budgets.take());
+        }
+        catch (final InterruptedException e) {
+            throw new Stopped();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try {
+            setBudget(budgets.take());
+            while (true) {
+                search.iterationStarted(depth);
+                final SearchInfo result = search.dfs(depth);
+                search.iterationFinished(depth);
+                completedDepth = depth;
+                depth = search.nextDepth(lowerBound);
+
+                results.put(result);
+                setBudget(budgets.take());
+            }
+        }
+        catch (final InterruptedException e) {
+            // Stopped while waiting
+        }
+        catch (final Stopped e) {
+            // Stopped inside the DFS
+        }
+        catch (final RuntimeException e) {
+            exception = e;
+            handBack();
+        }
+        catch (final Error e) {
+            error = e;
+            handBack();
+        }
+    }
+
+    /**
+     * Hands control back to the caller after the search has thrown.
+     */
+    private void handBack()
+    {
+        try {
+            results.put(PAUSED);
+        }
+        catch (final InterruptedException e) {
+            // Stopped while waiting
+        }
+    }
+
+    private void setBudget(final long nodes)
+    {
+        search.setPauseAt(search.generatedNodes + nodes);
+    }
+
+    /**
+     * Returns an estimate of the size of the search frontier, which is the
+     * number of leaf nodes in the current iteration or the last completed
+     * one, whichever is larger.
+     * 
+     * @return The estimated number of leaf nodes.
+     */
+    long frontierSize()
+    {
+        return Math.max(search.lastLeafCount, search.numLeafNodes);
+    }
+
+    /**
+     * Returns the depth of the iteration that is currently running (or will
+     * run when the search is resumed).
+     * 
+     * @return The depth.
+     */
+    int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Returns the depth of the last completed iteration.
+     * 
+     * @return The depth.
+     */
+    int getCompletedDepth()
+    {
+        return completedDepth;
+    }
+}
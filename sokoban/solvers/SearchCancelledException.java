@@ -0,0 +1,10 @@
+package sokoban.solvers;
+
+/**
+ * Thrown inside a search when its cancellation token has been cancelled, in
+ * order to unwind the DFS.
+ */
+public class SearchCancelledException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,57 @@
+package sokoban.solvers;
+
+/**
+ * Receives progress events from a solver. Register it with
+ * Solver.setSearchListener(). When no listener is registered, the solvers
+ * don't measure anything.
+ *
+ * The events are sent from the threads that run the search, so a listener
+ * that is used by a parallel solver or by several solvers at once must be
+ * thread-safe.
+ */
+public interface SearchListener
+{
+    /**
+     * Called when an iteration starts. For the IDS solvers the depth is the
+     * depth limit, and for the A* solvers it is the f value of the nodes
+     * that are expanded next.
+     *
+     * @param solver The name of the solver or search side.
+     * @param depth The depth of the iteration.
+     * @param nodes The number of nodes so far.
+     */
+    void iterationStarted(String solver, int depth, long nodes);
+
+    /**
+     * Called when an iteration ends.
+     *
+     * @param solver The name of the solver or search side.
+     * @param depth The depth of the iteration.
+     * @param nodes The number of nodes in the iteration.
+     * @param leafNodes The number of leaf nodes in the iteration, or the
+     *            number of open nodes for the A* solvers.
+     * @param failedStates The number of states in the failed set, or the
+     *            number of seen states for the A* solvers.
+     * @param elapsedNanos The duration of the iteration.
+     */
+    void iterationFinished(String solver, int depth, long nodes,
+            long leafNodes, long failedStates, long elapsedNanos);
+
+    /**
+     * Called about once per HEARTBEAT_INTERVAL during the search.
+     *
+     * @param solver The name of the solver or search side.
+     * @param nodes The number of nodes so far.
+     * @param nodesPerSecond The number of nodes per second since the last
+     *            heartbeat.
+     * @param tableEntries The number of entries in the hash tables of the
+     *            search.
+     */
+    void heartbeat(String solver, long nodes, double nodesPerSecond,
+            long tableEntries);
+
+    /**
+     * The minimum time between two heartbeats, in nanoseconds.
+     */
+    long HEARTBEAT_INTERVAL = 1000000000L;
+}
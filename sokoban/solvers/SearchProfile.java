@@ -0,0 +1,195 @@
+package sokoban.solvers;
+
+import java.io.PrintStream;
+
+/**
+ * Counters that show where the IDS solvers spend their time. Profiling is
+ * turned on with -Dsokoban.profile=true. ENABLED is a static final field, so
+ * when it is false the JIT removes the profiling code from the search loops.
+ *
+ * Each search has its own profile, which is only used by the thread running
+ * the search, so the counters are plain longs. The time of each phase is
+ * measured with System.nanoTime() on every SAMPLE_INTERVAL:th node only, and
+ * scaled up when printed.
+ */
+public final class SearchProfile
+{
+    /**
+     * True if the solvers should collect profiles.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("sokoban.profile");
+
+    /**
+     * The number of nodes per timed node. Must be a power of two.
+     */
+    private static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * The timed parts of the work done for a node.
+     */
+    public enum Phase {
+        /**
+         * Board.findReachableBoxSquares()
+         */
+        REACHABILITY,
+
+        /**
+         * Board.moveBox() and Board.movePlayer(), including the undo
+         */
+        MOVE,
+
+        /**
+         * The freeze deadlock test
+         */
+        DEADLOCK,
+
+        /**
+         * Zobrist keys, the visited set and the states map
+         */
+        HASHING,
+    }
+
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long nodes;
+    private long expansions;
+    private long successors;
+    private long transpositionHits;
+    private long transpositionMisses;
+    private long deadSquarePrunes;
+    private long freezePrunes;
+
+    /**
+     * Counts a node, and returns whether its phases should be timed.
+     *
+     * @return True if this node is sampled.
+     */
+    public boolean node()
+    {
+        return (++nodes & (SAMPLE_INTERVAL - 1)) == 0;
+    }
+
+    /**
+     * Adds the time since start to a phase.
+     *
+     * @param phase The phase.
+     * @param start The System.nanoTime() when the phase started.
+     */
+    public void time(final Phase phase, final long start)
+    {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+    }
+
+    /**
+     * Counts a node whose successors are generated, i.e. a node that isn't a
+     * leaf.
+     */
+    public void expansion()
+    {
+        expansions++;
+    }
+
+    /**
+     * Counts a successor that was searched.
+     */
+    public void successor()
+    {
+        successors++;
+    }
+
+    /**
+     * Counts a lookup in the visited set.
+     *
+     * @param hit True if the board had been visited before.
+     */
+    public void transposition(final boolean hit)
+    {
+        if (hit) {
+            transpositionHits++;
+        }
+        else {
+            transpositionMisses++;
+        }
+    }
+
+    /**
+     * Counts a move that was not made because the box would end up on a dead
+     * square.
+     */
+    public void deadSquarePrune()
+    {
+        deadSquarePrunes++;
+    }
+
+    /**
+     * Counts a move that was undone because of a freeze deadlock.
+     */
+    public void freezePrune()
+    {
+        freezePrunes++;
+    }
+
+    /**
+     * Adds the counters of another profile to this one.
+     *
+     * @param other The other profile.
+     */
+    public synchronized void add(final SearchProfile other)
+    {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] += other.phaseNanos[i];
+        }
+        nodes += other.nodes;
+        expansions += other.expansions;
+        successors += other.successors;
+        transpositionHits += other.transpositionHits;
+        transpositionMisses += other.transpositionMisses;
+        deadSquarePrunes += other.deadSquarePrunes;
+        freezePrunes += other.freezePrunes;
+    }
+
+    /**
+     * Prints the profile.
+     *
+     * @param out The stream to print to.
+     * @param solver The name of the solver.
+     * @param totalNanos The total time of the search.
+     */
+    public synchronized void print(final PrintStream out, final String solver,
+            final long totalNanos)
+    {
+        out.println("Profile of " + solver + ": " + nodes + " nodes in "
+                + totalNanos / 1000000 + " ms");
+
+        long measured = 0;
+        for (final Phase phase : Phase.values()) {
+            final long estimate = phaseNanos[phase.ordinal()]
+                    * SAMPLE_INTERVAL;
+            measured += estimate;
+            printTime(out, phase.toString().toLowerCase(), estimate,
+                    totalNanos);
+        }
+        printTime(out, "other", Math.max(0, totalNanos - measured),
+                totalNanos);
+
+        final long lookups = transpositionHits + transpositionMisses;
+        out.printf("  transposition hits: %d of %d (%.1f%%)%n",
+                transpositionHits, lookups, percent(transpositionHits,
+                        lookups));
+        out.println("  dead square prunes: " + deadSquarePrunes);
+        out.println("  freeze deadlock prunes: " + freezePrunes);
+        out.printf("  successors per expanded node: %.2f%n",
+                expansions == 0 ? 0.0 : (double) successors / expansions);
+    }
+
+    private static void printTime(final PrintStream out, final String name,
+            final long nanos, final long totalNanos)
+    {
+        out.printf("  %-13s %8d ms (%.1f%%)%n", name + ":", nanos / 1000000,
+                percent(nanos, totalNanos));
+    }
+
+    private static double percent(final long part, final long total)
+    {
+        return total == 0 ? 0.0 : 100.0 * part / total;
+    }
+}
@@ -0,0 +1,48 @@
+package sokoban.solvers;
+
+import java.io.PrintStream;
+
+/**
+ * A SearchListener that prints the events, one line each.
+ */
+public class SearchProgressPrinter implements SearchListener
+{
+    private final PrintStream out;
+
+    /**
+     * Creates a listener that prints to the given stream.
+     *
+     * @param out The stream.
+     */
+    public SearchProgressPrinter(final PrintStream out)
+    {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void iterationStarted(final String solver,
+            final int depth, final long nodes)
+    {
+        out.println(solver + ": depth " + depth + " started at " + nodes
+                + " nodes");
+    }
+
+    @Override
+    public synchronized void iterationFinished(final String solver,
+            final int depth, final long nodes, final long leafNodes,
+            final long failedStates, final long elapsedNanos)
+    {
+        out.println(solver + ": depth " + depth + " finished, " + nodes
+                + " nodes, " + leafNodes + " leaves, " + failedStates
+                + " failed, " + elapsedNanos / 1000000 + " ms");
+    }
+
+    @Override
+    public synchronized void heartbeat(final String solver, final long nodes,
+            final double nodesPerSecond, final long tableEntries)
+    {
+        out.println(solver + ": " + nodes + " nodes, "
+                + Math.round(nodesPerSecond) + " nodes/s, " + tableEntries
+                + " table entries");
+    }
+}
@@ -0,0 +1,124 @@
+package sokoban.solvers;
+
+import sokoban.Board;
+import sokoban.SearchStatus;
+
+/**
+ * The outcome of running a solver with a cancellation token or a deadline:
+ * the status, the solution if one was found, and statistics. Unlike
+ * Solver.solve(), running a solver this way never throws when the search is
+ * cancelled, so the statistics of a timed out search are kept.
+ */
+public final class SolveResult
+{
+    /**
+     * Solution if a solution was found, Cancelled if the search was cancelled
+     * or timed out, and Failed if the solver gave up without a solution.
+     */
+    public final SearchStatus status;
+
+    /**
+     * The solution, or null
+     */
+    public final String solution;
+
+    /**
+     * True if the search was stopped by a deadline
+     */
+    public final boolean timedOut;
+
+    /**
+     * The number of nodes, as given by Solver.getIterationsCount()
+     */
+    public final long nodes;
+
+    /**
+     * The time spent in the solver, in milliseconds
+     */
+    public final long elapsedMillis;
+
+    private SolveResult(final SearchStatus status, final String solution,
+            final boolean timedOut, final long nodes, final long elapsedMillis)
+    {
+        this.status = status;
+        this.solution = solution;
+        this.timedOut = timedOut;
+        this.nodes = nodes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Runs the solver until it finishes or the token is cancelled.
+     *
+     * @param solver The solver.
+     * @param board The board to solve.
+     * @param token The token, or null to never cancel.
+     * @return The result.
+     */
+    public static SolveResult solve(final Solver solver, final Board board,
+            final CancellationToken token)
+    {
+        solver.setCancellationToken(token);
+        final long start = System.nanoTime();
+
+        String solution = null;
+        boolean cancelled = false;
+        try {
+            solution = solver.solve(board);
+        }
+        catch (final SearchCancelledException e) {
+            cancelled = true;
+        }
+        final long elapsed = (System.nanoTime() - start) / 1000000;
+
+        final SearchStatus status;
+        if (solution != null) {
+            status = SearchStatus.Solution;
+        }
+        else if (cancelled) {
+            status = SearchStatus.Cancelled;
+        }
+        else {
+            status = SearchStatus.Failed;
+        }
+        return new SolveResult(status, solution, cancelled && token != null
+                && token.isTimedOut(), solver.getIterationsCount(), elapsed);
+    }
+
+    /**
+     * Runs the solver until it finishes or the time limit has passed.
+     *
+     * @param solver The solver.
+     * @param board The board to solve.
+     * @param timeoutMillis The time limit in milliseconds.
+     * @return The result.
+     */
+    public static SolveResult solve(final Solver solver, final Board board,
+            final long timeoutMillis)
+    {
+        return solve(solver, board, CancellationToken
+                .withTimeout(timeoutMillis));
+    }
+
+    /**
+     * Creates the result of a solution that was found without searching,
+     * such as one read from a cache.
+     *
+     * @param solution The solution.
+     * @param elapsedMillis The time spent finding it, in milliseconds.
+     * @return The result, with no nodes.
+     */
+    public static SolveResult known(final String solution,
+            final long elapsedMillis)
+    {
+        return new SolveResult(SearchStatus.Solution, solution, false, 0,
+                elapsedMillis);
+    }
+
+    @Override
+    public String toString()
+    {
+        return status + (timedOut ? " (timed out)" : "") + ", "
+                + elapsedMillis + " ms, " + nodes + " nodes";
+    }
+}
@@ -18,9 +18,25 @@ public interface Solver
     String solve(Board board);
 
     /**
-     * Returns the number of iterations used for solving the board.
+     * Returns the number of nodes (iterations) used for solving the board.
      * 
      * @return Number of iterations
      */
-    int getIterationsCount();
+    long getIterationsCount();
+
+    /**
+     * Sets the token that stops solve() when it is cancelled. The search
+     * checks the token every few nodes, and throws a SearchCancelledException
+     * when it has been cancelled.
+     * 
+     * @param token The token, or null to never cancel.
+     */
+    void setCancellationToken(CancellationToken token);
+
+    /**
+     * Sets the listener that receives progress events from solve().
+     * 
+     * @param listener The listener, or null for no events.
+     */
+    void setSearchListener(SearchListener listener);
 }
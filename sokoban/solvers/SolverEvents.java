@@ -0,0 +1,161 @@
+package sokoban.solvers;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events from the solvers. The events are only
+ * committed when they are enabled in the recording, so they cost next to
+ * nothing otherwise. All events are in the Sokoban category.
+ */
+final class SolverEvents
+{
+    /**
+     * The IDS searches that are running, for the deadlock prune summaries.
+     */
+    private static final Set<IDSCommon> running = ConcurrentHashMap
+            .newKeySet();
+
+    static {
+        FlightRecorder.addPeriodicEvent(DeadlockPrunes.class, new Runnable() {
+            @Override
+            public void run()
+            {
+                for (final IDSCommon search : running) {
+                    final DeadlockPrunes event = new DeadlockPrunes();
+                    event.solver = search.getClass().getSimpleName();
+                    event.nodes = search.generatedNodes;
+                    event.freezeDeadlocks = search.freezePrunes;
+                    event.deadSquares = search.deadSquarePrunes;
+                    event.commit();
+                }
+            }
+        });
+    }
+
+    private SolverEvents()
+    {
+    }
+
+    /**
+     * Adds a search to the deadlock prune summaries.
+     *
+     * @param search The search.
+     */
+    static void searchStarted(final IDSCommon search)
+    {
+        running.add(search);
+    }
+
+    /**
+     * Removes a search from the deadlock prune summaries.
+     *
+     * @param search The search.
+     */
+    static void searchFinished(final IDSCommon search)
+    {
+        running.remove(search);
+    }
+
+    /**
+     * One iteration of an IDS search.
+     */
+    @Name("sokoban.Iteration")
+    @Label("Search Iteration")
+    @Category("Sokoban")
+    @StackTrace(false)
+    static final class Iteration extends Event
+    {
+        @Label("Solver")
+        @Description("The solver, or the side of a bidirectional search")
+        String solver;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Leaf Nodes")
+        long leafNodes;
+    }
+
+    /**
+     * A switch between the pusher and the puller in BidirectionalIDS.
+     */
+    @Name("sokoban.SideSwitch")
+    @Label("Bidirectional Side Switch")
+    @Category("Sokoban")
+    @StackTrace(false)
+    static final class SideSwitch extends Event
+    {
+        @Label("To")
+        String to;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Pusher Frontier")
+        long pusherFrontier;
+
+        @Label("Puller Frontier")
+        long pullerFrontier;
+    }
+
+    /**
+     * A hash table that was resized, or reallocated with a new capacity.
+     */
+    @Name("sokoban.TableResize")
+    @Label("Table Resize")
+    @Category("Sokoban")
+    static final class TableResize extends Event
+    {
+        @Label("Table")
+        String table;
+
+        @Label("Old Capacity")
+        long oldCapacity;
+
+        @Label("New Capacity")
+        long newCapacity;
+
+        @Label("Entries")
+        long entries;
+    }
+
+    /**
+     * The number of moves pruned by deadlock tests so far in a running
+     * search.
+     */
+    @Name("sokoban.DeadlockPrunes")
+    @Label("Deadlock Prunes")
+    @Category("Sokoban")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class DeadlockPrunes extends Event
+    {
+        @Label("Solver")
+        String solver;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Freeze Deadlocks")
+        long freezeDeadlocks;
+
+        /**
+         * Only counted with -Dsokoban.profile=true
+         */
+        @Label("Dead Squares")
+        long deadSquares;
+    }
+}
@@ -0,0 +1,59 @@
+package sokoban.solvers;
+
+/**
+ * A weighted A* search over pushes, which multiplies the lower bound by a
+ * weight w. Larger weights find solutions faster, but the solutions may be
+ * up to w times longer than the optimal ones. States are never searched
+ * twice.
+ *
+ * The weight is read from the system property sokoban.weight when the solver
+ * is created with the default constructor, as SolverFactory does.
+ */
+public class WeightedAStarPusher extends AStarPusher
+{
+    /**
+     * The system property with the weight
+     */
+    public static final String WEIGHT_PROPERTY = "sokoban.weight";
+
+    /**
+     * The weight used when the property isn't set
+     */
+    public static final double DEFAULT_WEIGHT = 3.0;
+
+    private final double weight;
+
+    /**
+     * Creates a solver with the weight from the sokoban.weight property.
+     */
+    public WeightedAStarPusher()
+    {
+        this(Double.parseDouble(System.getProperty(WEIGHT_PROPERTY, String
+                .valueOf(DEFAULT_WEIGHT))));
+    }
+
+    /**
+     * Creates a solver with the given weight.
+     *
+     * @param weight The weight of the lower bound, at least 1.
+     */
+    public WeightedAStarPusher(final double weight)
+    {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be at least 1");
+        }
+        this.weight = weight;
+    }
+
+    @Override
+    protected int priority(final int g, final int h)
+    {
+        return g + (int) Math.round(weight * h);
+    }
+
+    @Override
+    protected boolean reopen()
+    {
+        return false;
+    }
+}
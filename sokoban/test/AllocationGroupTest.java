@@ -0,0 +1,55 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import sokoban.solvers.AllocationGroup;
+
+/**
+ * Tests that a group counts the allocations of the threads that its threads
+ * create.
+ */
+public class AllocationGroupTest
+{
+    private static final int ARRAY_BYTES = 8 * 1024 * 1024;
+
+    static volatile byte[] sink;
+
+    @Test
+    public void countsEndedChildThreads() throws InterruptedException
+    {
+        final AllocationGroup group = new AllocationGroup("test");
+        Assume.assumeTrue(group.allocatedBytes() >= 0);
+
+        final Runnable allocate = new Runnable() {
+            @Override
+            public void run()
+            {
+                sink = new byte[ARRAY_BYTES];
+            }
+        };
+        final Thread parent = new Thread(group, AllocationGroup
+                .counted(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        // Created by a thread of the group, so in the group
+                        final Thread child = new Thread(AllocationGroup
+                                .counted(allocate));
+                        child.start();
+                        try {
+                            child.join();
+                        }
+                        catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }));
+        parent.start();
+        parent.join();
+
+        assertTrue(group.allocatedBytes() >= ARRAY_BYTES);
+    }
+}
@@ -0,0 +1,76 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+import sokoban.BatchRunner;
+import sokoban.Board;
+import sokoban.Levels;
+
+public class BatchRunnerTest
+{
+    /**
+     * An easy level, a level without a solution and a level that takes
+     * longer than the time limit.
+     */
+    private static class ThreeLevels implements Levels
+    {
+        @Override
+        public int size()
+        {
+            return 3;
+        }
+
+        @Override
+        public Board getBoard(final int number)
+        {
+            switch (number) {
+                case 1:
+                    return new Board("#####\n#@$.#\n#####\n");
+                case 2:
+                    // The box is against the wall, away from the goal
+                    return new Board("#####\n#$@.#\n#####\n");
+                case 3:
+                    try {
+                        return TestLevels.serverLevel(4);
+                    }
+                    catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                default:
+                    throw new IndexOutOfBoundsException("No level " + number);
+            }
+        }
+    }
+
+    @Test
+    public void printsLinesInOrder() throws InterruptedException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(bytes, true);
+        final ByteArrayOutputStream solutionBytes = new ByteArrayOutputStream();
+        final PrintStream solutions = new PrintStream(solutionBytes, true);
+
+        final int solved = new BatchRunner("IDSPusher", new ThreeLevels(),
+                500, 2).run(1, 3, out, solutions);
+
+        final String[] lines = bytes.toString().split("\n");
+        assertEquals(1, solved);
+        assertEquals(5, lines.length);
+        assertTrue(lines[0], lines[0].matches(
+                "1: success, [0-9.]+ s, \\d+ nodes, \\d+ MB allocated"));
+        assertTrue(lines[1], lines[1].matches(
+                "2: failure, [0-9.]+ s, \\d+ nodes, \\d+ MB allocated"));
+        assertTrue(lines[2], lines[2].matches("3: failure, [0-9.]+ s, \\d+ "
+                + "nodes, \\d+ MB allocated \\(timed out\\)"));
+        assertEquals("Solved: 1", lines[3]);
+        assertEquals("Not solved: 2", lines[4]);
+        assertEquals("1: R\n", solutionBytes.toString());
+    }
+}
@@ -0,0 +1,105 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.SearchInfo;
+import sokoban.solvers.BidirectionalIDS;
+import sokoban.solvers.BoxPosDir;
+import sokoban.solvers.IDSPuller;
+import sokoban.solvers.IDSPusher;
+import sokoban.solvers.SearchListener;
+
+public class BidirectionalIDSTest
+{
+    /**
+     * Records which sides have an iteration running.
+     */
+    private static class Sides implements SearchListener
+    {
+        final Set<String> running = new HashSet<String>();
+        boolean overlapped;
+
+        @Override
+        public synchronized void iterationStarted(final String solver,
+                final int depth, final long nodes)
+        {
+            running.add(solver);
+            overlapped |= running.size() == 2;
+        }
+
+        @Override
+        public synchronized void iterationFinished(final String solver,
+                final int depth, final long nodes, final long leafNodes,
+                final long failedBoards, final long nanos)
+        {
+            running.remove(solver);
+        }
+
+        @Override
+        public void heartbeat(final String solver, final long nodes,
+                final double nodesPerSecond, final long visitedBoards)
+        {
+        }
+    }
+
+    @Test
+    public void slicesInterleave() throws IOException
+    {
+        final BidirectionalIDS solver = new BidirectionalIDS();
+        final Sides sides = new Sides();
+        solver.setSearchListener(sides);
+        TestLevels.assertSolves(TestLevels.serverLevel(2), solver
+                .solve(TestLevels.serverLevel(2)));
+
+        // An iteration of one side was paused while the other side ran
+        assertTrue(sides.overlapped);
+    }
+
+    @Test
+    public void pusherFollowsPullerPath() throws IOException
+    {
+        final Board board = TestLevels.serverLevel(12);
+        final Map<Long, BoxPosDir> pushed = new HashMap<Long, BoxPosDir>();
+        final Map<Long, BoxPosDir> pulled = new HashMap<Long, BoxPosDir>();
+        assertNull(new IDSPuller((Board) board.clone(),
+                new HashSet<Long>(), pulled, pushed).dfs(26).solution);
+
+        // Too shallow to reach the goal without the puller's states
+        assertNull(new IDSPusher((Board) board.clone(),
+                new HashSet<Long>(), new HashMap<Long, BoxPosDir>(),
+                new HashMap<Long, BoxPosDir>()).dfs(24).solution);
+
+        final SearchInfo result = new IDSPusher((Board) board.clone(),
+                new HashSet<Long>(), pushed, pulled).dfs(24);
+        TestLevels.assertSolves(board, Board.solutionToString(result.solution));
+    }
+
+    @Test
+    public void pullerFollowsPusherPath() throws IOException
+    {
+        final Board board = TestLevels.serverLevel(12);
+        final Map<Long, BoxPosDir> pushed = new HashMap<Long, BoxPosDir>();
+        final Map<Long, BoxPosDir> pulled = new HashMap<Long, BoxPosDir>();
+        assertNull(new IDSPusher((Board) board.clone(),
+                new HashSet<Long>(), pushed, pulled).dfs(24).solution);
+
+        // Too shallow to reach the start without the pusher's states
+        assertNull(new IDSPuller((Board) board.clone(),
+                new HashSet<Long>(), new HashMap<Long, BoxPosDir>(),
+                new HashMap<Long, BoxPosDir>()).dfs(26).solution);
+
+        final SearchInfo result = new IDSPuller((Board) board.clone(),
+                new HashSet<Long>(), pulled, pushed).dfs(26);
+        TestLevels.assertSolves(board, Board.solutionToString(result.solution));
+    }
+}
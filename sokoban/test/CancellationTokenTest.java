@@ -0,0 +1,81 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.SearchStatus;
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.IDSPusher;
+import sokoban.solvers.SolveResult;
+
+/**
+ * Tests cancellation and deadlines.
+ */
+public class CancellationTokenTest
+{
+
+    @Test
+    public void parent()
+    {
+        CancellationToken parent = new CancellationToken();
+        CancellationToken child = new CancellationToken(parent);
+
+        child.cancel();
+        assertTrue(child.isCancelled());
+        assertFalse(parent.isCancelled());
+
+        child = new CancellationToken(parent);
+        parent.cancel();
+        assertTrue(child.isCancelled());
+        assertFalse(child.isTimedOut());
+    }
+
+    @Test
+    public void deadline()
+    {
+        CancellationToken token = CancellationToken.withTimeout(60000);
+        CancellationToken child = new CancellationToken(token);
+        assertFalse(child.isCancelled());
+        assertFalse(child.isTimedOut());
+
+        // A deadline of now has passed already
+        token = CancellationToken.withTimeout(0);
+        child = new CancellationToken(token);
+        assertTrue(token.isTimedOut());
+        assertTrue(child.isCancelled());
+        assertTrue(child.isTimedOut());
+    }
+
+    @Test
+    public void solveResult()
+    {
+        Board board = new Board("######" + "\n" + "#@   #" + "\n" + "# $  #"
+                + "\n" + "#   .#" + "\n" + "######");
+        SolveResult result = SolveResult.solve(new IDSPusher(), board, 60000);
+
+        assertEquals(SearchStatus.Solution, result.status);
+        assertNotNull(result.solution);
+        assertFalse(result.timedOut);
+    }
+
+    @Test
+    public void solveResultTimeout() throws IOException
+    {
+        // IDSPusher needs far longer than this for server level 4
+        SolveResult result = SolveResult.solve(new IDSPusher(),
+                TestLevels.serverLevel(4), 200);
+
+        assertEquals(SearchStatus.Cancelled, result.status);
+        assertNull(result.solution);
+        assertTrue(result.timedOut);
+        assertTrue(result.nodes > 0);
+    }
+}
@@ -0,0 +1,182 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sokoban.SearchStatus;
+import sokoban.solvers.BidirectionalIDS;
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.Checkpoint;
+import sokoban.solvers.IDSPusher;
+import sokoban.solvers.SearchListener;
+import sokoban.solvers.SolveResult;
+
+public class CheckpointTest
+{
+    /**
+     * Records the depths of the iterations, and cancels the search when the
+     * given number of iterations have started.
+     */
+    private static class Iterations implements SearchListener
+    {
+        final List<Integer> depths = new ArrayList<Integer>();
+        final CancellationToken token = new CancellationToken();
+        final int cancelAt;
+
+        Iterations(final int cancelAt)
+        {
+            this.cancelAt = cancelAt;
+        }
+
+        @Override
+        public synchronized void iterationStarted(final String solver,
+                final int depth, final long nodes)
+        {
+            depths.add(depth);
+            if (depths.size() >= cancelAt) {
+                token.cancel();
+            }
+        }
+
+        @Override
+        public void iterationFinished(final String solver, final int depth,
+                final long nodes, final long leafNodes,
+                final long failedBoards, final long nanos)
+        {
+        }
+
+        @Override
+        public void heartbeat(final String solver, final long nodes,
+                final double nodesPerSecond, final long visitedBoards)
+        {
+        }
+    }
+
+    @Test
+    public void pusherResumesAtSavedDepth() throws IOException
+    {
+        final File file = TestLevels.tempFile("search", ".ckpt");
+
+        final IDSPusher first = new IDSPusher();
+        final Iterations firstRun = new Iterations(3);
+        first.setCheckpoint(new Checkpoint(file, 0));
+        first.setSearchListener(firstRun);
+        assertEquals(SearchStatus.Cancelled, SolveResult.solve(first,
+                TestLevels.serverLevel(19), firstRun.token).status);
+        assertTrue(file.isFile());
+
+        final IDSPusher second = new IDSPusher();
+        final Iterations secondRun = new Iterations(Integer.MAX_VALUE);
+        second.setCheckpoint(new Checkpoint(file, 0));
+        second.setSearchListener(secondRun);
+        final SolveResult result = SolveResult.solve(second, TestLevels
+                .serverLevel(19), null);
+
+        assertEquals(SearchStatus.Solution, result.status);
+        TestLevels.assertSolves(TestLevels.serverLevel(19), result.solution);
+        assertEquals(firstRun.depths.get(firstRun.depths.size() - 1),
+                secondRun.depths.get(0));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void otherLevelIsIgnored() throws IOException
+    {
+        final File file = TestLevels.tempFile("search", ".ckpt");
+
+        final IDSPusher first = new IDSPusher();
+        final Iterations firstRun = new Iterations(3);
+        first.setCheckpoint(new Checkpoint(file, 0));
+        first.setSearchListener(firstRun);
+        SolveResult.solve(first, TestLevels.serverLevel(19), firstRun.token);
+
+        final IDSPusher second = new IDSPusher();
+        final Iterations secondRun = new Iterations(Integer.MAX_VALUE);
+        second.setCheckpoint(new Checkpoint(file, 0));
+        second.setSearchListener(secondRun);
+        assertEquals(SearchStatus.Solution, SolveResult.solve(second,
+                TestLevels.serverLevel(12), null).status);
+
+        final IDSPusher fresh = new IDSPusher();
+        final Iterations freshRun = new Iterations(Integer.MAX_VALUE);
+        fresh.setSearchListener(freshRun);
+        SolveResult.solve(fresh, TestLevels.serverLevel(12), null);
+        assertEquals(freshRun.depths, secondRun.depths);
+    }
+
+    @Test
+    public void bidirectionalResumes() throws IOException
+    {
+        final File file = TestLevels.tempFile("search", ".ckpt");
+
+        final BidirectionalIDS first = new BidirectionalIDS();
+        final Iterations firstRun = new Iterations(4);
+        first.setCheckpoint(new Checkpoint(file, 0));
+        first.setSearchListener(firstRun);
+        assertEquals(SearchStatus.Cancelled, SolveResult.solve(first,
+                TestLevels.serverLevel(20), firstRun.token).status);
+        assertTrue(file.isFile());
+
+        final BidirectionalIDS second = new BidirectionalIDS();
+        second.setCheckpoint(new Checkpoint(file, 0));
+        final SolveResult result = SolveResult.solve(second, TestLevels
+                .serverLevel(20), null);
+        assertEquals(SearchStatus.Solution, result.status);
+        TestLevels.assertSolves(TestLevels.serverLevel(20), result.solution);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void corruptFileIsIgnored() throws IOException
+    {
+        final IDSPusher fresh = new IDSPusher();
+        final Iterations freshRun = new Iterations(Integer.MAX_VALUE);
+        fresh.setSearchListener(freshRun);
+        SolveResult.solve(fresh, TestLevels.serverLevel(19), null);
+
+        // The header is 40 bytes, and the failed board count of the first
+        // side is 13 bytes into the side
+        for (final long truncate : new long[] { -1, 60 }) {
+            final File file = TestLevels.tempFile("search", ".ckpt");
+            final IDSPusher first = new IDSPusher();
+            final Iterations firstRun = new Iterations(3);
+            first.setCheckpoint(new Checkpoint(file, 0));
+            first.setSearchListener(firstRun);
+            SolveResult.solve(first, TestLevels.serverLevel(19),
+                    firstRun.token);
+
+            final RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+            try {
+                if (truncate < 0) {
+                    corrupt.seek(53);
+                    corrupt.writeInt(Integer.MAX_VALUE);
+                }
+                else {
+                    corrupt.setLength(truncate);
+                }
+            }
+            finally {
+                corrupt.close();
+            }
+
+            final IDSPusher second = new IDSPusher();
+            final Iterations secondRun = new Iterations(Integer.MAX_VALUE);
+            second.setCheckpoint(new Checkpoint(file, 0));
+            second.setSearchListener(secondRun);
+            final SolveResult result = SolveResult.solve(second, TestLevels
+                    .serverLevel(19), null);
+            TestLevels.assertSolves(TestLevels.serverLevel(19),
+                    result.solution);
+            assertEquals(freshRun.depths, secondRun.depths);
+        }
+    }
+}
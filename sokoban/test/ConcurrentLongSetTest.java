@@ -0,0 +1,155 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.solvers.BoxPosDir;
+import sokoban.solvers.ConcurrentLongMap;
+import sokoban.solvers.ConcurrentLongSet;
+
+/**
+ * Tests the lock-free tables.
+ */
+public class ConcurrentLongSetTest
+{
+
+    @Test
+    public void addAndContains()
+    {
+        ConcurrentLongSet set = new ConcurrentLongSet(16, false);
+
+        assertTrue(set.add(42L));
+        assertFalse(set.add(42L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.add(-7L));
+
+        assertTrue(set.contains(42L));
+        assertTrue(set.contains(0L));
+        assertTrue(set.contains(-7L));
+        assertFalse(set.contains(43L));
+        assertEquals(3, set.size());
+
+        set.clear();
+        assertFalse(set.contains(42L));
+        assertEquals(0, set.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fullTable()
+    {
+        ConcurrentLongSet set = new ConcurrentLongSet(4, false);
+        for (long i = 1; i <= 5; ++i) {
+            set.add(i);
+        }
+    }
+
+    @Test
+    public void lossyTableNeverFails()
+    {
+        ConcurrentLongSet set = new ConcurrentLongSet(4, true);
+        for (long i = 1; i <= 100; ++i) {
+            set.add(i);
+        }
+        assertTrue(set.contains(100L));
+    }
+
+    @Test
+    public void concurrentAdds() throws InterruptedException
+    {
+        final ConcurrentLongSet set = new ConcurrentLongSet(1 << 16, false);
+        final AtomicInteger added = new AtomicInteger();
+
+        // All threads add the same values, so each value is added once
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread() {
+                public void run()
+                {
+                    for (long i = 1; i <= 10000; ++i) {
+                        if (set.add(i * 0x1234567L)) {
+                            added.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(10000, added.get());
+        assertEquals(10000, set.size());
+    }
+
+    @Test
+    public void concurrentLossyOverwrites() throws InterruptedException
+    {
+        // Few slots and many keys, so that the slots are overwritten all the
+        // time while they are read
+        final ConcurrentLongMap map = new ConcurrentLongMap(8, true);
+        final AtomicInteger wrong = new AtomicInteger();
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run()
+                {
+                    for (long i = 1; i <= 200000; ++i) {
+                        final long key = (i + offset) * 0x1234567L;
+                        map.put(key, valueOf(key));
+                        final long other = (i + offset + 1) * 0x1234567L;
+                        final long value = map.get(other);
+                        if (value != ConcurrentLongMap.NO_VALUE
+                                && value != valueOf(other)) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // A key is never seen with the value of another key
+        assertEquals(0, wrong.get());
+    }
+
+    private static long valueOf(final long key)
+    {
+        return key * 31 + 1;
+    }
+
+    @Test
+    public void packedStates()
+    {
+        Board board = new Board("#####" + "\n" + "#@  #" + "\n" + "# $ #"
+                + "\n" + "#  .#" + "\n" + "#####");
+        ConcurrentLongMap map = new ConcurrentLongMap(16, false);
+
+        BoxPosDir move = new BoxPosDir(Board.Direction.RIGHT,
+                board.positions[2][2], board.positions[1][1]);
+        BoxPosDir start = new BoxPosDir(null, null, board.positions[3][1]);
+        map.put(1234L, move.pack(board.width));
+        assertTrue(map.putIfAbsent(0L, start.pack(board.width)));
+        assertFalse(map.putIfAbsent(1234L, start.pack(board.width)));
+
+        long packed = map.get(1234L);
+        assertEquals(packed, BoxPosDir.unpack(packed, board).pack(board.width));
+        packed = map.get(0L);
+        assertEquals(packed, BoxPosDir.unpack(packed, board).pack(board.width));
+        assertEquals(ConcurrentLongMap.NO_VALUE, map.get(99L));
+        assertEquals(2, map.size());
+    }
+
+}
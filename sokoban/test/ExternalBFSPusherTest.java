@@ -0,0 +1,75 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.solvers.AStarPusher;
+import sokoban.solvers.ExternalBFSPusher;
+import sokoban.solvers.Solver;
+import sokoban.solvers.SolverFactory;
+
+public class ExternalBFSPusherTest
+{
+    File directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = TestLevels.tempDirectory("bfs");
+    }
+
+    /**
+     * Checks that the solver finds as few pushes as A* on some levels.
+     */
+    private void assertFewestPushes(final long memory, final int... levels)
+            throws IOException
+    {
+        for (final int number : levels) {
+            final String solution = new ExternalBFSPusher(directory, memory)
+                    .solve(TestLevels.serverLevel(number));
+            assertEquals(TestLevels.assertSolves(TestLevels
+                    .serverLevel(number), new AStarPusher().solve(TestLevels
+                    .serverLevel(number))), TestLevels.assertSolves(
+                    TestLevels.serverLevel(number), solution));
+        }
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void findsFewestPushes() throws IOException
+    {
+        // A small buffer, so that each layer has several runs
+        assertFewestPushes(4096, 1, 2, 12, 19);
+    }
+
+    @Test
+    public void mergesRunsInPasses() throws IOException
+    {
+        // Some layers have several hundred runs
+        assertFewestPushes(256, 12, 19);
+    }
+
+    @Test
+    public void noSolution()
+    {
+        // Two boxes and one goal, so every state is searched
+        final Board board = new Board("#######\n#@ $ .#\n#  $  #\n#######\n");
+        assertNull(new ExternalBFSPusher(directory, 4096).solve(board));
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void loadedByName()
+    {
+        final Solver solver = SolverFactory.loadSolver("ExternalBFSPusher");
+        final Board board = new Board("#####\n#@$.#\n#####\n");
+        assertEquals(1, TestLevels.assertSolves(board, solver.solve(board)));
+    }
+}
@@ -0,0 +1,108 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import sokoban.SearchStatus;
+import sokoban.solvers.FailedStateStore;
+import sokoban.solvers.IDSPusher;
+import sokoban.solvers.SolveResult;
+
+public class FailedStateStoreTest
+{
+    private static Set<Long> keys(final Long... keys)
+    {
+        return new HashSet<Long>(Arrays.asList(keys));
+    }
+
+    @Test
+    public void appendsNewKeys() throws IOException
+    {
+        final File file = TestLevels.tempFile("failed", ".fail");
+        final FailedStateStore store = new FailedStateStore(file, TestLevels
+                .serverLevel(1));
+        assertEquals(0, store.load().size());
+
+        assertEquals(2, store.merge(keys(1L, 2L)));
+        final long length = file.length();
+        assertEquals(1, store.merge(keys(1L, 2L, 3L)));
+        assertEquals(length + 4 + 8 + 4, file.length());
+        assertEquals(0, store.merge(keys(3L)));
+
+        final FailedStateStore again = new FailedStateStore(file, TestLevels
+                .serverLevel(1));
+        assertEquals(keys(1L, 2L, 3L), again.load());
+    }
+
+    @Test
+    public void ignoresIncompleteBlock() throws IOException
+    {
+        final File file = TestLevels.tempFile("failed", ".fail");
+        final FailedStateStore store = new FailedStateStore(file, TestLevels
+                .serverLevel(1));
+        store.load();
+        store.merge(keys(1L, 2L));
+        final long length = file.length();
+        store.merge(keys(3L, 4L));
+
+        // A block cut off by a crash
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(file.length() - 5);
+        raf.close();
+
+        final FailedStateStore again = new FailedStateStore(file, TestLevels
+                .serverLevel(1));
+        assertEquals(keys(1L, 2L), again.load());
+        assertEquals(1, again.merge(keys(5L)));
+        assertEquals(length + 4 + 8 + 4, file.length());
+        assertEquals(keys(1L, 2L, 5L), new FailedStateStore(file, TestLevels
+                .serverLevel(1)).load());
+    }
+
+    @Test
+    public void otherLevelIsIgnored() throws IOException
+    {
+        final File file = TestLevels.tempFile("failed", ".fail");
+        final FailedStateStore store = new FailedStateStore(file, TestLevels
+                .serverLevel(1));
+        store.load();
+        store.merge(keys(1L, 2L));
+
+        final FailedStateStore other = new FailedStateStore(file, TestLevels
+                .serverLevel(2));
+        assertEquals(0, other.load().size());
+    }
+
+    @Test
+    public void rerunSkipsFailedBoards() throws IOException
+    {
+        final File file = TestLevels.tempFile("failed", ".fail");
+
+        final IDSPusher first = new IDSPusher();
+        first.setFailedStateStore(new FailedStateStore(file, TestLevels
+                .serverLevel(19)));
+        final SolveResult firstResult = SolveResult.solve(first, TestLevels
+                .serverLevel(19), null);
+        assertEquals(SearchStatus.Solution, firstResult.status);
+        assertTrue(file.length() > 0);
+
+        final IDSPusher second = new IDSPusher();
+        second.setFailedStateStore(new FailedStateStore(file, TestLevels
+                .serverLevel(19)));
+        final SolveResult secondResult = SolveResult.solve(second, TestLevels
+                .serverLevel(19), null);
+        assertEquals(SearchStatus.Solution, secondResult.status);
+        TestLevels.assertSolves(TestLevels.serverLevel(19),
+                secondResult.solution);
+        assertTrue(secondResult.nodes < firstResult.nodes);
+    }
+}
@@ -0,0 +1,74 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sokoban.SearchStatus;
+import sokoban.solvers.IDSPusher;
+import sokoban.solvers.SearchListener;
+import sokoban.solvers.SolveResult;
+
+/**
+ * Tests that the heartbeats of a search are throttled.
+ */
+public class HeartbeatTest
+{
+    /**
+     * Records the node counts of the heartbeats.
+     */
+    private static class Beats implements SearchListener
+    {
+        final List<Long> nodes = new ArrayList<Long>();
+
+        @Override
+        public void iterationStarted(final String solver, final int depth,
+                final long nodes)
+        {
+        }
+
+        @Override
+        public void iterationFinished(final String solver, final int depth,
+                final long nodes, final long leafNodes,
+                final long failedBoards, final long nanos)
+        {
+        }
+
+        @Override
+        public synchronized void heartbeat(final String solver,
+                final long nodes, final double nodesPerSecond,
+                final long visitedBoards)
+        {
+            this.nodes.add(nodes);
+        }
+    }
+
+    @Test
+    public void oncePerInterval() throws IOException
+    {
+        final IDSPusher solver = new IDSPusher();
+        final Beats beats = new Beats();
+
+        // The search starts no earlier than this, and each heartbeat comes
+        // at least one interval after the one before
+        final long start = System.nanoTime();
+        solver.setSearchListener(beats);
+        final SolveResult result = SolveResult.solve(solver, TestLevels
+                .serverLevel(4), 2500);
+        final long elapsed = System.nanoTime() - start;
+
+        assertEquals(SearchStatus.Cancelled, result.status);
+        final int count = beats.nodes.size();
+        assertTrue(count >= 1);
+        assertTrue(count + " heartbeats in " + elapsed / 1000000 + " ms",
+                count * SearchListener.HEARTBEAT_INTERVAL <= elapsed);
+        for (int i = 1; i < count; i++) {
+            assertTrue(beats.nodes.get(i) >= beats.nodes.get(i - 1));
+        }
+    }
+}
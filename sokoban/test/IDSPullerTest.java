@@ -0,0 +1,30 @@
+package sokoban.test;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.solvers.IDSPuller;
+
+public class IDSPullerTest
+{
+    @Test
+    public void playerEndsInOtherRegion()
+    {
+        // The box on the goal splits the floor in two, and the player ends
+        // in the right part, which doesn't have the topmost, leftmost square
+        final String level = "######\n# .$@#\n######\n";
+        TestLevels.assertSolves(new Board(level.getBytes()), new IDSPuller()
+                .solve(new Board(level.getBytes())));
+    }
+
+    @Test
+    public void serverLevels() throws IOException
+    {
+        for (final int number : new int[] { 1, 3, 7, 12 }) {
+            TestLevels.assertSolves(TestLevels.serverLevel(number),
+                    new IDSPuller().solve(TestLevels.serverLevel(number)));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import sokoban.BoardParser;
+import sokoban.LevelFile;
+
+public class LevelFileTest
+{
+    private static void assertSameLevels(final String filename)
+            throws IOException
+    {
+        final File file = new File(new File("."), filename);
+        final ArrayList<String> expected = BoardParser.getBoardStrings(file);
+        final LevelFile levels = new LevelFile(file);
+
+        assertEquals(expected.size(), levels.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), levels.get(i + 1));
+        }
+
+        final Iterator<String> it = levels.iterator();
+        for (final String level : expected) {
+            assertEquals(level, it.next());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void sameAsBoardParser() throws IOException
+    {
+        assertSameLevels("custom.slc");
+        assertSameLevels("server_levels.slc");
+        assertSameLevels("all.slc");
+    }
+
+    @Test
+    public void headers() throws IOException
+    {
+        final LevelFile levels = new LevelFile(new File(new File("."),
+                "custom.slc"));
+        assertEquals(";LEVEL 1", levels.getHeader(1));
+        assertEquals(";LEVEL 13", levels.getHeader(4));
+    }
+
+    @Test
+    public void blankLinesAndCarriageReturns() throws IOException
+    {
+        final File file = File.createTempFile("levels", ".slc");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(("#####\r\n#@$.#\r\n#####\r\n\r\n;LEVEL 2\r\n;LEVEL 3\r\n"
+                + "  \n#####\n#.$@#\n#####").getBytes());
+        out.close();
+
+        final LevelFile levels = new LevelFile(file);
+        assertEquals(2, levels.size());
+        assertNull(levels.getHeader(1));
+        assertEquals("#####\n#@$.#\n#####\n", levels.get(1));
+        assertEquals(";LEVEL 3", levels.getHeader(2));
+        assertEquals("#####\n#.$@#\n#####\n", levels.get(2));
+        assertEquals(1, levels.getBoard(2).getRemainingBoxes());
+    }
+}
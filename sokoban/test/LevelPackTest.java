@@ -0,0 +1,86 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.LevelFile;
+import sokoban.LevelPack;
+import sokoban.Levels;
+import sokoban.Zobrist;
+
+public class LevelPackTest
+{
+    private static void assertSameBoards(final String filename)
+            throws IOException
+    {
+        final LevelFile levels = new LevelFile(new File(new File("."),
+                filename));
+        final File file = File.createTempFile("levels", ".pack");
+        file.deleteOnExit();
+        LevelPack.write(levels, file);
+
+        final Levels pack = LevelPack.open(file);
+        assertTrue(pack instanceof LevelPack);
+        assertEquals(levels.size(), pack.size());
+        for (int i = 1; i <= levels.size(); i++) {
+            final Board expected = levels.getBoard(i);
+            final Board board = pack.getBoard(i);
+            assertEquals(expected.width, board.width);
+            assertEquals(expected.height, board.height);
+            assertEquals(expected.getPlayerRow(), board.getPlayerRow());
+            assertEquals(expected.getPlayerCol(), board.getPlayerCol());
+            assertEquals(expected.boxCount, board.boxCount);
+            assertEquals(expected.getZobristKey(), board.getZobristKey());
+            for (int row = 0; row < board.height; row++) {
+                assertArrayEquals(expected.cells[row], board.cells[row]);
+            }
+        }
+    }
+
+    @Test
+    public void sameAsLevelFile() throws IOException
+    {
+        assertSameBoards("custom.slc");
+        assertSameBoards("server_levels.slc");
+    }
+
+    @Test
+    public void openTextFile() throws IOException
+    {
+        assertTrue(LevelPack.open(new File(new File("."), "custom.slc")) instanceof LevelFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherZobristSeed() throws IOException
+    {
+        final File file = File.createTempFile("levels", ".pack");
+        file.deleteOnExit();
+        LevelPack.write(new LevelFile(new File(new File("."), "custom.slc")),
+                file);
+
+        // The seed follows the magic number and the version
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(8);
+            raf.writeLong(Zobrist.SEED + 1);
+        }
+        finally {
+            raf.close();
+        }
+        new LevelPack(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void notAPack() throws IOException
+    {
+        new LevelPack(new File(new File("."), "custom.slc"));
+    }
+}
@@ -0,0 +1,113 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import org.junit.Test;
+
+import sokoban.LevelClient;
+import sokoban.LevelFile;
+import sokoban.LevelServer;
+
+public class LevelServerTest
+{
+    /**
+     * Starts a server of two levels on a free port.
+     */
+    private static ServerSocket startServer() throws IOException
+    {
+        final File file = File.createTempFile("levels", ".slc");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(";LEVEL 1\n#####\n#@$.#\n#####\n\n;LEVEL 2\n######\n#.$ @#\n######\n"
+                .getBytes());
+        out.close();
+
+        final ServerSocket socket = new ServerSocket(0, 50, InetAddress
+                .getLoopbackAddress());
+        final LevelServer server = new LevelServer(new LevelFile(file));
+        final Thread thread = new Thread() {
+            @Override
+            public void run()
+            {
+                try {
+                    server.serve(socket);
+                }
+                catch (final IOException e) {
+                    // Closed
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return socket;
+    }
+
+    @Test
+    public void pipelinedRequests() throws IOException
+    {
+        final ServerSocket socket = startServer();
+        final LevelClient client = new LevelClient(socket.getInetAddress()
+                .getHostAddress(), socket.getLocalPort());
+        try {
+            client.requestLevel(2);
+            client.requestLevel(1);
+            client.requestLevel(2);
+            assertEquals("######\n#.$ @#\n######\n", new String(client
+                    .readBoard()));
+            assertEquals("#####\n#@$.#\n#####\n", new String(client
+                    .readBoard()));
+            client.readBoard();
+
+            client.sendSolution("L L ");
+            assertEquals("Good solution", client.readResult());
+            client.sendSolution("U");
+            assertEquals("Bad solution: walked into a wall at move 1", client
+                    .readResult());
+            client.sendSolution("L");
+            assertEquals("Bad solution: not all boxes are on goals", client
+                    .readResult());
+        }
+        finally {
+            client.close();
+            socket.close();
+        }
+    }
+
+    @Test
+    public void unknownLevel() throws IOException
+    {
+        final ServerSocket socket = startServer();
+        final LevelClient client = new LevelClient(socket.getInetAddress()
+                .getHostAddress(), socket.getLocalPort());
+        try {
+            client.requestLevel(3);
+            client.requestLevel(1);
+            try {
+                client.readBoard();
+                fail("Read a board of an unknown level");
+            }
+            catch (final IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().endsWith(
+                        LevelClient.ERROR_PREFIX + "no such level 3"));
+            }
+
+            // The error doesn't hide the next board
+            assertEquals("#####\n#@$.#\n#####\n", new String(client
+                    .readBoard()));
+            client.sendSolution("R");
+            assertEquals("Good solution", client.readResult());
+        }
+        finally {
+            client.close();
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.solvers.AStarPusher;
+import sokoban.solvers.GreedyPusher;
+import sokoban.solvers.HDAStarPusher;
+import sokoban.solvers.IDSPusher;
+import sokoban.solvers.PackedLevel;
+import sokoban.solvers.WeightedAStarPusher;
+
+/**
+ * Tests the packed level representation and the solvers that use it.
+ */
+public class PackedLevelTest
+{
+
+    Board board;
+    PackedLevel level;
+
+    @Before
+    public void setUp()
+    {
+        board = new Board("######" + "\n" + "#@   #" + "\n" + "# $  #" + "\n"
+                + "#   .#" + "\n" + "######");
+        level = new PackedLevel(board);
+    }
+
+    @Test
+    public void startState()
+    {
+        assertEquals(1, level.boxCount);
+        assertEquals(2 * 6 + 2, level.startBoxes[0]);
+        assertEquals(1 * 6 + 1, level.startPlayer);
+        assertEquals(3, level.heuristic(level.startBoxes));
+        assertFalse(level.isSolved(level.startBoxes));
+        assertTrue(level.isSolved(new int[] { 3 * 6 + 4 }));
+    }
+
+    @Test
+    public void deadSquares()
+    {
+        // A box in a corner can never be moved
+        assertEquals(PackedLevel.DEAD, level.heuristic(new int[] { 1 * 6 + 1 }));
+    }
+
+    @Test
+    public void successors()
+    {
+        final PackedLevel.Expander expander = level.new Expander();
+        final List<Integer> targets = new ArrayList<Integer>();
+        final int player = expander.normalize(level.startBoxes,
+                level.startPlayer);
+        final long hash = level.hash(level.boxHash(level.startBoxes), player);
+
+        final int count = expander.expand(level.startBoxes, player, hash,
+                new PackedLevel.Successors() {
+                    @Override
+                    public void successor(final int[] boxes,
+                            final int newPlayer, final long newHash,
+                            final int box, final int dir)
+                    {
+                        targets.add(boxes[0]);
+                        assertEquals(level.hash(level.boxHash(boxes),
+                                newPlayer), newHash);
+                    }
+                });
+
+        // Pushing up or left puts the box on a dead square
+        assertEquals(2, count);
+        assertTrue(targets.contains(3 * 6 + 2));
+        assertTrue(targets.contains(2 * 6 + 3));
+    }
+
+    @Test
+    public void solveHDAStar()
+    {
+        assertSolves(new HDAStarPusher(2).solve(board));
+    }
+
+    @Test
+    public void hdaStarServerLevels() throws IOException
+    {
+        for (final int number : new int[] { 1, 5, 12 }) {
+            TestLevels.assertSolves(TestLevels.serverLevel(number),
+                    new HDAStarPusher(4).solve(TestLevels.serverLevel(number)));
+        }
+    }
+
+    @Test
+    public void solveAStar()
+    {
+        assertSolves(new AStarPusher().solve(board));
+    }
+
+    @Test
+    public void aStarServerLevels() throws IOException
+    {
+        // A* finds the fewest pushes, so it never needs more than IDSPusher
+        for (final int number : new int[] { 1, 5, 12, 19 }) {
+            final Board level = TestLevels.serverLevel(number);
+            final int pushes = TestLevels.assertSolves(level,
+                    new AStarPusher().solve(TestLevels.serverLevel(number)));
+            final int idsPushes = TestLevels.assertSolves(level,
+                    new IDSPusher().solve(TestLevels.serverLevel(number)));
+            assertTrue("Level " + number + ": " + pushes + " > " + idsPushes,
+                    pushes <= idsPushes);
+        }
+    }
+
+    @Test
+    public void solveWeighted()
+    {
+        assertSolves(new WeightedAStarPusher(5).solve(board));
+        setUp();
+        assertSolves(new GreedyPusher().solve(board));
+    }
+
+    @Test
+    public void weightedServerLevels() throws IOException
+    {
+        for (final int number : new int[] { 1, 2, 5, 12, 19 }) {
+            final Board level = TestLevels.serverLevel(number);
+            TestLevels.assertSolves(level, new WeightedAStarPusher(5)
+                    .solve(TestLevels.serverLevel(number)));
+            TestLevels.assertSolves(level,
+                    new GreedyPusher().solve(TestLevels.serverLevel(number)));
+        }
+    }
+
+    private void assertSolves(final String solution)
+    {
+        assertNotNull(solution);
+
+        for (final char c : solution.toCharArray()) {
+            switch (c) {
+                case 'U':
+                    board.move(Board.Direction.UP);
+                    break;
+                case 'D':
+                    board.move(Board.Direction.DOWN);
+                    break;
+                case 'L':
+                    board.move(Board.Direction.LEFT);
+                    break;
+                case 'R':
+                    board.move(Board.Direction.RIGHT);
+                    break;
+            }
+        }
+        assertEquals(0, board.getRemainingBoxes());
+    }
+}
@@ -0,0 +1,42 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import sokoban.SearchStatus;
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.ParallelIDSPusher;
+import sokoban.solvers.SolveResult;
+
+public class ParallelIDSPusherTest
+{
+    @Test
+    public void serverLevels() throws IOException
+    {
+        for (final int number : new int[] { 1, 3, 7, 12 }) {
+            TestLevels.assertSolves(TestLevels.serverLevel(number),
+                    new ParallelIDSPusher(4).solve(TestLevels
+                            .serverLevel(number)));
+        }
+    }
+
+    @Test
+    public void poolEndsWithSolve() throws IOException
+    {
+        final ParallelIDSPusher solver = new ParallelIDSPusher(4);
+        TestLevels.assertSolves(TestLevels.serverLevel(3), solver
+                .solve(TestLevels.serverLevel(3)));
+        assertTrue(solver.isTerminated());
+
+        // Also when the search is cancelled
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+        assertEquals(SearchStatus.Cancelled, SolveResult.solve(solver,
+                TestLevels.serverLevel(3), token).status);
+        assertTrue(solver.isTerminated());
+    }
+}
@@ -0,0 +1,86 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.solvers.CancellationToken;
+import sokoban.solvers.GreedyPusher;
+import sokoban.solvers.PortfolioSolver;
+import sokoban.solvers.SearchListener;
+import sokoban.solvers.Solver;
+
+public class PortfolioSolverTest
+{
+    /**
+     * A solver that fails with the given throwable.
+     */
+    private static class Failing implements Solver
+    {
+        private final Throwable failure;
+
+        Failing(final Throwable failure)
+        {
+            this.failure = failure;
+        }
+
+        @Override
+        public String solve(final Board board)
+        {
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw (RuntimeException) failure;
+        }
+
+        @Override
+        public long getIterationsCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public void setCancellationToken(final CancellationToken token)
+        {
+        }
+
+        @Override
+        public void setSearchListener(final SearchListener listener)
+        {
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void otherSolverWinsWhenOneFails() throws IOException
+    {
+        final GreedyPusher greedy = new GreedyPusher();
+        final PortfolioSolver portfolio = new PortfolioSolver(new Failing(
+                new StackOverflowError()), greedy);
+        TestLevels.assertSolves(TestLevels.serverLevel(1), portfolio
+                .solve(TestLevels.serverLevel(1)));
+        assertEquals("GreedyPusher", portfolio.getWinner());
+    }
+
+    @Test(timeout = 60000)
+    public void winnerByName() throws IOException
+    {
+        final PortfolioSolver portfolio = new PortfolioSolver(" GreedyPusher");
+        TestLevels.assertSolves(TestLevels.serverLevel(1), portfolio
+                .solve(TestLevels.serverLevel(1)));
+        assertEquals("GreedyPusher", portfolio.getWinner());
+    }
+
+    @Test(timeout = 60000)
+    public void returnsWhenAllFail() throws IOException
+    {
+        final PortfolioSolver portfolio = new PortfolioSolver(new Failing(
+                new OutOfMemoryError()), new Failing(
+                new IllegalStateException()));
+        assertNull(portfolio.solve(TestLevels.serverLevel(1)));
+        assertNull(portfolio.getWinner());
+    }
+}
@@ -0,0 +1,58 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import sokoban.SearchStatus;
+import sokoban.benchmarking.ResultsList;
+import sokoban.benchmarking.TestResult;
+
+public class ResultsListTest
+{
+    private static ResultsList results(final long... millis)
+    {
+        final ResultsList results = new ResultsList();
+        for (final long ms : millis) {
+            // 100 iterations per millisecond
+            results.add(new TestResult(ms * 1000000, ms * 100,
+                    ms < 50 ? SearchStatus.Solution : SearchStatus.Cancelled,
+                    ms * 1000, 1));
+        }
+        return results;
+    }
+
+    @Test
+    public void oddCount()
+    {
+        final ResultsList results = results(40, 10, 50, 30, 20);
+        assertEquals(30.0, results.medianMillis(), 1e-9);
+        assertEquals(30.0, results.meanMillis(), 1e-9);
+        assertEquals(50.0, results.maxMillis(), 1e-9);
+        // The nearest rank of 90% of 5 runs is the 5th
+        assertEquals(50.0, results.percentileMillis(90), 1e-9);
+        assertEquals(10.0, results.percentileMillis(20), 1e-9);
+        assertEquals(100000.0, results.iterationsPerSecond(), 1e-6);
+        assertEquals(4, results.solvedCount());
+        assertEquals(30000, results.averageAllocatedBytes());
+        assertEquals(5, results.totalGcTime());
+    }
+
+    @Test
+    public void evenCount()
+    {
+        final ResultsList results = results(10, 40, 20, 30);
+        assertEquals(25.0, results.medianMillis(), 1e-9);
+        assertEquals(25.0, results.meanMillis(), 1e-9);
+        assertEquals(40.0, results.percentileMillis(90), 1e-9);
+        assertEquals(20.0, results.percentileMillis(50), 1e-9);
+    }
+
+    @Test
+    public void unknownAllocations()
+    {
+        final ResultsList results = results(10);
+        results.add(new TestResult(20, 5));
+        assertEquals(-1, results.averageAllocatedBytes());
+    }
+}
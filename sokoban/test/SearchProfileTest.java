@@ -0,0 +1,100 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.solvers.IDSPusher;
+
+/**
+ * Tests the counts of SearchProfile. SearchProfile.ENABLED is read once, so
+ * the search runs in a new JVM with -Dsokoban.profile=true.
+ */
+public class SearchProfileTest
+{
+    /**
+     * The box must go up and then left to the goal. IDSPusher starts with a
+     * depth limit of two pushes, so it only needs one iteration, and pushes
+     * down are onto the dead bottom row.
+     */
+    private static final String BOARD = "######\n" + "#.   #\n"
+            + "# $  #\n" + "#   @#\n" + "######\n";
+
+    /**
+     * Solves BOARD with IDSPusher, which prints its profile, and prints the
+     * node count of the solver.
+     */
+    public static class Search
+    {
+        public static void main(final String[] args)
+        {
+            final IDSPusher solver = new IDSPusher();
+            final String solution = solver.solve(new Board(BOARD));
+            System.out.println("Solution: " + solution);
+            System.out.println("Solver nodes: " + solver.getIterationsCount());
+        }
+    }
+
+    @Test
+    public void countsOfSmallSearch() throws IOException, InterruptedException
+    {
+        final String java = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+        final Process process = new ProcessBuilder(java,
+                "-Dsokoban.profile=true", "-cp",
+                System.getProperty("java.class.path"),
+                Search.class.getName()).redirectErrorStream(true).start();
+
+        final StringBuilder output = new StringBuilder();
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        }
+        finally {
+            reader.close();
+        }
+        assertEquals(output.toString(), 0, process.waitFor());
+
+        final String profile = output.toString();
+        assertTrue(profile, profile.contains("Solution: L L U R U L"));
+
+        // The root, the two pushes of the solution and two pushes that lead
+        // nowhere within the depth limit
+        final long nodes = Long.parseLong(find(profile,
+                "Profile of IDSPusher: (\\d+) nodes"));
+        assertEquals(5, nodes);
+        assertEquals(nodes, Long.parseLong(find(profile,
+                "Solver nodes: (\\d+)")));
+
+        // Every push that isn't pruned is looked up, and only the misses
+        // are searched, so the lookups are the nodes below the root plus
+        // the hits
+        assertEquals("2 of 6", find(profile,
+                "transposition hits: (\\d+ of \\d+)"));
+        assertEquals("3", find(profile, "dead square prunes: (\\d+)"));
+        assertEquals("0", find(profile, "freeze deadlock prunes: (\\d+)"));
+        // Four successors of three expanded nodes
+        assertEquals("1.33", find(profile,
+                "successors per expanded node: ([\\d.]+)"));
+    }
+
+    private static String find(final String text, final String regex)
+    {
+        final Matcher matcher = Pattern.compile(regex).matcher(text);
+        assertTrue(regex + " in\n" + text, matcher.find());
+        return matcher.group(1);
+    }
+}
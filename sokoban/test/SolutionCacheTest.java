@@ -0,0 +1,103 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.SearchStatus;
+import sokoban.SolutionCache;
+import sokoban.SolutionVerifier;
+import sokoban.solvers.GreedyPusher;
+import sokoban.solvers.SolveResult;
+
+public class SolutionCacheTest
+{
+    private static File tempDirectory() throws IOException
+    {
+        final File directory = File.createTempFile("cache", "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static Board board(final String level)
+    {
+        return new Board(level.getBytes());
+    }
+
+    @Test
+    public void solvesOnce() throws IOException
+    {
+        final SolutionCache cache = new SolutionCache(tempDirectory(), 10);
+        final String level = "#######\n#  @  #\n# $ . #\n#######\n";
+
+        final SolveResult first = cache.solve(new GreedyPusher(),
+                board(level), null);
+        assertEquals(SearchStatus.Solution, first.status);
+        assertTrue(first.nodes > 0);
+
+        final SolveResult second = cache.solve(new GreedyPusher(),
+                board(level), null);
+        assertEquals(SearchStatus.Solution, second.status);
+        assertEquals(0, second.nodes);
+        assertTrue(new SolutionVerifier(board(level)).verify(second.solution));
+    }
+
+    @Test
+    public void sameLevelInOtherForm() throws IOException
+    {
+        final SolutionCache cache = new SolutionCache(tempDirectory(), 10);
+        assertTrue(cache.put(board("#######\n#  @  #\n# $ . #\n#######\n"),
+                "L L D R R"));
+
+        // Padded, and the player starts elsewhere in the same area
+        final String moved = "   \n  #######\n  #     #\n  # $ .@#\n  #######\n";
+        final String solution = cache.get(board(moved));
+        assertNotNull(solution);
+        assertTrue(new SolutionVerifier(board(moved)).verify(solution));
+
+        // Another box position is another level
+        assertNull(cache.get(board("#######\n#  @  #\n#  $. #\n#######\n")));
+    }
+
+    @Test
+    public void rejectsWrongSolutions() throws IOException
+    {
+        final SolutionCache cache = new SolutionCache(tempDirectory(), 10);
+        final Board board = board("#####\n#@$.#\n#####\n");
+        assertFalse(cache.put(board, "L"));
+        assertNull(cache.get(board));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException
+    {
+        final File directory = tempDirectory();
+        final SolutionCache cache = new SolutionCache(directory, 2);
+        final Board a = board("#####\n#@$.#\n#####\n");
+        final Board b = board("######\n#@ $.#\n######\n");
+        final Board c = board("######\n#@$ .#\n######\n");
+
+        assertTrue(cache.put(a, "R"));
+        assertTrue(cache.put(b, "R R"));
+        // File times may only have a resolution of a second
+        new File(directory, directory.list()[0]).setLastModified(0);
+        new File(directory, directory.list()[1]).setLastModified(0);
+        assertNotNull(cache.get(a));
+
+        assertTrue(cache.put(c, "R R"));
+        assertEquals(2, directory.list().length);
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+    }
+}
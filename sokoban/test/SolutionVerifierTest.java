@@ -0,0 +1,77 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import sokoban.Board;
+import sokoban.LevelFile;
+import sokoban.SolutionVerifier;
+import sokoban.solvers.GreedyPusher;
+
+public class SolutionVerifierTest
+{
+    @Test
+    public void countsMovesAndPushes()
+    {
+        final SolutionVerifier verifier = new SolutionVerifier(new Board(
+                "######\n#.$ @#\n######\n".getBytes()));
+        assertTrue(verifier.verify("L L "));
+        assertEquals(2, verifier.getMoves());
+        assertEquals(1, verifier.getPushes());
+        assertNull(verifier.getFailure());
+
+        // The verifier can be reused
+        assertTrue(verifier.verify("ll"));
+        assertEquals(2, verifier.getMoves());
+    }
+
+    @Test
+    public void failures()
+    {
+        final SolutionVerifier verifier = new SolutionVerifier(new Board(
+                "#######\n#.$$ @#\n#######\n".getBytes()));
+        assertFalse(verifier.verify("L U"));
+        assertEquals(SolutionVerifier.Failure.WALL, verifier.getFailure());
+        assertEquals("walked into a wall at move 2", verifier.getReason());
+
+        assertFalse(verifier.verify("L L"));
+        assertEquals(SolutionVerifier.Failure.BLOCKED_BOX, verifier
+                .getFailure());
+        assertEquals(2, verifier.getFailedMove());
+        assertEquals(1, verifier.getMoves());
+
+        assertFalse(verifier.verify("L X"));
+        assertEquals(SolutionVerifier.Failure.UNKNOWN_MOVE, verifier
+                .getFailure());
+
+        assertFalse(verifier.verify("R"));
+        assertEquals(SolutionVerifier.Failure.WALL, verifier.getFailure());
+
+        assertFalse(verifier.verify(""));
+        assertEquals(SolutionVerifier.Failure.UNSOLVED, verifier.getFailure());
+        assertEquals(-1, verifier.getFailedMove());
+    }
+
+    @Test
+    public void solverSolutions() throws IOException
+    {
+        final LevelFile levels = new LevelFile(new File(new File("."),
+                "server_levels.slc"));
+        for (final int number : new int[] { 1, 3 }) {
+            final String solution = new GreedyPusher().solve(levels
+                    .getBoard(number));
+            final SolutionVerifier verifier = new SolutionVerifier(levels
+                    .getBoard(number));
+            assertTrue(verifier.verify(solution));
+            assertEquals(solution.trim().split(" ").length, verifier
+                    .getMoves());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import sokoban.SolverService;
+
+public class SolverServiceTest
+{
+    @Test
+    public void serve() throws Exception
+    {
+        final String board = "#####\n#@$.#\n#####\n";
+        final String requests = "solver GreedyPusher\ndeadline 10000\nboard\n"
+                + board + "\nsolver NoSuchSolver\nboard\n" + board
+                + "\nboard\n\n";
+
+        final StringWriter out = new StringWriter();
+        new SolverService(2).serve(new BufferedReader(new StringReader(
+                requests)), out);
+
+        final String[] responses = out.toString().split("\n\n");
+        assertEquals(3, responses.length);
+        assertEquals("status Solution", responses[0].split("\n")[0]);
+        assertEquals("solution R", responses[0].split("\n")[4]);
+        assertEquals("status Error\nmessage unknown solver NoSuchSolver",
+                responses[1]);
+        assertEquals("status Error\nmessage no board", responses[2]);
+    }
+}
@@ -0,0 +1,74 @@
+package sokoban.test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import sokoban.Board;
+import sokoban.LevelFile;
+import sokoban.SolutionVerifier;
+
+/**
+ * Levels and files that are shared by the tests.
+ */
+final class TestLevels
+{
+    private TestLevels()
+    {
+    }
+
+    /**
+     * Returns a level of server_levels.slc in the working directory.
+     *
+     * @param number The number of the level.
+     * @return A new board of the level.
+     */
+    static Board serverLevel(final int number) throws IOException
+    {
+        return new LevelFile(new File(new File("."), "server_levels.slc"))
+                .getBoard(number);
+    }
+
+    /**
+     * Returns the name of a temporary file that doesn't exist yet, and is
+     * deleted when the tests end.
+     */
+    static File tempFile(final String prefix, final String suffix)
+            throws IOException
+    {
+        final File file = File.createTempFile(prefix, suffix);
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Returns a new empty temporary directory.
+     */
+    static File tempDirectory(final String prefix) throws IOException
+    {
+        final File directory = File.createTempFile(prefix, "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    /**
+     * Checks that a solution solves a board.
+     *
+     * @param board The start board.
+     * @param solution The solution.
+     * @return The number of pushes of the solution.
+     */
+    static int assertSolves(final Board board, final String solution)
+    {
+        assertNotNull(solution);
+        final SolutionVerifier verifier = new SolutionVerifier(board);
+        final boolean solved = verifier.verify(solution);
+        assertTrue(verifier.getReason(), solved);
+        return verifier.getPushes();
+    }
+}